@@ -1,7 +1,10 @@
 package com.example.demo;
 
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class TechhubApplication{
@@ -10,4 +13,11 @@ public class TechhubApplication{
 		SpringApplication.run(TechhubApplication.class, args);
 	}
 
+	// Under the fastboot profile's lazy initialization, the availability bean would only
+	// be created when the first probe asks for it, after the readiness events it records.
+	@Bean
+	static LazyInitializationExcludeFilter eagerApplicationAvailability() {
+		return LazyInitializationExcludeFilter.forBeanTypes(ApplicationAvailability.class);
+	}
+
 }
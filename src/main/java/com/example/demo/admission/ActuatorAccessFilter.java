@@ -0,0 +1,44 @@
+package com.example.demo.admission;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Keeps actuator requests that reach the application port to callers whose
+ * address matches {@code admission.actuator-addresses}, loopback and private
+ * networks by default. A war shares its container's port with the API, so
+ * without this anyone could change the limits at {@code /actuator/admission}.
+ * The address is the caller's only once forwarded headers are resolved, by
+ * {@code server.forward-headers-strategy} or the container's own valve.
+ */
+public class ActuatorAccessFilter extends OncePerRequestFilter {
+
+    // Loopback, link-local and the private IPv4 ranges, as Tomcat trusts for proxies
+    static final String INTERNAL_ADDRESSES = "127\\.\\d+\\.\\d+\\.\\d+|0:0:0:0:0:0:0:1|::1"
+            + "|10\\.\\d+\\.\\d+\\.\\d+|192\\.168\\.\\d+\\.\\d+|169\\.254\\.\\d+\\.\\d+"
+            + "|172\\.(1[6-9]|2\\d|3[01])\\.\\d+\\.\\d+";
+
+    private final Pattern allowed;
+
+    public ActuatorAccessFilter(Pattern allowed){
+        this.allowed = allowed;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!allowed.matcher(request.getRemoteAddr()).matches()){
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Actuator is only reachable from internal addresses");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
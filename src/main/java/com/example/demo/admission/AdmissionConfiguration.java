@@ -0,0 +1,47 @@
+package com.example.demo.admission;
+
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionConfiguration {
+
+    @Bean
+    public AdmissionControl admissionControl(AdmissionProperties properties, MeterRegistry registry) {
+        return new AdmissionControl(properties, registry);
+    }
+
+    // Ahead of every other filter, so rejected requests cost as little as possible.
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(AdmissionControl admissionControl) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(new AdmissionFilter(admissionControl));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    // Only applies on the application port; a separate management port has no API clients.
+    @Bean
+    public FilterRegistrationBean<ActuatorAccessFilter> actuatorAccessFilter(
+            @Value("${admission.actuator-addresses:}") String addresses) {
+        Pattern allowed = Pattern.compile(addresses.isEmpty() ? ActuatorAccessFilter.INTERNAL_ADDRESSES : addresses);
+        FilterRegistrationBean<ActuatorAccessFilter> registration = new FilterRegistrationBean<>(new ActuatorAccessFilter(allowed));
+        registration.addUrlPatterns("/actuator/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    @Bean
+    public AdmissionEndpoint admissionEndpoint(AdmissionProperties properties, AdmissionControl admissionControl) {
+        return new AdmissionEndpoint(properties, admissionControl);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.demo.admission;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decides whether a request may run. Each client has a read and a write
+ * token bucket; expensive requests also need one of a fixed number of
+ * global permits, which keeps list scans and bookings from taking every
+ * pooled connection at once. Nothing here blocks: a request that cannot
+ * be admitted is rejected straight away with a retry hint.
+ */
+public class AdmissionControl {
+
+    public enum Outcome { ADMITTED, RATE_LIMITED, OVERLOADED }
+
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final AdmissionProperties properties;
+    private final ConcurrentHashMap<String, ClientBuckets> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger expensiveInFlight = new AtomicInteger();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    // [kind][outcome], kind 0 = read, 1 = write
+    private final Counter[][] requests = new Counter[2][Outcome.values().length];
+
+    public AdmissionControl(AdmissionProperties properties, MeterRegistry registry){
+        this.properties = properties;
+
+        String[] kinds = {"read", "write"};
+        for (int kind = 0; kind < kinds.length; kind++){
+            for (Outcome outcome : Outcome.values()){
+                requests[kind][outcome.ordinal()] = Counter.builder("admission.requests")
+                        .description("Requests seen by admission control")
+                        .tag("kind", kinds[kind])
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .register(registry);
+            }
+        }
+        Gauge.builder("admission.expensive.in.flight", expensiveInFlight, AtomicInteger::get)
+                .description("Expensive requests currently holding a permit").register(registry);
+        Gauge.builder("admission.clients", clients, ConcurrentHashMap::size)
+                .description("Clients with live token buckets").register(registry);
+        limitGauge(registry, "read_rate", properties, AdmissionProperties::getReadRate);
+        limitGauge(registry, "read_burst", properties, p -> p.getReadBurst());
+        limitGauge(registry, "write_rate", properties, AdmissionProperties::getWriteRate);
+        limitGauge(registry, "write_burst", properties, p -> p.getWriteBurst());
+        limitGauge(registry, "expensive_concurrency", properties, p -> p.getExpensiveConcurrency());
+    }
+
+    private static void limitGauge(MeterRegistry registry, String name, AdmissionProperties properties,
+                                   ToDoubleFunction<AdmissionProperties> value){
+        Gauge.builder("admission.limit", properties, value).tag("limit", name)
+                .description("Configured admission limit").register(registry);
+    }
+
+    public Decision admit(String client, boolean write, boolean expensive){
+        int kind = write ? 1 : 0;
+        if (!properties.isEnabled()){
+            requests[kind][Outcome.ADMITTED.ordinal()].increment();
+            return Decision.ADMITTED;
+        }
+
+        long now = System.nanoTime();
+        ClientBuckets buckets = clients.get(client);
+        if (buckets == null){
+            sweepIdleClients(now);
+            buckets = clients.computeIfAbsent(client, c -> new ClientBuckets(properties, now));
+        }
+
+        long wait = write
+                ? buckets.write.tryAcquire(properties.getWriteRate(), properties.getWriteBurst(), now)
+                : buckets.read.tryAcquire(properties.getReadRate(), properties.getReadBurst(), now);
+        if (wait > 0){
+            requests[kind][Outcome.RATE_LIMITED.ordinal()].increment();
+            return new Decision(Outcome.RATE_LIMITED, retryAfterSeconds(wait), false);
+        }
+
+        if (expensive){
+            if (expensiveInFlight.incrementAndGet() > properties.getExpensiveConcurrency()){
+                expensiveInFlight.decrementAndGet();
+                requests[kind][Outcome.OVERLOADED.ordinal()].increment();
+                return new Decision(Outcome.OVERLOADED, 1, false);
+            }
+            requests[kind][Outcome.ADMITTED.ordinal()].increment();
+            return Decision.ADMITTED_EXPENSIVE;
+        }
+
+        requests[kind][Outcome.ADMITTED.ordinal()].increment();
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * Returns the permit held by an admitted expensive request.
+     */
+    public void release(Decision decision){
+        if (decision.holdsPermit){
+            expensiveInFlight.decrementAndGet();
+        }
+    }
+
+    public int getExpensiveInFlight(){
+        return expensiveInFlight.get();
+    }
+
+    public int getClients(){
+        return clients.size();
+    }
+
+    // A bucket untouched for longer than it takes to refill is full again and
+    // indistinguishable from a new one, so it can be dropped.
+    private void sweepIdleClients(long now){
+        if (clients.size() < properties.getMaxClients()){
+            return;
+        }
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now)){
+            return;
+        }
+        long idle = (long) (1e9 * Math.max(
+                properties.getReadBurst() / Math.max(properties.getReadRate(), 1e-3),
+                properties.getWriteBurst() / Math.max(properties.getWriteRate(), 1e-3)));
+        for (Iterator<ClientBuckets> it = clients.values().iterator(); it.hasNext(); ){
+            ClientBuckets buckets = it.next();
+            if (now - buckets.lastUsed() > idle){
+                it.remove();
+            }
+        }
+    }
+
+    private static long retryAfterSeconds(long waitNanos){
+        return Math.max(1, Math.min(TimeUnit.HOURS.toSeconds(1), (waitNanos + 999_999_999L) / 1_000_000_000L));
+    }
+
+    public static final class Decision {
+
+        static final Decision ADMITTED = new Decision(Outcome.ADMITTED, 0, false);
+        static final Decision ADMITTED_EXPENSIVE = new Decision(Outcome.ADMITTED, 0, true);
+
+        private final Outcome outcome;
+        private final long retryAfterSeconds;
+        private final boolean holdsPermit;
+
+        Decision(Outcome outcome, long retryAfterSeconds, boolean holdsPermit){
+            this.outcome = outcome;
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.holdsPermit = holdsPermit;
+        }
+
+        public Outcome getOutcome(){
+            return this.outcome;
+        }
+
+        public boolean isAdmitted(){
+            return this.outcome == Outcome.ADMITTED;
+        }
+
+        public long getRetryAfterSeconds(){
+            return this.retryAfterSeconds;
+        }
+    }
+
+    private static final class ClientBuckets {
+        final TokenBucket read;
+        final TokenBucket write;
+
+        ClientBuckets(AdmissionProperties properties, long now){
+            this.read = new TokenBucket(properties.getReadBurst(), now);
+            this.write = new TokenBucket(properties.getWriteBurst(), now);
+        }
+
+        long lastUsed(){
+            return Math.max(read.refilledAt(), write.refilledAt());
+        }
+    }
+}
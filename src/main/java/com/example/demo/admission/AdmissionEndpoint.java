@@ -0,0 +1,68 @@
+package com.example.demo.admission;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+/**
+ * {@code /actuator/admission}: shows the current limits and load, and
+ * changes the limits without a restart. Omitted fields keep their value.
+ */
+@Endpoint(id = "admission")
+public class AdmissionEndpoint {
+
+    private final AdmissionProperties properties;
+    private final AdmissionControl admissionControl;
+
+    public AdmissionEndpoint(AdmissionProperties properties, AdmissionControl admissionControl){
+        this.properties = properties;
+        this.admissionControl = admissionControl;
+    }
+
+    @ReadOperation
+    public Map<String, Object> admission(){
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", properties.isEnabled());
+        state.put("readRate", properties.getReadRate());
+        state.put("readBurst", properties.getReadBurst());
+        state.put("writeRate", properties.getWriteRate());
+        state.put("writeBurst", properties.getWriteBurst());
+        state.put("expensiveConcurrency", properties.getExpensiveConcurrency());
+        state.put("maxClients", properties.getMaxClients());
+        state.put("expensiveInFlight", admissionControl.getExpensiveInFlight());
+        state.put("clients", admissionControl.getClients());
+        return state;
+    }
+
+    @WriteOperation
+    public Map<String, Object> configure(@Nullable Boolean enabled,
+                                         @Nullable Double readRate, @Nullable Integer readBurst,
+                                         @Nullable Double writeRate, @Nullable Integer writeBurst,
+                                         @Nullable Integer expensiveConcurrency, @Nullable Integer maxClients){
+        requireNonNegative(readRate, "readRate");
+        requireNonNegative(readBurst, "readBurst");
+        requireNonNegative(writeRate, "writeRate");
+        requireNonNegative(writeBurst, "writeBurst");
+        requireNonNegative(expensiveConcurrency, "expensiveConcurrency");
+        requireNonNegative(maxClients, "maxClients");
+
+        if (enabled != null) properties.setEnabled(enabled);
+        if (readRate != null) properties.setReadRate(readRate);
+        if (readBurst != null) properties.setReadBurst(readBurst);
+        if (writeRate != null) properties.setWriteRate(writeRate);
+        if (writeBurst != null) properties.setWriteBurst(writeBurst);
+        if (expensiveConcurrency != null) properties.setExpensiveConcurrency(expensiveConcurrency);
+        if (maxClients != null) properties.setMaxClients(maxClients);
+        return admission();
+    }
+
+    private static void requireNonNegative(Number value, String name){
+        if (value != null && value.doubleValue() < 0){
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.admission;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Applies {@link AdmissionControl} to API requests. Clients are told apart
+ * by remote address; {@code server.forward-headers-strategy} makes that the
+ * caller's address behind a load balancer, not the balancer's.
+ * Rejected requests get 429 and a {@code Retry-After} in seconds.
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    // Unpaged list scans and bookings, which hold a connection the longest.
+    static final Set<String> EXPENSIVE = new HashSet<>(Arrays.asList(
+            "GET /api/appointments", "GET /api/doctors", "GET /api/patients", "GET /api/rooms",
+            "POST /api/appointment", "POST /api/appointment/by-reference"));
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionFilter(AdmissionControl admissionControl){
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String method = request.getMethod();
+        boolean write = !("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method));
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean expensive = EXPENSIVE.contains(method + " " + path);
+
+        AdmissionControl.Decision decision = admissionControl.admit(request.getRemoteAddr(), write, expensive);
+        if (!decision.isAdmitted()){
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(decision.getRetryAfterSeconds()));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(),
+                    decision.getOutcome() == AdmissionControl.Outcome.RATE_LIMITED
+                            ? "Request rate limit exceeded"
+                            : "Server is busy");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            admissionControl.release(decision);
+        }
+    }
+}
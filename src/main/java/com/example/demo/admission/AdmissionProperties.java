@@ -0,0 +1,77 @@
+package com.example.demo.admission;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Admission limits. Bound from {@code admission.*} at startup and changed at
+ * runtime through the {@code admission} actuator endpoint, so every field is
+ * volatile and read on each request.
+ */
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionProperties {
+
+    private volatile boolean enabled = true;
+
+    /** Sustained GET requests per second and client. */
+    private volatile double readRate = 50;
+    private volatile int readBurst = 100;
+
+    /** Sustained POST/PUT/PATCH/DELETE requests per second and client. */
+    private volatile double writeRate = 10;
+    private volatile int writeBurst = 20;
+
+    /** Expensive requests running at once across all clients. */
+    private volatile int expensiveConcurrency = 8;
+
+    /** Clients tracked before idle buckets are dropped. */
+    private volatile int maxClients = 10000;
+
+    public boolean isEnabled(){
+        return this.enabled;
+    }
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    public double getReadRate(){
+        return this.readRate;
+    }
+    public void setReadRate(double readRate){
+        this.readRate = readRate;
+    }
+
+    public int getReadBurst(){
+        return this.readBurst;
+    }
+    public void setReadBurst(int readBurst){
+        this.readBurst = readBurst;
+    }
+
+    public double getWriteRate(){
+        return this.writeRate;
+    }
+    public void setWriteRate(double writeRate){
+        this.writeRate = writeRate;
+    }
+
+    public int getWriteBurst(){
+        return this.writeBurst;
+    }
+    public void setWriteBurst(int writeBurst){
+        this.writeBurst = writeBurst;
+    }
+
+    public int getExpensiveConcurrency(){
+        return this.expensiveConcurrency;
+    }
+    public void setExpensiveConcurrency(int expensiveConcurrency){
+        this.expensiveConcurrency = expensiveConcurrency;
+    }
+
+    public int getMaxClients(){
+        return this.maxClients;
+    }
+    public void setMaxClients(int maxClients){
+        this.maxClients = maxClients;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.admission;
+
+/**
+ * A token bucket refilled lazily on each attempt. The rate and burst are
+ * passed in on every call rather than fixed at construction, so limits
+ * changed at runtime apply to existing clients straight away.
+ */
+final class TokenBucket {
+
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double burst, long now){
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Takes one token. Returns 0 on success, otherwise the nanoseconds until
+     * a token will be available.
+     */
+    synchronized long tryAcquire(double perSecond, double burst, long now){
+        tokens = Math.min(burst, tokens + (now - refilledAt) * perSecond / 1e9);
+        refilledAt = now;
+        if (tokens >= 1){
+            tokens -= 1;
+            return 0;
+        }
+        if (perSecond <= 0){
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((1 - tokens) * 1e9 / perSecond);
+    }
+
+    synchronized long refilledAt(){
+        return refilledAt;
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.demo.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.demo.entities.Appointment;
+
+/**
+ * Append-only, column-oriented archive of past appointments.
+ *
+ * The file is a sequence of self-contained blocks. Every block holds the rows
+ * of one {@link #append} call sorted by start time, stored column-wise:
+ *
+ * <pre>
+ *  header   magic, blockLength, rowCount, minStart, maxFinish, maxDuration,
+ *           roomDictSize, doctorDictSize, patientDictSize, unused  (10 ints)
+ *  long[]   ids, doctorDict, patientDict
+ *  int[]    startsAt, finishesAt, roomCode, doctorCode, patientCode
+ *  room dictionary as (int length, UTF-8 bytes) pairs, padded to 8 bytes
+ * </pre>
+ *
+ * Times are epoch minutes (see {@link EpochMinutes}); rooms, doctors and
+ * patients are dictionary-encoded per block, and an appointment without one
+ * has the code {@link #NONE}. Readers memory-map the file and scan the
+ * columns in place, skipping every block whose time span does not intersect
+ * the requested window. Within a block, the longest appointment bounds how
+ * early a row intersecting the window can start, so the scan begins there.
+ */
+public class AppointmentArchive implements Closeable {
+
+    static final int MAGIC = 0x41505041;
+    static final int HEADER_BYTES = 40;
+    static final int NONE = -1;
+
+    /**
+     * Receives archived rows. The room name, doctor id and patient id are
+     * null for an appointment that had none.
+     */
+    public interface RowVisitor {
+        void visit(long id, int startsAt, int finishesAt, String roomName, Long doctorId, Long patientId);
+    }
+
+    private final FileChannel channel;
+    private long mappedLength;
+    private volatile Block[] blocks = new Block[0];
+
+    private AppointmentArchive(FileChannel channel){
+        this.channel = channel;
+    }
+
+    public static AppointmentArchive open(Path path) throws IOException {
+        AppointmentArchive archive = new AppointmentArchive(FileChannel.open(path, StandardOpenOption.READ));
+        archive.refresh();
+        return archive;
+    }
+
+    /**
+     * Appends the given appointments to the archive as a single block. The
+     * appointments are expected to be in the past and are never rewritten.
+     */
+    public static void append(Path path, Collection<Appointment> appointments) throws IOException {
+        if (appointments.isEmpty()){
+            return;
+        }
+        List<Appointment> rows = new ArrayList<>(appointments);
+        rows.sort(Comparator.comparing(Appointment::getStartsAt));
+        int n = rows.size();
+
+        Map<String, Integer> rooms = new LinkedHashMap<>();
+        Map<Long, Integer> doctors = new LinkedHashMap<>();
+        Map<Long, Integer> patients = new LinkedHashMap<>();
+        int[] starts = new int[n];
+        int[] finishes = new int[n];
+        int[] roomCodes = new int[n];
+        int[] doctorCodes = new int[n];
+        int[] patientCodes = new int[n];
+        int minStart = Integer.MAX_VALUE;
+        int maxFinish = Integer.MIN_VALUE;
+        int maxDuration = 0;
+
+        for (int i = 0; i < n; i++){
+            Appointment appointment = rows.get(i);
+            starts[i] = EpochMinutes.of(appointment.getStartsAt());
+            finishes[i] = EpochMinutes.of(appointment.getFinishesAt());
+            if (finishes[i] < starts[i]){
+                throw new IllegalArgumentException("Appointment " + appointment.getId() + " finishes before it starts");
+            }
+            roomCodes[i] = appointment.getRoom() == null ? NONE : code(rooms, appointment.getRoom().getRoomName());
+            doctorCodes[i] = appointment.getDoctor() == null ? NONE : code(doctors, appointment.getDoctor().getId());
+            patientCodes[i] = appointment.getPatient() == null ? NONE : code(patients, appointment.getPatient().getId());
+            minStart = Math.min(minStart, starts[i]);
+            maxFinish = Math.max(maxFinish, finishes[i]);
+            maxDuration = Math.max(maxDuration, finishes[i] - starts[i]);
+        }
+
+        List<byte[]> roomNames = new ArrayList<>(rooms.size());
+        int roomBytes = 0;
+        for (String roomName : rooms.keySet()){
+            byte[] encoded = roomName.getBytes(StandardCharsets.UTF_8);
+            roomNames.add(encoded);
+            roomBytes += 4 + encoded.length;
+        }
+
+        int length = HEADER_BYTES + 8 * (n + doctors.size() + patients.size()) + 20 * n + roomBytes;
+        length = (length + 7) & ~7;
+
+        ByteBuffer block = ByteBuffer.allocate(length);
+        block.putInt(MAGIC).putInt(length).putInt(n).putInt(minStart).putInt(maxFinish).putInt(maxDuration)
+                .putInt(rooms.size()).putInt(doctors.size()).putInt(patients.size()).putInt(0);
+        for (Appointment appointment : rows){
+            block.putLong(appointment.getId());
+        }
+        for (Long doctorId : doctors.keySet()){
+            block.putLong(doctorId);
+        }
+        for (Long patientId : patients.keySet()){
+            block.putLong(patientId);
+        }
+        block.asIntBuffer().put(starts).put(finishes).put(roomCodes).put(doctorCodes).put(patientCodes);
+        block.position(block.position() + 20 * n);
+        for (byte[] roomName : roomNames){
+            block.putInt(roomName.length).put(roomName);
+        }
+        block.position(0);
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+            while (block.hasRemaining()){
+                out.write(block);
+            }
+            out.force(false);
+        }
+    }
+
+    /**
+     * Maps blocks appended since the archive was opened or last refreshed.
+     * A torn block at the end of the file (an interrupted append) is ignored
+     * until it has been completely written.
+     */
+    public synchronized void refresh() throws IOException {
+        long size = channel.size();
+        if (size <= mappedLength){
+            return;
+        }
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, mappedLength, size - mappedLength);
+        List<Block> loaded = new ArrayList<>(Arrays.asList(blocks));
+        int offset = 0;
+        while (region.limit() - offset >= HEADER_BYTES){
+            if (region.getInt(offset) != MAGIC){
+                throw new IOException("Corrupt archive block at offset " + (mappedLength + offset));
+            }
+            int length = region.getInt(offset + 4);
+            if (length > region.limit() - offset){
+                break;
+            }
+            ByteBuffer slice = ((ByteBuffer) region.duplicate().position(offset).limit(offset + length)).slice();
+            loaded.add(new Block(slice));
+            offset += length;
+        }
+        mappedLength += offset;
+        blocks = loaded.toArray(new Block[0]);
+    }
+
+    public void scan(LocalDateTime from, LocalDateTime to, RowVisitor visitor){
+        scan(EpochMinutes.of(from), EpochMinutes.of(to), visitor);
+    }
+
+    /**
+     * Visits every archived appointment intersecting [from, to), given in
+     * epoch minutes.
+     */
+    public void scan(int from, int to, RowVisitor visitor){
+        for (Block block : blocks){
+            if (block.minStart >= to || block.maxFinish <= from){
+                continue;
+            }
+            // No row of the block lasts longer, so none starting earlier reaches the window
+            int begin = block.firstStartingAtOrAfter((int) Math.max(Integer.MIN_VALUE, (long) from - block.maxDuration));
+            int end = block.firstStartingAtOrAfter(to);
+            for (int i = begin; i < end; i++){
+                int finishesAt = block.finishes.get(i);
+                if (finishesAt > from){
+                    int roomCode = block.roomCodes.get(i);
+                    int doctorCode = block.doctorCodes.get(i);
+                    int patientCode = block.patientCodes.get(i);
+                    visitor.visit(block.ids.get(i), block.starts.get(i), finishesAt,
+                            roomCode == NONE ? null : block.roomNames[roomCode],
+                            doctorCode == NONE ? null : block.doctorDict.get(doctorCode),
+                            patientCode == NONE ? null : block.patientDict.get(patientCode));
+                }
+            }
+        }
+    }
+
+    /**
+     * Minutes booked per room within [from, to), clipped to the window.
+     * Appointments without a room are left out.
+     */
+    public Map<String, Long> bookedMinutesByRoom(LocalDateTime from, LocalDateTime to){
+        int start = EpochMinutes.of(from);
+        int end = EpochMinutes.of(to);
+        Map<String, Long> minutes = new HashMap<>();
+        scan(start, end, (id, startsAt, finishesAt, roomName, doctorId, patientId) -> {
+            if (roomName != null){
+                minutes.merge(roomName, (long) (Math.min(finishesAt, end) - Math.max(startsAt, start)), Long::sum);
+            }
+        });
+        return minutes;
+    }
+
+    /**
+     * The ids in the most recently appended block, empty when there is none.
+     * An archiver that failed between appending rows and deleting them
+     * elsewhere finds them here.
+     */
+    public long[] lastBlockIds(){
+        Block[] current = blocks;
+        if (current.length == 0){
+            return new long[0];
+        }
+        Block last = current[current.length - 1];
+        long[] ids = new long[last.rowCount];
+        last.ids.duplicate().get(ids);
+        return ids;
+    }
+
+    public int size(){
+        int rows = 0;
+        for (Block block : blocks){
+            rows += block.rowCount;
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static <K> int code(Map<K, Integer> dictionary, K value){
+        Integer code = dictionary.get(value);
+        if (code == null){
+            code = dictionary.size();
+            dictionary.put(value, code);
+        }
+        return code;
+    }
+
+    private static final class Block {
+        final int rowCount;
+        final int minStart;
+        final int maxFinish;
+        final int maxDuration;
+        final LongBuffer ids;
+        final LongBuffer doctorDict;
+        final LongBuffer patientDict;
+        final IntBuffer starts;
+        final IntBuffer finishes;
+        final IntBuffer roomCodes;
+        final IntBuffer doctorCodes;
+        final IntBuffer patientCodes;
+        final String[] roomNames;
+
+        Block(ByteBuffer block){
+            rowCount = block.getInt(8);
+            minStart = block.getInt(12);
+            maxFinish = block.getInt(16);
+            maxDuration = block.getInt(20);
+            int roomDictSize = block.getInt(24);
+            int doctorDictSize = block.getInt(28);
+            int patientDictSize = block.getInt(32);
+
+            int offset = HEADER_BYTES;
+            ids = longs(block, offset, rowCount);
+            offset += 8 * rowCount;
+            doctorDict = longs(block, offset, doctorDictSize);
+            offset += 8 * doctorDictSize;
+            patientDict = longs(block, offset, patientDictSize);
+            offset += 8 * patientDictSize;
+            starts = ints(block, offset, rowCount);
+            offset += 4 * rowCount;
+            finishes = ints(block, offset, rowCount);
+            offset += 4 * rowCount;
+            roomCodes = ints(block, offset, rowCount);
+            offset += 4 * rowCount;
+            doctorCodes = ints(block, offset, rowCount);
+            offset += 4 * rowCount;
+            patientCodes = ints(block, offset, rowCount);
+            offset += 4 * rowCount;
+
+            roomNames = new String[roomDictSize];
+            for (int i = 0; i < roomDictSize; i++){
+                int length = block.getInt(offset);
+                byte[] encoded = new byte[length];
+                ((ByteBuffer) block.duplicate().position(offset + 4)).get(encoded);
+                roomNames[i] = new String(encoded, StandardCharsets.UTF_8);
+                offset += 4 + length;
+            }
+        }
+
+        int firstStartingAtOrAfter(int minute){
+            int low = 0;
+            int high = rowCount;
+            while (low < high){
+                int mid = (low + high) >>> 1;
+                if (starts.get(mid) < minute){
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static LongBuffer longs(ByteBuffer block, int offset, int count){
+            return ((ByteBuffer) block.duplicate().position(offset).limit(offset + 8 * count)).slice().asLongBuffer();
+        }
+
+        private static IntBuffer ints(ByteBuffer block, int offset, int count){
+            return ((ByteBuffer) block.duplicate().position(offset).limit(offset + 4 * count)).slice().asIntBuffer();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.demo.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Invalidation.Target;
+import com.example.demo.entities.ScheduleChange;
+import com.example.demo.invalidation.InvalidationBus;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.ScheduleChangeRepository;
+
+/**
+ * Moves appointments that finished more than {@code archive.after} ago out
+ * of the appointment table into the {@link AppointmentArchive} at
+ * {@code archive.path}, every {@code archive.interval}, and answers history
+ * and utilization reads from the archive.
+ *
+ * <p>Each chunk of at most {@code archive.chunk-size} rows is appended as one
+ * block and then deleted in one statement, which neither cascades to the
+ * patients, doctors and rooms nor calls entity listeners, so the removals
+ * are logged and invalidated here. If the delete fails, the rows are
+ * already in the last block; the next run deletes them without appending
+ * them again.
+ *
+ * <p>Without a path nothing is archived. The file is local, so only one
+ * instance of a deployment should set it.
+ */
+@Service
+public class AppointmentArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentArchiver.class);
+
+    private final AppointmentRepository appointmentRepository;
+    private final ScheduleChangeRepository scheduleChangeRepository;
+    private final BookingPipeline bookingPipeline;
+    private final ObjectProvider<InvalidationBus> invalidationBus;
+    private final TransactionTemplate transactionTemplate;
+    private final Path path;
+    private final Duration after;
+    private final Duration interval;
+    private final int chunkSize;
+    private volatile AppointmentArchive archive;
+    private ScheduledExecutorService archiving;
+
+    public AppointmentArchiver(AppointmentRepository appointmentRepository,
+                               ScheduleChangeRepository scheduleChangeRepository,
+                               BookingPipeline bookingPipeline, ObjectProvider<InvalidationBus> invalidationBus,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${archive.path:}") String path,
+                               @Value("${archive.after:90d}") Duration after,
+                               @Value("${archive.interval:1h}") Duration interval,
+                               @Value("${archive.chunk-size:5000}") int chunkSize){
+        this.appointmentRepository = appointmentRepository;
+        this.scheduleChangeRepository = scheduleChangeRepository;
+        this.bookingPipeline = bookingPipeline;
+        this.invalidationBus = invalidationBus;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.path = path.isEmpty() ? null : Paths.get(path);
+        this.after = after;
+        this.interval = interval;
+        this.chunkSize = chunkSize;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (path == null){
+            return;
+        }
+        if (!Files.exists(path)){
+            Files.createFile(path);
+        }
+        archive = AppointmentArchive.open(path);
+        if (!interval.isZero()){
+            archiving = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "appointment-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            archiving.scheduleWithFixedDelay(this::archiveQuietly, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (archiving != null){
+            archiving.shutdownNow();
+        }
+        if (archive != null){
+            archive.close();
+        }
+    }
+
+    public boolean isEnabled(){
+        return archive != null;
+    }
+
+    /**
+     * Archives every appointment that finished before the cutoff, a chunk
+     * at a time. Returns how many rows were moved.
+     */
+    public synchronized int archive() throws IOException, InterruptedException, TimeoutException {
+        if (archive == null){
+            return 0;
+        }
+        archive.refresh();
+        deleteArchived(Arrays.stream(archive.lastBlockIds()).boxed().collect(Collectors.toList()));
+
+        LocalDateTime cutoff = LocalDateTime.now().minus(after);
+        int moved = 0;
+        List<Appointment> chunk;
+        do {
+            chunk = transactionTemplate.execute(status ->
+                    appointmentRepository.findFinishedBefore(cutoff, PageRequest.of(0, chunkSize)));
+            if (chunk.isEmpty()){
+                break;
+            }
+            AppointmentArchive.append(path, chunk);
+            archive.refresh();
+            delete(chunk);
+            moved += chunk.size();
+        } while (chunk.size() == chunkSize);
+        return moved;
+    }
+
+    private void archiveQuietly(){
+        try {
+            int moved = archive();
+            if (moved > 0){
+                log.info("Archived {} appointments to {}", moved, path);
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch (IOException | TimeoutException | RuntimeException e){
+            log.warn("Could not archive appointments to {}", path, e);
+        }
+    }
+
+    // The rows of the last block that a failed run left in the table
+    private void deleteArchived(List<Long> ids) throws InterruptedException, TimeoutException {
+        if (ids.isEmpty()){
+            return;
+        }
+        List<Appointment> left = transactionTemplate.execute(status -> appointmentRepository.findWithRoomByIdIn(ids));
+        if (!left.isEmpty()){
+            log.info("Deleting {} appointments already archived to {}", left.size(), path);
+            delete(left);
+        }
+    }
+
+    private void delete(List<Appointment> appointments) throws InterruptedException, TimeoutException {
+        List<Long> ids = new ArrayList<>(appointments.size());
+        List<ScheduleChange> removals = new ArrayList<>(appointments.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Appointment appointment : appointments){
+            ids.add(appointment.getId());
+            if (appointment.getRoom() != null){
+                removals.add(new ScheduleChange(now, ScheduleChange.Kind.REMOVED,
+                        appointment.getRoom().getRoomName(), appointment.getId(), 0, 0, 0, 0));
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            appointmentRepository.deleteAllByIdInBatch(ids);
+            scheduleChangeRepository.append(removals);
+            invalidationBus.ifAvailable(bus -> {
+                for (Appointment appointment : appointments){
+                    bus.publish(Target.APPOINTMENT, appointment.getId(),
+                            appointment.getRoom() == null ? null : appointment.getRoom().getRoomName());
+                }
+            });
+        });
+        bookingPipeline.removed(appointments);
+    }
+
+    /**
+     * The archived appointments intersecting [from, to), in start order
+     * within each block.
+     */
+    public List<ArchivedAppointment> history(LocalDateTime from, LocalDateTime to){
+        AppointmentArchive current = archive;
+        if (current == null){
+            return Collections.emptyList();
+        }
+        List<ArchivedAppointment> appointments = new ArrayList<>();
+        current.scan(from, to, (id, startsAt, finishesAt, roomName, doctorId, patientId) ->
+                appointments.add(new ArchivedAppointment(id, roomName, doctorId, patientId,
+                        EpochMinutes.toLocalDateTime(startsAt), EpochMinutes.toLocalDateTime(finishesAt))));
+        return appointments;
+    }
+
+    /**
+     * Archived minutes booked per room within [from, to).
+     */
+    public Map<String, Long> utilization(LocalDateTime from, LocalDateTime to){
+        AppointmentArchive current = archive;
+        return current == null ? Collections.emptyMap() : current.bookedMinutesByRoom(from, to);
+    }
+}
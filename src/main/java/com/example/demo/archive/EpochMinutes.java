@@ -0,0 +1,23 @@
+package com.example.demo.archive;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Converts appointment times to and from whole minutes since 1970-01-01T00:00.
+ * Appointments are booked on minute granularity, so an int covers every
+ * representable booking until well past the year 6000.
+ */
+public final class EpochMinutes {
+
+    private EpochMinutes(){
+    }
+
+    public static int of(LocalDateTime dateTime){
+        return Math.toIntExact(Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60L));
+    }
+
+    public static LocalDateTime toLocalDateTime(int epochMinute){
+        return LocalDateTime.ofEpochSecond(epochMinute * 60L, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,929 @@
+package com.example.demo.booking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.archive.EpochMinutes;
+import com.example.demo.entities.Room;
+import com.example.demo.entities.ScheduleChange;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.repositories.ScheduleChangeRepository;
+import com.example.demo.services.AppointmentBooking;
+import com.example.demo.services.AppointmentReference;
+
+/**
+ * Books appointments through one single-threaded writer per room. Rooms are
+ * hashed onto a fixed pool of {@code booking.pipeline.shards} writers. A writer is
+ * the only thread that changes the schedules of its rooms, so the overlap
+ * check and the insert need no locks, and rooms on different writers book
+ * in parallel.
+ *
+ * <p>A writer drains everything queued for it, at most
+ * {@code booking.pipeline.batch-size} commands, checks the bookings against its
+ * schedules and stores the accepted ones in a single transaction. Only
+ * after that commit does it publish the rooms' new {@link RoomSchedule}s
+ * and answer the callers, so readers never see a booking that could still
+ * roll back.
+ *
+ * <p>With several instances on one database, each writer also locks the
+ * rows of the batch's rooms through {@link RoomLocks} and checks the
+ * bookings against the stored appointments before storing them. A booking
+ * that clashes with one stored by another instance is rejected, and the
+ * room's schedule is loaded again.
+ *
+ * <p>Schedules are loaded from the database the first time a room is used.
+ * Appointments must be moved through {@link #move} and deleted through
+ * {@link #delete} and {@link #deleteAll}, or reported with {@link #removed}
+ * once deleted in bulk; rooms changed by another instance are dropped with
+ * {@link #forget}.
+ *
+ * <p>Every booking, move and delete also appends a {@link ScheduleChange} in its
+ * own transaction, a writer's batch of them as one JDBC batch. With {@code booking.snapshot.path} set, the published
+ * schedules are written to a {@link ScheduleSnapshot} every
+ * {@code booking.snapshot.interval} and on shutdown. On startup the snapshot
+ * is mapped back in and the changes logged since it was taken are replayed,
+ * so a restart does not read every appointment again. Replay starts
+ * {@code booking.snapshot.replay-overlap} before the snapshot, to catch
+ * bookings that committed after it was taken, and is idempotent. Instances
+ * share the log, so it is purged by age alone, past
+ * {@code booking.snapshot.log-retention}; a snapshot whose replay would start
+ * before that is ignored and the rooms load from the database.
+ */
+@Service
+public class BookingPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(BookingPipeline.class);
+
+    private enum Kind { BOOK, MOVE, LOAD, REMOVE, FORGET, CLEAR }
+
+    private final AppointmentRepository appointmentRepository;
+    private final RoomRepository roomRepository;
+    private final ScheduleChangeRepository scheduleChangeRepository;
+    private final AppointmentBooking appointmentBooking;
+    private final RoomLocks roomLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long timeoutMillis;
+    private final Writer[] writers;
+    private final ConcurrentHashMap<String, AtomicReference<RoomSchedule>> schedules = new ConcurrentHashMap<>();
+    private final IdDictionary doctors = new IdDictionary();
+    private final IdDictionary patients = new IdDictionary();
+    private final List<Consumer<String>> scheduleListeners = new CopyOnWriteArrayList<>();
+    private final Path snapshotPath;
+    private final Duration snapshotInterval;
+    private final Duration replayOverlap;
+    private final Duration logRetention;
+    private ScheduledExecutorService snapshots;
+
+    public BookingPipeline(AppointmentRepository appointmentRepository, RoomRepository roomRepository,
+                           ScheduleChangeRepository scheduleChangeRepository,
+                           AppointmentBooking appointmentBooking, RoomLocks roomLocks,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${booking.pipeline.shards:4}") int shards,
+                           @Value("${booking.pipeline.batch-size:256}") int batchSize,
+                           @Value("${booking.pipeline.timeout:10s}") Duration timeout,
+                           @Value("${booking.snapshot.path:}") String snapshotPath,
+                           @Value("${booking.snapshot.interval:5m}") Duration snapshotInterval,
+                           @Value("${booking.snapshot.replay-overlap:1m}") Duration replayOverlap,
+                           @Value("${booking.snapshot.log-retention:1d}") Duration logRetention){
+        this.appointmentRepository = appointmentRepository;
+        this.roomRepository = roomRepository;
+        this.scheduleChangeRepository = scheduleChangeRepository;
+        this.appointmentBooking = appointmentBooking;
+        this.roomLocks = roomLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.timeoutMillis = timeout.toMillis();
+        this.writers = new Writer[shards];
+        for (int i = 0; i < shards; i++){
+            this.writers[i] = new Writer(i);
+        }
+        this.snapshotPath = snapshotPath.isEmpty() ? null : Paths.get(snapshotPath);
+        this.snapshotInterval = snapshotInterval;
+        this.replayOverlap = replayOverlap;
+        this.logRetention = logRetention;
+    }
+
+    @PostConstruct
+    public void start(){
+        restore();
+        for (Writer writer : writers){
+            writer.thread.start();
+        }
+        if (snapshotPath != null && !snapshotInterval.isZero()){
+            snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "booking-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshots.scheduleWithFixedDelay(this::snapshotQuietly, snapshotInterval.toMillis(),
+                    snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (Writer writer : writers){
+            writer.running = false;
+            writer.thread.interrupt();
+        }
+        for (Writer writer : writers){
+            writer.thread.join(TimeUnit.SECONDS.toMillis(5));
+            writer.failPending(new RejectedExecutionException("Booking pipeline stopped"));
+        }
+        if (snapshots != null){
+            snapshots.shutdownNow();
+        }
+        snapshotQuietly();
+    }
+
+    /**
+     * Writes the published schedules to the snapshot file, then drops the
+     * logged changes older than the retention. Does nothing without a
+     * snapshot path.
+     */
+    public void snapshot() throws IOException {
+        if (snapshotPath == null){
+            return;
+        }
+        LocalDateTime takenAt = LocalDateTime.now();
+        List<RoomSchedule> published = new ArrayList<>(schedules.size());
+        for (AtomicReference<RoomSchedule> schedule : schedules.values()){
+            published.add(schedule.get());
+        }
+        ScheduleSnapshot.write(snapshotPath, takenAt, published, doctors, patients);
+        // Not by this snapshot's replay point, as other instances replay
+        // from their own snapshots.
+        transactionTemplate.executeWithoutResult(status ->
+                scheduleChangeRepository.deleteRecordedBefore(takenAt.minus(logRetention)));
+    }
+
+    private void snapshotQuietly(){
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e){
+            log.warn("Could not write schedule snapshot {}", snapshotPath, e);
+        }
+    }
+
+    private void restore(){
+        if (snapshotPath == null || !Files.exists(snapshotPath)){
+            return;
+        }
+        long started = System.nanoTime();
+        ScheduleSnapshot snapshot;
+        try {
+            snapshot = ScheduleSnapshot.read(snapshotPath, doctors, patients);
+        } catch (IOException | RuntimeException e){
+            log.warn("Ignoring unreadable schedule snapshot {}", snapshotPath, e);
+            return;
+        }
+        LocalDateTime replayFrom = snapshot.getTakenAt().minus(replayOverlap);
+        if (replayFrom.isBefore(LocalDateTime.now().minus(logRetention))){
+            log.info("Ignoring schedule snapshot {} taken at {}, as changes since may have been purged",
+                    snapshotPath, snapshot.getTakenAt());
+            return;
+        }
+        Map<String, RoomSchedule.Builder> rooms = snapshot.getRooms();
+        List<ScheduleChange> changes = transactionTemplate.execute(status ->
+                scheduleChangeRepository.findByRecordedAtAfterOrderById(replayFrom));
+        for (ScheduleChange change : changes){
+            replay(rooms, change);
+        }
+        for (Map.Entry<String, RoomSchedule.Builder> room : rooms.entrySet()){
+            schedules.put(room.getKey(), new AtomicReference<>(room.getValue().build()));
+        }
+        log.info("Restored {} room schedules from {} and {} logged changes in {} ms", rooms.size(), snapshotPath,
+                changes.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // Rooms left out of the snapshot, or dropped here, load from the
+    // database on first use, which already holds these changes.
+    private static void replay(Map<String, RoomSchedule.Builder> rooms, ScheduleChange change){
+        if (change.getKind() == ScheduleChange.Kind.CLEARED){
+            rooms.clear();
+            return;
+        }
+        RoomSchedule.Builder schedule = rooms.get(change.getRoomName());
+        if (schedule == null){
+            return;
+        }
+        schedule.remove(change.getAppointmentId());
+        if (change.getKind() == ScheduleChange.Kind.BOOKED){
+            schedule.add(change.getAppointmentId(), change.getStartsAt(), change.getFinishesAt(),
+                    change.getDoctorId(), change.getPatientId());
+        }
+    }
+
+    /**
+     * Books an appointment whose patient and doctor are either new or carry
+     * the id of a stored row. The room is matched by name.
+     */
+    public BookingResult book(Appointment appointment) throws InterruptedException, TimeoutException {
+        return await(enqueue(new Command(Kind.BOOK, appointment.getRoom().getRoomName(), appointment, null)));
+    }
+
+    /**
+     * Books an appointment that names its patient, doctor and room.
+     */
+    public BookingResult book(AppointmentReference reference) throws InterruptedException, TimeoutException {
+        Patient patient = new Patient();
+        patient.setId(reference.getPatientId());
+        Doctor doctor = new Doctor();
+        doctor.setId(reference.getDoctorId());
+        Appointment probe = new Appointment(patient, doctor, new Room(reference.getRoomName()),
+                reference.getStartsAt(), reference.getFinishesAt());
+        return await(enqueue(new Command(Kind.BOOK, reference.getRoomName(), probe, reference)));
+    }
+
+    public CompletableFuture<BookingResult> submit(Appointment appointment){
+        return enqueue(new Command(Kind.BOOK, appointment.getRoom().getRoomName(), appointment, null)).result;
+    }
+
+    /**
+     * Moves a stored appointment to the window and room of {@code moved},
+     * which carries its id, as long as the row still has the version the
+     * move was made from. The appointment's own slot does not count as
+     * taken. Only the new room's writer checks and stores the move; the old
+     * room drops the appointment once it commits. The accepted result holds
+     * the updated row, with its new version.
+     */
+    public BookingResult move(Appointment stored, Appointment moved, long version)
+            throws InterruptedException, TimeoutException {
+        return await(enqueue(new Command(Kind.MOVE, moved.getRoom().getRoomName(), moved, stored, version)));
+    }
+
+    /**
+     * The room's last published schedule, without waiting; empty when no
+     * writer has loaded the room yet.
+     */
+    public Optional<RoomSchedule> loadedSchedule(String roomName){
+        AtomicReference<RoomSchedule> schedule = schedules.get(roomName);
+        return schedule == null ? Optional.empty() : Optional.of(schedule.get());
+    }
+
+    /**
+     * The room's schedule, loaded by its writer first if needed, without
+     * blocking the caller. Completes on the writer's thread.
+     */
+    public CompletableFuture<RoomSchedule> loadSchedule(String roomName){
+        Optional<RoomSchedule> loaded = loadedSchedule(roomName);
+        if (loaded.isPresent()){
+            return CompletableFuture.completedFuture(loaded.get());
+        }
+        return enqueue(new Command(Kind.LOAD, roomName, null, null)).result
+                .thenApply(loadedNow -> schedules.get(roomName).get());
+    }
+
+    /**
+     * Calls the listener with the room name each time a writer publishes a
+     * changed schedule for a room, or forgets it. Listeners run on the
+     * writer's thread and must return quickly.
+     */
+    public void addScheduleListener(Consumer<String> listener){
+        scheduleListeners.add(listener);
+    }
+
+    /**
+     * The room's schedule, asking its writer to load it first if needed.
+     */
+    public RoomSchedule schedule(String roomName) throws InterruptedException, TimeoutException {
+        Optional<RoomSchedule> loaded = loadedSchedule(roomName);
+        if (loaded.isPresent()){
+            return loaded.get();
+        }
+        await(enqueue(new Command(Kind.LOAD, roomName, null, null)));
+        return schedules.get(roomName).get();
+    }
+
+    /**
+     * Deletes a stored appointment and takes it out of its room's schedule.
+     */
+    public void delete(Appointment appointment){
+        String roomName = appointment.getRoom() == null ? null : appointment.getRoom().getRoomName();
+        transactionTemplate.executeWithoutResult(status -> {
+            appointmentRepository.deleteById(appointment.getId());
+            if (roomName != null){
+                scheduleChangeRepository.append(Collections.singletonList(new ScheduleChange(LocalDateTime.now(),
+                        ScheduleChange.Kind.REMOVED, roomName, appointment.getId(), 0, 0, 0, 0)));
+            }
+        });
+        if (roomName != null){
+            remove(roomName, appointment.getId());
+        }
+    }
+
+    /**
+     * Takes appointments deleted in bulk outside the pipeline, as archived
+     * ones are, out of their rooms' schedules. Their removal must already
+     * be logged. Returns once every writer has done so.
+     */
+    public void removed(List<Appointment> appointments) throws InterruptedException, TimeoutException {
+        List<Command> removals = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments){
+            if (appointment.getRoom() != null){
+                removals.add(remove(appointment.getRoom().getRoomName(), appointment.getId()));
+            }
+        }
+        for (Command command : removals){
+            await(command);
+        }
+    }
+
+    private Command remove(String roomName, long id){
+        Appointment removed = new Appointment();
+        removed.setId(id);
+        return enqueue(new Command(Kind.REMOVE, roomName, removed, null));
+    }
+
+    /**
+     * Deletes every appointment and forgets every schedule.
+     */
+    public void deleteAll() throws InterruptedException, TimeoutException {
+        transactionTemplate.executeWithoutResult(status -> {
+            appointmentRepository.deleteAll();
+            scheduleChangeRepository.append(Collections.singletonList(new ScheduleChange(LocalDateTime.now(),
+                    ScheduleChange.Kind.CLEARED, null, 0, 0, 0, 0, 0)));
+        });
+        clear();
+    }
+
+    /**
+     * Forgets the room's schedule, so it loads again from the database on
+     * next use. For rooms changed by another instance; does not wait.
+     */
+    public void forget(String roomName){
+        enqueue(new Command(Kind.FORGET, roomName, null, null));
+    }
+
+    /**
+     * Forgets every schedule, so each room loads again from the database.
+     * Returns once every writer has done so.
+     */
+    public void clear() throws InterruptedException, TimeoutException {
+        List<Command> cleared = new ArrayList<>(writers.length);
+        for (Writer writer : writers){
+            Command command = new Command(Kind.CLEAR, null, null, null);
+            writer.queue.add(command);
+            cleared.add(command);
+        }
+        for (Command command : cleared){
+            await(command);
+        }
+    }
+
+    private Command enqueue(Command command){
+        writers[Math.floorMod(command.roomName.hashCode(), writers.length)].queue.add(command);
+        return command;
+    }
+
+    // A caller that gives up takes the command back, so it is never stored
+    // after the caller was told it failed. Once its writer has started it,
+    // the answer is on the way and worth the wait.
+    private BookingResult await(Command command) throws InterruptedException, TimeoutException {
+        try {
+            try {
+                return command.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | InterruptedException e){
+                if (command.drop()){
+                    throw e;
+                }
+                return command.result.get();
+            }
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static final class Command {
+        final Kind kind;
+        final String roomName;
+        final Appointment appointment;
+        final AppointmentReference reference;
+        // For moves, the appointment as read at the version being replaced
+        final Appointment previous;
+        final long version;
+        final CompletableFuture<BookingResult> result = new CompletableFuture<>();
+        // Taken by the writer that starts the command or the caller that
+        // drops it, whichever comes first
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        // The row a move updated, once stored
+        Appointment stored;
+
+        Command(Kind kind, String roomName, Appointment appointment, AppointmentReference reference){
+            this(kind, roomName, appointment, reference, null, 0);
+        }
+
+        Command(Kind kind, String roomName, Appointment appointment, Appointment previous, long version){
+            this(kind, roomName, appointment, null, previous, version);
+        }
+
+        private Command(Kind kind, String roomName, Appointment appointment, AppointmentReference reference,
+                        Appointment previous, long version){
+            this.kind = kind;
+            this.roomName = roomName;
+            this.appointment = appointment;
+            this.reference = reference;
+            this.previous = previous;
+            this.version = version;
+        }
+
+        boolean start(){
+            return claimed.compareAndSet(false, true) && !result.isDone();
+        }
+
+        boolean drop(){
+            if (!claimed.compareAndSet(false, true)){
+                return false;
+            }
+            result.cancel(false);
+            return true;
+        }
+
+        // What the booking held before it was first stored, so that an
+        // attempt which rolled back can be undone and stored again as new
+        private Room room;
+        private boolean newAppointment;
+        private boolean newPatient;
+        private boolean newDoctor;
+        private boolean newRoom;
+
+        void remember(){
+            room = appointment.getRoom();
+            newAppointment = appointment.getId() == 0;
+            newPatient = appointment.getPatient() != null && appointment.getPatient().getId() == 0;
+            newDoctor = appointment.getDoctor() != null && appointment.getDoctor().getId() == 0;
+            newRoom = room != null && room.getId() == 0;
+        }
+
+        // Rolling back leaves the ids it assigned on the entities
+        void forgetAttempt(){
+            stored = null;
+            if (newAppointment){
+                appointment.setId(0);
+            }
+            if (newPatient){
+                appointment.getPatient().setId(0);
+            }
+            if (newDoctor){
+                appointment.getDoctor().setId(0);
+            }
+            appointment.setRoom(room);
+            if (newRoom){
+                room.setId(0);
+            }
+        }
+
+        // Null for an appointment that had no room
+        String previousRoomName(){
+            return previous.getRoom() == null ? null : previous.getRoom().getRoomName();
+        }
+    }
+
+    private final class Writer implements Runnable {
+
+        final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+        final Thread thread;
+        volatile boolean running = true;
+
+        private final List<Command> batch = new ArrayList<>();
+        // Schedules changed by the current batch, published after commit
+        private final Map<String, RoomSchedule.Builder> pending = new HashMap<>();
+        private final Map<String, Room> rooms = new HashMap<>();
+        // Logged by the current transaction, appended in one batch before it commits
+        private final List<ScheduleChange> changes = new ArrayList<>();
+
+        Writer(int index){
+            this.thread = new Thread(this, "booking-writer-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run(){
+            while (running){
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e){
+                    return;
+                }
+                queue.drainTo(batch, batchSize - 1);
+                // Dropped by callers that stopped waiting
+                batch.removeIf(command -> !command.start());
+                try {
+                    process();
+                } catch (RuntimeException e){
+                    log.error("Booking batch failed", e);
+                    for (Command command : batch){
+                        command.result.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+                pending.clear();
+                rooms.clear();
+            }
+        }
+
+        private void process(){
+            List<Command> accepted = new ArrayList<>(batch.size());
+            Set<Long> moved = new HashSet<>();
+            for (Command command : batch){
+                switch (command.kind){
+                    case LOAD:
+                        current(command.roomName);
+                        command.result.complete(null);
+                        break;
+                    case REMOVE:
+                        removeFrom(command.roomName, command.appointment.getId());
+                        command.result.complete(null);
+                        break;
+                    case MOVE:
+                        long id = command.appointment.getId();
+                        if (moved.contains(id)){
+                            // Made from the version the batch's earlier move replaces
+                            command.result.complete(BookingResult.conflict(command.appointment));
+                            break;
+                        }
+                        RoomSchedule.Builder target = pending.computeIfAbsent(command.roomName,
+                                room -> current(room).toBuilder());
+                        boolean held = target.remove(id);
+                        if (target.overlaps(command.appointment)){
+                            if (held){
+                                target.add(command.previous);
+                            }
+                            command.result.complete(BookingResult.rejected(command.appointment));
+                        } else {
+                            target.add(command.appointment);
+                            moved.add(id);
+                            accepted.add(command);
+                        }
+                        break;
+                    case FORGET:
+                        // Bookings of this batch in the room are still stored
+                        schedules.remove(command.roomName);
+                        pending.remove(command.roomName);
+                        published(command.roomName);
+                        command.result.complete(null);
+                        break;
+                    case CLEAR:
+                        for (String roomName : new ArrayList<>(schedules.keySet())){
+                            if (isMine(roomName)){
+                                schedules.remove(roomName);
+                                published(roomName);
+                            }
+                        }
+                        pending.clear();
+                        command.result.complete(null);
+                        break;
+                    default:
+                        RoomSchedule.Builder schedule = pending.computeIfAbsent(command.roomName,
+                                room -> current(room).toBuilder());
+                        if (schedule.overlaps(command.appointment)){
+                            command.result.complete(BookingResult.rejected(command.appointment));
+                        } else {
+                            schedule.add(command.appointment);
+                            accepted.add(command);
+                        }
+                }
+            }
+            if (accepted.isEmpty()){
+                return;
+            }
+
+            Map<Command, BookingResult.Status> failed = new HashMap<>();
+            List<Command> taken = new ArrayList<>();
+            Map<Command, RuntimeException> errors = new HashMap<>();
+            for (Command command : accepted){
+                command.remember();
+            }
+            try {
+                storeLocked(accepted, failed, taken);
+            } catch (RuntimeException e){
+                if (accepted.size() == 1){
+                    fail(accepted.get(0), e, failed, taken, errors);
+                } else {
+                    // One bad command rolled back the others; store each on
+                    // its own so only that one fails.
+                    log.warn("Booking batch of {} failed, storing its commands one at a time", accepted.size(), e);
+                    for (Command command : accepted){
+                        command.forgetAttempt();
+                        rooms.clear();
+                        try {
+                            storeLocked(Collections.singletonList(command), failed, taken);
+                        } catch (RuntimeException single){
+                            fail(command, single, failed, taken, errors);
+                        }
+                    }
+                }
+            }
+
+            // Another instance booked in these rooms, or changed a moved
+            // appointment; load them again.
+            Set<String> stale = new HashSet<>();
+            for (Command command : accepted){
+                RoomSchedule.Builder schedule = pending.get(command.roomName);
+                if (schedule == null){
+                    // Cleared later in the same batch
+                    continue;
+                }
+                boolean rejected = failed.containsKey(command) || taken.contains(command)
+                        || errors.containsKey(command);
+                if (command.kind == Kind.MOVE){
+                    if (rejected){
+                        stale.add(command.roomName);
+                    }
+                } else if (rejected){
+                    schedule.discard(command.appointment);
+                } else {
+                    schedule.assignId(command.appointment);
+                }
+            }
+            for (Command command : taken){
+                stale.add(command.roomName);
+            }
+            for (Map.Entry<String, RoomSchedule.Builder> changed : pending.entrySet()){
+                if (!stale.contains(changed.getKey())){
+                    schedules.get(changed.getKey()).set(changed.getValue().build());
+                    published(changed.getKey());
+                }
+            }
+            for (String roomName : stale){
+                if (schedules.remove(roomName) != null){
+                    current(roomName);
+                    published(roomName);
+                }
+            }
+            for (Command command : accepted){
+                if (command.kind != Kind.MOVE || taken.contains(command) || failed.containsKey(command)
+                        || errors.containsKey(command) || command.previousRoomName() == null
+                        || command.previousRoomName().equals(command.roomName)){
+                    continue;
+                }
+                if (isMine(command.previousRoomName())){
+                    removeFrom(command.previousRoomName(), command.appointment.getId());
+                } else {
+                    remove(command.previousRoomName(), command.appointment.getId());
+                }
+            }
+            for (Command command : taken){
+                command.result.complete(BookingResult.rejected(command.appointment));
+            }
+            for (Command command : accepted){
+                if (taken.contains(command)){
+                    continue;
+                }
+                RuntimeException error = errors.get(command);
+                if (error != null){
+                    command.result.completeExceptionally(error);
+                    continue;
+                }
+                BookingResult.Status status = failed.get(command);
+                if (status == null){
+                    command.result.complete(BookingResult.accepted(
+                            command.kind == Kind.MOVE ? command.stored : command.appointment));
+                } else {
+                    command.result.complete(status == BookingResult.Status.CONFLICT
+                            ? BookingResult.conflict(command.appointment)
+                            : BookingResult.notFound(command.appointment));
+                }
+            }
+        }
+
+        private void storeLocked(List<Command> commands, Map<Command, BookingResult.Status> failed,
+                                 List<Command> taken){
+            Map<String, List<Command>> byRoom = new HashMap<>();
+            for (Command command : commands){
+                byRoom.computeIfAbsent(command.roomName, room -> new ArrayList<>()).add(command);
+            }
+            roomLocks.inLockedTransaction(transactionTemplate, byRoom.keySet(), () -> {
+                changes.clear();
+                for (Command command : commands){
+                    failed.remove(command);
+                    taken.remove(command);
+                }
+                // Checked before anything is stored, so the batch's own
+                // bookings, which never overlap each other, are not seen.
+                for (Map.Entry<String, List<Command>> room : byRoom.entrySet()){
+                    List<Object[]> stored = storedAround(room.getKey(), room.getValue());
+                    for (Command command : room.getValue()){
+                        if (overlapsStored(command, stored)){
+                            taken.add(command);
+                        }
+                    }
+                }
+                for (Command command : commands){
+                    if (taken.contains(command)){
+                        continue;
+                    }
+                    BookingResult.Status stored = command.kind == Kind.MOVE ? move(command)
+                            : store(command) ? BookingResult.Status.ACCEPTED : BookingResult.Status.NOT_FOUND;
+                    if (stored != BookingResult.Status.ACCEPTED){
+                        failed.put(command, stored);
+                    }
+                }
+                scheduleChangeRepository.append(changes);
+            });
+            changes.clear();
+        }
+
+        private void fail(Command command, RuntimeException e, Map<Command, BookingResult.Status> failed,
+                          List<Command> taken, Map<Command, RuntimeException> errors){
+            command.forgetAttempt();
+            failed.remove(command);
+            taken.remove(command);
+            errors.put(command, e);
+        }
+
+        private void removeFrom(String roomName, long id){
+            AtomicReference<RoomSchedule> published = schedules.get(roomName);
+            if (published != null){
+                RoomSchedule.Builder without = published.get().toBuilder();
+                if (without.remove(id)){
+                    published.set(without.build());
+                    published(roomName);
+                }
+            }
+            RoomSchedule.Builder edited = pending.get(roomName);
+            if (edited != null){
+                edited.remove(id);
+            }
+        }
+
+        private boolean store(Command command){
+            Appointment appointment = command.appointment;
+            if (command.reference != null){
+                Optional<AppointmentReference> booked = appointmentBooking.book(command.reference);
+                if (!booked.isPresent()){
+                    return false;
+                }
+                appointment.setId(booked.get().getId());
+            } else {
+                appointment.setRoom(existingRoom(appointment.getRoom()));
+                appointmentRepository.save(appointment);
+            }
+            changes.add(new ScheduleChange(LocalDateTime.now(), ScheduleChange.Kind.BOOKED,
+                    command.roomName, appointment.getId(),
+                    EpochMinutes.of(appointment.getStartsAt()), EpochMinutes.of(appointment.getFinishesAt()),
+                    appointment.getDoctor() == null ? 0L : appointment.getDoctor().getId(),
+                    appointment.getPatient() == null ? 0L : appointment.getPatient().getId()));
+            return true;
+        }
+
+        // Updates the row under a lock, so its version cannot change before
+        // commit. Only the changed columns are written.
+        private BookingResult.Status move(Command command){
+            Appointment moved = command.appointment;
+            Optional<Appointment> found = appointmentRepository.findForUpdate(moved.getId());
+            if (!found.isPresent()){
+                return BookingResult.Status.NOT_FOUND;
+            }
+            Appointment stored = found.get();
+            if (stored.getVersion() != command.version){
+                return BookingResult.Status.CONFLICT;
+            }
+            Room room = existingRoom(moved.getRoom());
+            if (room.getId() == 0){
+                return BookingResult.Status.NOT_FOUND;
+            }
+            String from = stored.getRoom() == null ? null : stored.getRoom().getRoomName();
+            stored.setStartsAt(moved.getStartsAt());
+            stored.setFinishesAt(moved.getFinishesAt());
+            stored.setRoom(room);
+            LocalDateTime now = LocalDateTime.now();
+            if (from != null && !from.equals(command.roomName)){
+                changes.add(new ScheduleChange(now, ScheduleChange.Kind.REMOVED,
+                        from, stored.getId(), 0, 0, 0, 0));
+            }
+            changes.add(new ScheduleChange(now, ScheduleChange.Kind.BOOKED,
+                    command.roomName, stored.getId(),
+                    EpochMinutes.of(stored.getStartsAt()), EpochMinutes.of(stored.getFinishesAt()),
+                    stored.getDoctor() == null ? 0L : stored.getDoctor().getId(),
+                    stored.getPatient() == null ? 0L : stored.getPatient().getId()));
+            command.stored = stored;
+            return BookingResult.Status.ACCEPTED;
+        }
+
+        // One query per room and batch: every stored appointment that could
+        // overlap one of the commands, whichever way round their times are.
+        private List<Object[]> storedAround(String roomName, List<Command> commands){
+            LocalDateTime from = null;
+            LocalDateTime to = null;
+            for (Command command : commands){
+                for (LocalDateTime time : new LocalDateTime[]{command.appointment.getStartsAt(),
+                        command.appointment.getFinishesAt()}){
+                    if (from == null || time.isBefore(from)){
+                        from = time;
+                    }
+                    if (to == null || time.isAfter(to)){
+                        to = time;
+                    }
+                }
+            }
+            return appointmentRepository.findTimesAround(roomName, from, to);
+        }
+
+        // Same rule as Appointment.overlaps; a move does not clash with itself
+        private boolean overlapsStored(Command command, List<Object[]> stored){
+            LocalDateTime start = command.appointment.getStartsAt();
+            LocalDateTime finish = command.appointment.getFinishesAt();
+            long excludedId = command.kind == Kind.MOVE ? command.appointment.getId() : 0L;
+            for (Object[] row : stored){
+                LocalDateTime existingStart = (LocalDateTime) row[1];
+                LocalDateTime existingFinish = (LocalDateTime) row[2];
+                if ((Long) row[0] != excludedId
+                        && (existingStart.equals(start) || existingFinish.equals(finish)
+                        || (existingStart.isBefore(finish) && finish.isBefore(existingFinish))
+                        || (existingStart.isBefore(start) && start.isBefore(existingFinish)))){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private RoomSchedule current(String roomName){
+            AtomicReference<RoomSchedule> published = schedules.get(roomName);
+            if (published == null){
+                published = new AtomicReference<>(RoomSchedule.builder(roomName, doctors, patients,
+                        appointmentRepository.findByRoomRoomName(roomName)).build());
+                schedules.put(roomName, published);
+            }
+            return published.get();
+        }
+
+        // Rooms are named by clients, so attach the stored row instead of
+        // letting the cascade insert a second room with the same name.
+        private Room existingRoom(Room room){
+            if (room.getId() != 0){
+                return room;
+            }
+            return rooms.computeIfAbsent(room.getRoomName(), name -> {
+                Optional<Room> stored = roomRepository.findByRoomName(name);
+                return stored.isPresent() ? stored.get() : room;
+            });
+        }
+
+        private void published(String roomName){
+            for (Consumer<String> listener : scheduleListeners){
+                try {
+                    listener.accept(roomName);
+                } catch (RuntimeException e){
+                    log.warn("Schedule listener failed for room {}", roomName, e);
+                }
+            }
+        }
+
+        private boolean isMine(String roomName){
+            return writers[Math.floorMod(roomName.hashCode(), writers.length)] == this;
+        }
+
+        void failPending(Exception e){
+            Command command;
+            while ((command = queue.poll()) != null){
+                command.result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.demo.booking;
+
+import com.example.demo.entities.Appointment;
+
+/**
+ * The answer to one booking: the stored appointment, a rejection because it
+ * overlaps an appointment already in the room, a rejection because the
+ * patient, doctor or room it refers to does not exist, or, for a move, a
+ * rejection because the appointment changed since the version it was made
+ * from.
+ */
+public final class BookingResult {
+
+    public enum Status { ACCEPTED, REJECTED, NOT_FOUND, CONFLICT }
+
+    private final Status status;
+    private final Appointment appointment;
+
+    private BookingResult(Status status, Appointment appointment){
+        this.status = status;
+        this.appointment = appointment;
+    }
+
+    static BookingResult accepted(Appointment appointment){
+        return new BookingResult(Status.ACCEPTED, appointment);
+    }
+
+    static BookingResult rejected(Appointment appointment){
+        return new BookingResult(Status.REJECTED, appointment);
+    }
+
+    static BookingResult notFound(Appointment appointment){
+        return new BookingResult(Status.NOT_FOUND, appointment);
+    }
+
+    static BookingResult conflict(Appointment appointment){
+        return new BookingResult(Status.CONFLICT, appointment);
+    }
+
+    public Status getStatus(){
+        return this.status;
+    }
+
+    public boolean isAccepted(){
+        return this.status == Status.ACCEPTED;
+    }
+
+    public Appointment getAppointment(){
+        return this.appointment;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.demo.booking;
+
+import java.util.Arrays;
+
+/**
+ * Maps entity ids to dense int codes, so schedules can store a doctor or
+ * patient in four bytes. Codes are never reused or forgotten.
+ *
+ * <p>Writers intern under the monitor. Readers decode without locking: a
+ * code only reaches a reader through a schedule published after it was
+ * interned, and that publication makes the id visible.
+ */
+final class IdDictionary {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    // Open addressing, linear probing; slots hold id and code side by side
+    private long[] keys = newKeys(64);
+    private int[] codes = new int[64];
+    private volatile long[] ids = new long[64];
+    private int size;
+
+    synchronized int intern(long id){
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (keys[slot] != FREE){
+            if (keys[slot] == id){
+                return codes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int code = size++;
+        keys[slot] = id;
+        codes[slot] = code;
+        long[] current = ids;
+        if (code == current.length){
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[code] = id;
+        ids = current;
+        if (size * 2 > keys.length){
+            rehash(keys.length * 2);
+        }
+        return code;
+    }
+
+    long id(int code){
+        return ids[code];
+    }
+
+    synchronized int size(){
+        return size;
+    }
+
+    /**
+     * The ids in code order; interning them into an empty dictionary in
+     * this order gives every id its code back.
+     */
+    synchronized long[] toArray(){
+        return Arrays.copyOf(ids, size);
+    }
+
+    private void rehash(int capacity){
+        long[] oldKeys = keys;
+        int[] oldCodes = codes;
+        keys = newKeys(capacity);
+        codes = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++){
+            if (oldKeys[i] != FREE){
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != FREE){
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+    }
+
+    private static int slot(long id, int mask){
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static long[] newKeys(int capacity){
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        return keys;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo.booking;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entities.Room;
+
+/**
+ * Mutual exclusion per room across instances, with {@code SELECT ... FOR
+ * UPDATE} on the room rows. The single writer per room of
+ * {@link BookingPipeline} only serializes bookings inside one JVM; with
+ * several instances on one database, each writer first locks the rows of
+ * the rooms it is about to book, then checks the bookings against the
+ * stored appointments, which its cached schedules may not show yet.
+ * <p>
+ * Rooms are locked in name order, so writers that book several rooms in
+ * one transaction cannot deadlock each other. A lock not granted within
+ * {@code booking.lock.timeout} rolls the transaction back, and it is tried
+ * again after an exponential backoff with jitter, up to
+ * {@code booking.lock.attempts} times. Only a transaction that failed while
+ * taking its locks is retried: nothing has been written at that point.
+ * <p>
+ * The timeout is passed as the JPA lock timeout hint. MySQL ignores it and
+ * applies innodb_lock_wait_timeout, set for the pool in
+ * application.properties.
+ */
+@Component
+public class RoomLocks {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomLocks.class);
+
+    // MySQL lock wait timeout and deadlock, H2 lock timeout and deadlock
+    private static final int[] CONTENTION_ERROR_CODES = {1205, 1213, 50200, 40001};
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final int timeoutMillis;
+    private final int attempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+
+    public RoomLocks(@Value("${booking.lock.timeout:2s}") Duration timeout,
+                     @Value("${booking.lock.attempts:5}") int attempts,
+                     @Value("${booking.lock.backoff:20ms}") Duration backoff,
+                     @Value("${booking.lock.max-backoff:1s}") Duration maxBackoff){
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+        this.attempts = Math.max(1, attempts);
+        this.backoffMillis = Math.max(1, backoff.toMillis());
+        this.maxBackoffMillis = Math.max(this.backoffMillis, maxBackoff.toMillis());
+    }
+
+    /**
+     * Runs {@code work} in a transaction that first locks the rows of the
+     * named rooms. Rooms without a row are not locked; the unique room name
+     * still keeps two instances from creating the same room.
+     */
+    public void inLockedTransaction(TransactionTemplate transactionTemplate, Collection<String> roomNames,
+                                    Runnable work){
+        TreeSet<String> ordered = new TreeSet<>(roomNames);
+        for (int attempt = 1; ; attempt++){
+            boolean[] locked = {false};
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    lock(ordered);
+                    locked[0] = true;
+                    work.run();
+                });
+                return;
+            } catch (RuntimeException e){
+                if (locked[0] || attempt >= attempts || !isLockContention(e)){
+                    throw e;
+                }
+                long backoff = backoff(attempt);
+                log.debug("Rooms {} are locked elsewhere, attempt {} of {} again in {} ms",
+                        ordered, attempt + 1, attempts, backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted){
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void lock(Collection<String> orderedRoomNames){
+        for (String roomName : orderedRoomNames){
+            entityManager.createQuery("select r from Room r where r.roomName = :roomName", Room.class)
+                    .setParameter("roomName", roomName)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setHint("javax.persistence.lock.timeout", timeoutMillis)
+                    .getResultList();
+        }
+    }
+
+    // Full jitter: a random wait up to the exponential bound, so writers that
+    // collided do not collide again in step.
+    long backoff(int attempt){
+        long bound = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        return 1 + ThreadLocalRandom.current().nextLong(bound);
+    }
+
+    static boolean isLockContention(Throwable failure){
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()){
+            if (cause instanceof PessimisticLockingFailureException
+                    || cause instanceof javax.persistence.PessimisticLockException
+                    || cause instanceof javax.persistence.LockTimeoutException){
+                return true;
+            }
+            if (cause instanceof SQLException){
+                SQLException sql = (SQLException) cause;
+                for (int code : CONTENTION_ERROR_CODES){
+                    if (sql.getErrorCode() == code){
+                        return true;
+                    }
+                }
+                if ("40001".equals(sql.getSQLState())){
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause){
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.demo.booking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.example.demo.archive.EpochMinutes;
+import com.example.demo.entities.Appointment;
+import com.example.demo.services.AppointmentReference;
+
+/**
+ * The appointments of one room, ordered by start. Instances never change:
+ * the room's writer edits a {@link Builder} and publishes the result with a
+ * reference swap, so any thread can read a schedule without locks and
+ * always sees a consistent, committed state.
+ *
+ * <p>Appointments are stored column-wise in parallel primitive arrays:
+ * start and finish as epoch minutes (see {@link EpochMinutes}), doctor and
+ * patient as codes from dictionaries shared by every room, and the id.
+ * That is 24 bytes a booking, against several hundred for the entity
+ * graph, and checking a booking allocates nothing.
+ */
+public final class RoomSchedule {
+
+    private final String roomName;
+    private final IdDictionary doctors;
+    private final IdDictionary patients;
+    private final int size;
+    private final int[] startsAt;
+    private final int[] finishesAt;
+    private final int[] doctorCodes;
+    private final int[] patientCodes;
+    private final long[] ids;
+    // Bounds of finish - start over the stored appointments, clamped to 0;
+    // they limit how far from the new booking a clashing start can be.
+    private final int maxSpan;
+    private final int minSpan;
+
+    private RoomSchedule(Builder builder){
+        this.roomName = builder.roomName;
+        this.doctors = builder.doctors;
+        this.patients = builder.patients;
+        this.size = builder.size;
+        this.startsAt = Arrays.copyOf(builder.startsAt, size);
+        this.finishesAt = Arrays.copyOf(builder.finishesAt, size);
+        this.doctorCodes = Arrays.copyOf(builder.doctorCodes, size);
+        this.patientCodes = Arrays.copyOf(builder.patientCodes, size);
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.maxSpan = builder.maxSpan;
+        this.minSpan = builder.minSpan;
+    }
+
+    /**
+     * A schedule of the given appointments, which must all be in the room.
+     */
+    public static RoomSchedule of(String roomName, Collection<Appointment> appointments){
+        return builder(roomName, new IdDictionary(), new IdDictionary(), appointments).build();
+    }
+
+    static Builder builder(String roomName, IdDictionary doctors, IdDictionary patients,
+                           Collection<Appointment> appointments){
+        List<Appointment> sorted = new ArrayList<>(appointments);
+        sorted.sort(Comparator.comparing(Appointment::getStartsAt));
+        Builder builder = new Builder(roomName, doctors, patients, sorted.size());
+        for (Appointment appointment : sorted){
+            builder.add(appointment);
+        }
+        return builder;
+    }
+
+    /**
+     * True when any appointment here overlaps the given one, in the sense of
+     * {@link Appointment#overlaps}. Only the times are compared; the caller
+     * picks the schedule of the appointment's room.
+     */
+    public boolean overlaps(Appointment appointment){
+        return overlaps(EpochMinutes.of(appointment.getStartsAt()), EpochMinutes.of(appointment.getFinishesAt()));
+    }
+
+    public boolean overlaps(int start, int finish){
+        return overlaps(startsAt, finishesAt, size, maxSpan, minSpan, start, finish);
+    }
+
+    public String getRoomName(){
+        return this.roomName;
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    public List<AppointmentReference> getAppointments(){
+        List<AppointmentReference> appointments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++){
+            AppointmentReference reference = new AppointmentReference(patients.id(patientCodes[i]),
+                    doctors.id(doctorCodes[i]), roomName,
+                    EpochMinutes.toLocalDateTime(startsAt[i]), EpochMinutes.toLocalDateTime(finishesAt[i]));
+            reference.setId(ids[i]);
+            appointments.add(reference);
+        }
+        return Collections.unmodifiableList(appointments);
+    }
+
+    Builder toBuilder(){
+        Builder builder = new Builder(roomName, doctors, patients, size + 16);
+        System.arraycopy(startsAt, 0, builder.startsAt, 0, size);
+        System.arraycopy(finishesAt, 0, builder.finishesAt, 0, size);
+        System.arraycopy(doctorCodes, 0, builder.doctorCodes, 0, size);
+        System.arraycopy(patientCodes, 0, builder.patientCodes, 0, size);
+        System.arraycopy(ids, 0, builder.ids, 0, size);
+        builder.size = size;
+        builder.maxSpan = maxSpan;
+        builder.minSpan = minSpan;
+        return builder;
+    }
+
+    /**
+     * Writes the columns as size, ids, starts, finishes, doctor codes and
+     * patient codes. The buffer's order decides the byte order.
+     */
+    void writeTo(ByteBuffer buffer){
+        buffer.putInt(size).putInt(0);
+        buffer.asLongBuffer().put(ids, 0, size);
+        buffer.position(buffer.position() + 8 * size);
+        for (int[] column : new int[][]{startsAt, finishesAt, doctorCodes, patientCodes}){
+            buffer.asIntBuffer().put(column, 0, size);
+            buffer.position(buffer.position() + 4 * size);
+        }
+    }
+
+    int columnBytes(){
+        return 8 + 24 * size;
+    }
+
+    /**
+     * Reads what {@link #writeTo} wrote, with codes from the given
+     * dictionaries.
+     */
+    static Builder readFrom(ByteBuffer buffer, String roomName, IdDictionary doctors, IdDictionary patients){
+        int size = buffer.getInt();
+        buffer.getInt();
+        Builder builder = new Builder(roomName, doctors, patients, size + 16);
+        buffer.asLongBuffer().get(builder.ids, 0, size);
+        buffer.position(buffer.position() + 8 * size);
+        for (int[] column : new int[][]{builder.startsAt, builder.finishesAt, builder.doctorCodes, builder.patientCodes}){
+            buffer.asIntBuffer().get(column, 0, size);
+            buffer.position(buffer.position() + 4 * size);
+        }
+        builder.size = size;
+        for (int i = 0; i < size; i++){
+            int span = builder.finishesAt[i] - builder.startsAt[i];
+            builder.maxSpan = Math.max(builder.maxSpan, span);
+            builder.minSpan = Math.min(builder.minSpan, span);
+        }
+        return builder;
+    }
+
+    // Appointment.overlaps(existing, new) is true when the starts or the
+    // finishes are equal, or when the new start or finish falls strictly
+    // inside the existing one. In every case the existing start lies in
+    // [min(start, finish) - maxSpan, max(start, finish - minSpan)], so only
+    // that window of the sorted starts is read. The API accepts bookings that
+    // finish before they start, hence minSpan.
+    private static boolean overlaps(int[] startsAt, int[] finishesAt, int size, int maxSpan, int minSpan,
+                                    int start, int finish){
+        long from = (long) Math.min(start, finish) - maxSpan;
+        long last = Math.max(start, (long) finish - minSpan);
+        for (int i = lowerBound(startsAt, size, from); i < size && startsAt[i] <= last; i++){
+            int existingStart = startsAt[i];
+            int existingFinish = finishesAt[i];
+            if (existingStart == start || existingFinish == finish
+                    || (existingStart < finish && finish < existingFinish)
+                    || (existingStart < start && start < existingFinish)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int lowerBound(int[] startsAt, int size, long value){
+        int low = 0;
+        int high = size;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (startsAt[middle] < value){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A schedule being edited by its room's writer. Not thread-safe.
+     */
+    static final class Builder {
+
+        private final String roomName;
+        private final IdDictionary doctors;
+        private final IdDictionary patients;
+        private int size;
+        private int[] startsAt;
+        private int[] finishesAt;
+        private int[] doctorCodes;
+        private int[] patientCodes;
+        private long[] ids;
+        private int maxSpan;
+        private int minSpan;
+
+        private Builder(String roomName, IdDictionary doctors, IdDictionary patients, int capacity){
+            this.roomName = roomName;
+            this.doctors = doctors;
+            this.patients = patients;
+            this.startsAt = new int[capacity];
+            this.finishesAt = new int[capacity];
+            this.doctorCodes = new int[capacity];
+            this.patientCodes = new int[capacity];
+            this.ids = new long[capacity];
+        }
+
+        boolean overlaps(Appointment appointment){
+            return RoomSchedule.overlaps(startsAt, finishesAt, size, maxSpan, minSpan,
+                    EpochMinutes.of(appointment.getStartsAt()), EpochMinutes.of(appointment.getFinishesAt()));
+        }
+
+        void add(Appointment appointment){
+            add(appointment.getId(), EpochMinutes.of(appointment.getStartsAt()), EpochMinutes.of(appointment.getFinishesAt()),
+                    appointment.getDoctor() == null ? 0L : appointment.getDoctor().getId(),
+                    appointment.getPatient() == null ? 0L : appointment.getPatient().getId());
+        }
+
+        void add(long id, int start, int finish, long doctorId, long patientId){
+            if (size == ids.length){
+                grow();
+            }
+            int at = lowerBound(startsAt, size, start + 1L);
+            int tail = size - at;
+            System.arraycopy(startsAt, at, startsAt, at + 1, tail);
+            System.arraycopy(finishesAt, at, finishesAt, at + 1, tail);
+            System.arraycopy(doctorCodes, at, doctorCodes, at + 1, tail);
+            System.arraycopy(patientCodes, at, patientCodes, at + 1, tail);
+            System.arraycopy(ids, at, ids, at + 1, tail);
+            startsAt[at] = start;
+            finishesAt[at] = finish;
+            doctorCodes[at] = doctors.intern(doctorId);
+            patientCodes[at] = patients.intern(patientId);
+            ids[at] = id;
+            maxSpan = Math.max(maxSpan, finish - start);
+            minSpan = Math.min(minSpan, finish - start);
+            size++;
+        }
+
+        /**
+         * Records the id a stored appointment was given. It is found by its
+         * start, which no other appointment in the room can share.
+         */
+        void assignId(Appointment appointment){
+            int at = unassigned(appointment);
+            if (at >= 0){
+                ids[at] = appointment.getId();
+            }
+        }
+
+        /**
+         * Drops an appointment added in this batch that was not stored.
+         */
+        void discard(Appointment appointment){
+            int at = unassigned(appointment);
+            if (at >= 0){
+                removeAt(at);
+            }
+        }
+
+        boolean remove(long id){
+            for (int i = 0; i < size; i++){
+                if (ids[i] == id){
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        RoomSchedule build(){
+            return new RoomSchedule(this);
+        }
+
+        private int unassigned(Appointment appointment){
+            int start = EpochMinutes.of(appointment.getStartsAt());
+            for (int i = lowerBound(startsAt, size, start); i < size && startsAt[i] == start; i++){
+                if (ids[i] == 0){
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void removeAt(int at){
+            int tail = size - at - 1;
+            System.arraycopy(startsAt, at + 1, startsAt, at, tail);
+            System.arraycopy(finishesAt, at + 1, finishesAt, at, tail);
+            System.arraycopy(doctorCodes, at + 1, doctorCodes, at, tail);
+            System.arraycopy(patientCodes, at + 1, patientCodes, at, tail);
+            System.arraycopy(ids, at + 1, ids, at, tail);
+            size--;
+        }
+
+        private void grow(){
+            int capacity = Math.max(16, ids.length + (ids.length >> 1));
+            startsAt = Arrays.copyOf(startsAt, capacity);
+            finishesAt = Arrays.copyOf(finishesAt, capacity);
+            doctorCodes = Arrays.copyOf(doctorCodes, capacity);
+            patientCodes = Arrays.copyOf(patientCodes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+    }
+}
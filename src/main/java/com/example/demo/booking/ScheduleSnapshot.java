@@ -0,0 +1,146 @@
+package com.example.demo.booking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The published room schedules written to one memory-mapped file, so a
+ * restarted instance can load them with a few bulk copies instead of
+ * reading every appointment from the database. Little-endian:
+ *
+ * <pre>
+ *  header   magic, version, takenAt (epoch seconds, long),
+ *           doctorCount, patientCount, roomCount, 0              (32 bytes)
+ *  long[]   doctor ids, patient ids, in dictionary code order
+ *  rooms    nameLength, UTF-8 name padded to 8 bytes, then the columns
+ *           written by {@link RoomSchedule#writeTo}
+ * </pre>
+ *
+ * Files are written beside the target and moved over it, so a reader never
+ * sees a partial snapshot.
+ */
+final class ScheduleSnapshot {
+
+    static final int MAGIC = 0x52534348;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    private final LocalDateTime takenAt;
+    private final Map<String, RoomSchedule.Builder> rooms;
+
+    private ScheduleSnapshot(LocalDateTime takenAt, Map<String, RoomSchedule.Builder> rooms){
+        this.takenAt = takenAt;
+        this.rooms = rooms;
+    }
+
+    LocalDateTime getTakenAt(){
+        return this.takenAt;
+    }
+
+    Map<String, RoomSchedule.Builder> getRooms(){
+        return this.rooms;
+    }
+
+    static void write(Path path, LocalDateTime takenAt, Collection<RoomSchedule> schedules,
+                      IdDictionary doctors, IdDictionary patients) throws IOException {
+        // Exported after the schedules were taken, so they hold every code used
+        long[] doctorIds = doctors.toArray();
+        long[] patientIds = patients.toArray();
+
+        List<byte[]> names = new ArrayList<>(schedules.size());
+        long length = HEADER_BYTES + 8L * (doctorIds.length + patientIds.length);
+        for (RoomSchedule schedule : schedules){
+            byte[] name = schedule.getRoomName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            length += padded(4 + name.length) + schedule.columnBytes();
+        }
+        if (length > Integer.MAX_VALUE){
+            throw new IOException("Schedule snapshot of " + length + " bytes does not fit one mapping");
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(takenAt.toEpochSecond(ZoneOffset.UTC))
+                    .putInt(doctorIds.length).putInt(patientIds.length).putInt(schedules.size()).putInt(0);
+            buffer.asLongBuffer().put(doctorIds).put(patientIds);
+            buffer.position(buffer.position() + 8 * (doctorIds.length + patientIds.length));
+            int room = 0;
+            for (RoomSchedule schedule : schedules){
+                byte[] name = names.get(room++);
+                int start = buffer.position();
+                buffer.putInt(name.length).put(name);
+                buffer.position(start + padded(4 + name.length));
+                schedule.writeTo(buffer);
+            }
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot, interning its doctors and patients into the given
+     * dictionaries, which must be empty so that the stored codes stay valid.
+     */
+    static ScheduleSnapshot read(Path path, IdDictionary doctors, IdDictionary patients) throws IOException {
+        if (doctors.size() != 0 || patients.size() != 0){
+            throw new IllegalStateException("Snapshots load into empty dictionaries only");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                throw new IOException("Not a schedule snapshot: " + path);
+            }
+            LocalDateTime takenAt = LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC);
+            int doctorCount = buffer.getInt();
+            int patientCount = buffer.getInt();
+            int roomCount = buffer.getInt();
+            buffer.getInt();
+
+            intern(buffer, doctorCount, doctors);
+            intern(buffer, patientCount, patients);
+
+            Map<String, RoomSchedule.Builder> rooms = new HashMap<>(roomCount * 2);
+            for (int i = 0; i < roomCount; i++){
+                int start = buffer.position();
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                buffer.position(start + padded(4 + name.length));
+                String roomName = new String(name, StandardCharsets.UTF_8);
+                rooms.put(roomName, RoomSchedule.readFrom(buffer, roomName, doctors, patients));
+            }
+            return new ScheduleSnapshot(takenAt, rooms);
+        }
+    }
+
+    private static void intern(ByteBuffer buffer, int count, IdDictionary dictionary){
+        long[] ids = new long[count];
+        buffer.asLongBuffer().get(ids);
+        buffer.position(buffer.position() + 8 * count);
+        for (long id : ids){
+            dictionary.intern(id);
+        }
+    }
+
+    private static int padded(int length){
+        return (length + 7) & ~7;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the
+ * loader and everyone who arrives while it is running waits for and shares
+ * its result, or its exception. Nothing is cached once the call returns.
+ *
+ * <p>Writers must call {@link #forget} after their change is committed and
+ * before they respond, so that any lookup starting afterwards runs a fresh
+ * call instead of joining one that may have read the old row. Callers that
+ * joined earlier were concurrent with the write and may see either state.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    public V execute(K key, Supplier<V> loader){
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, own);
+        if (running != null){
+            return await(running);
+        }
+
+        try {
+            V value = loader.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e){
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, own);
+        }
+    }
+
+    /**
+     * Detaches the call in flight for the key, if any, from later callers.
+     */
+    public void forget(K key){
+        calls.remove(key);
+    }
+
+    public void forgetAll(){
+        calls.clear();
+    }
+
+    private static <V> V await(CompletableFuture<V> call){
+        try {
+            return call.join();
+        } catch (CompletionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,13 +1,42 @@
 package com.example.demo.controllers;
 
+import com.example.demo.archive.AppointmentArchiver;
+import com.example.demo.archive.ArchivedAppointment;
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.BookingResult;
+import com.example.demo.concurrent.SingleFlight;
 import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Room;
 import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.services.AppointmentExporter;
+import com.example.demo.services.AppointmentReference;
+import com.example.demo.services.ExportExecutor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
@@ -16,6 +45,30 @@ public class AppointmentController {
     @Autowired
     AppointmentRepository appointmentRepository;
 
+    @Autowired
+    AppointmentExporter appointmentExporter;
+
+    @Autowired
+    AppointmentArchiver appointmentArchiver;
+
+    @Autowired
+    BookingPipeline bookingPipeline;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ExportExecutor exportExecutor;
+
+    @Value("${export.timeout:-1}")
+    Duration exportTimeout;
+
+    // Patient and doctor are changed through their own endpoints
+    private static final Set<String> MOVABLE_FIELDS = Patches.fields("startsAt", "finishesAt", "room");
+    private static final Set<String> ROOM_FIELDS = Patches.fields("roomName");
+
+    private final SingleFlight<Long, Optional<Appointment>> appointmentLookups = new SingleFlight<>();
+
     public AppointmentController(AppointmentRepository appointmentRepository) {
         this.appointmentRepository = appointmentRepository;
     }
@@ -32,22 +85,213 @@ public class AppointmentController {
     @GetMapping("/appointments/{id}")
     public ResponseEntity<Appointment> getAppointmentById(@PathVariable("id") long id) {
 
-        return appointmentRepository.findById(id)
-                .map(appointment -> ResponseEntity.ok(appointment))
+        return appointmentLookups.execute(id, () -> appointmentRepository.findById(id))
+                .map(appointment -> ResponseEntity.ok().eTag(Patches.etag(appointment.getVersion())).body(appointment))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/appointments/export")
+    public ResponseEntity<ResponseBodyEmitter> exportAppointments(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        AppointmentExporter.Format exportFormat;
+        try {
+            exportFormat = AppointmentExporter.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!from.isBefore(to))
+            return ResponseEntity.badRequest().build();
+
+        // The export streams for as long as it needs, on threads of its own; 503 once they are all busy.
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseBodyEmitter body = new ResponseBodyEmitter(exportTimeout.toMillis());
+        try {
+            exportExecutor.execute(() -> {
+                try {
+                    OutputStream out = new BufferedOutputStream(new EmitterOutputStream(body), 64 * 1024);
+                    OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+                    appointmentExporter.export(from.atStartOfDay(), to.atStartOfDay(), exportFormat, target);
+                    if (gzip)
+                        ((GZIPOutputStream) target).finish();
+                    out.flush();
+                    body.complete();
+                } catch (IOException | RuntimeException e) {
+                    body.completeWithError(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat == AppointmentExporter.Format.CSV
+                        ? MediaType.valueOf("text/csv")
+                        : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip)
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(body);
+    }
+
+    // Past appointments moved out of the table; 404 where this instance keeps no archive
+    @GetMapping("/appointments/history")
+    public ResponseEntity<List<ArchivedAppointment>> getAppointmentHistory(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        if (!appointmentArchiver.isEnabled())
+            return ResponseEntity.notFound().build();
+        if (!from.isBefore(to))
+            return ResponseEntity.badRequest().build();
+
+        List<ArchivedAppointment> history = appointmentArchiver.history(from.atStartOfDay(), to.atStartOfDay());
+        return history.isEmpty()
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.ok(history);
+    }
+
+    // Archived minutes booked per room, clipped to the window
+    @GetMapping("/appointments/history/utilization")
+    public ResponseEntity<Map<String, Long>> getArchivedUtilization(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        if (!appointmentArchiver.isEnabled())
+            return ResponseEntity.notFound().build();
+        if (!from.isBefore(to))
+            return ResponseEntity.badRequest().build();
+
+        return ResponseEntity.ok(appointmentArchiver.utilization(from.atStartOfDay(), to.atStartOfDay()));
+    }
+
+    @GetMapping("/rooms/{roomName}/appointments")
+    public ResponseEntity<List<AppointmentReference>> getRoomSchedule(@PathVariable("roomName") String roomName)
+            throws InterruptedException {
+
+        List<AppointmentReference> schedule;
+        try {
+            schedule = bookingPipeline.schedule(roomName).getAppointments();
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return schedule.isEmpty()
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.ok(schedule);
+    }
+
     @PostMapping("/appointment")
-    public ResponseEntity<Appointment> createAppointment(@RequestBody Appointment appointment) {
+    public ResponseEntity<Appointment> createAppointment(@RequestBody Appointment appointment) throws InterruptedException {
+
+        if (!isValidTime(appointment))
+            return ResponseEntity.badRequest().build();
+
+        if (overlapsPublishedSchedule(appointment))
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+
+        BookingResult result;
+        try {
+            result = bookingPipeline.book(appointment);
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (!result.isAccepted())
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+
+        appointmentLookups.forget(result.getAppointment().getId());
+        return ResponseEntity.ok(result.getAppointment());
+    }
+
+    @PostMapping("/appointment/by-reference")
+    public ResponseEntity<AppointmentReference> createAppointmentByReference(@RequestBody AppointmentReference reference)
+            throws InterruptedException {
+
+        if (reference.getRoomName() == null || reference.getStartsAt() == null || reference.getFinishesAt() == null)
+            return ResponseEntity.badRequest().build();
+
+        // Only the room name and times take part in the overlap check.
+        Appointment appointment = new Appointment(null, null, new Room(reference.getRoomName()),
+                reference.getStartsAt(), reference.getFinishesAt());
 
         if (!isValidTime(appointment))
             return ResponseEntity.badRequest().build();
 
-        if (hasOverlap(appointment))
+        if (overlapsPublishedSchedule(appointment))
             return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
 
-        Appointment createdAppointment = appointmentRepository.save(appointment);
-        return ResponseEntity.ok(createdAppointment);
+        BookingResult result;
+        try {
+            result = bookingPipeline.book(reference);
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (result.getStatus() == BookingResult.Status.REJECTED)
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        if (result.getStatus() == BookingResult.Status.NOT_FOUND)
+            return ResponseEntity.notFound().build();
+
+        reference.setId(result.getAppointment().getId());
+        appointmentLookups.forget(reference.getId());
+        return ResponseEntity.ok(reference);
+    }
+
+    // Moves the appointment, keeping its id. Overlaps are checked again only
+    // when the window or the room changes.
+    @PatchMapping("/appointments/{id}")
+    public ResponseEntity<Appointment> patchAppointment(@PathVariable("id") long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody ObjectNode patch) throws InterruptedException {
+
+        JsonNode room = patch.get("room");
+        if (!Patches.changesOnly(patch, MOVABLE_FIELDS)
+                || (room != null && !(room.isObject() && Patches.changesOnly((ObjectNode) room, ROOM_FIELDS))))
+            return ResponseEntity.badRequest().build();
+
+        Optional<Appointment> found = appointmentRepository.findById(id);
+        if (!found.isPresent())
+            return ResponseEntity.notFound().build();
+        Appointment stored = found.get();
+        HttpStatus unmet = Patches.unmet(ifMatch, stored.getVersion());
+        if (unmet != null)
+            return ResponseEntity.status(unmet).eTag(Patches.etag(stored.getVersion())).build();
+
+        // Patched on a copy, so the stored room is never renamed
+        Appointment moved = new Appointment(stored.getPatient(), stored.getDoctor(),
+                stored.getRoom() == null ? null : new Room(stored.getRoom().getRoomName()),
+                stored.getStartsAt(), stored.getFinishesAt());
+        moved.setId(id);
+        try {
+            objectMapper.readerForUpdating(moved).readValue(patch);
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (moved.getStartsAt() == null || moved.getFinishesAt() == null
+                || moved.getRoom() == null || moved.getRoom().getRoomName() == null || !isValidTime(moved))
+            return ResponseEntity.badRequest().build();
+
+        if (moved.getStartsAt().equals(stored.getStartsAt()) && moved.getFinishesAt().equals(stored.getFinishesAt())
+                && stored.getRoom() != null && moved.getRoom().getRoomName().equals(stored.getRoom().getRoomName()))
+            return ResponseEntity.ok().eTag(Patches.etag(stored.getVersion())).body(stored);
+
+        BookingResult result;
+        try {
+            result = bookingPipeline.move(stored, moved, stored.getVersion());
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (result.getStatus() == BookingResult.Status.REJECTED)
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        if (result.getStatus() == BookingResult.Status.NOT_FOUND)
+            return ResponseEntity.notFound().build();
+        if (result.getStatus() == BookingResult.Status.CONFLICT)
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+
+        appointmentLookups.forget(id);
+        Appointment updated = result.getAppointment();
+        return ResponseEntity.ok().eTag(Patches.etag(updated.getVersion())).body(updated);
     }
 
     @DeleteMapping("/appointments/{id}")
@@ -55,15 +299,22 @@ public class AppointmentController {
 
         return appointmentRepository.findById(id)
                 .map(appointment -> {
-                    appointmentRepository.deleteById(id);
+                    bookingPipeline.delete(appointment);
+                    appointmentLookups.forget(id);
                     return ResponseEntity.ok().build();
                 })
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/appointments")
-    public ResponseEntity<Void> deleteAllAppointments() {
-        appointmentRepository.deleteAll();
+    public ResponseEntity<Void> deleteAllAppointments() throws InterruptedException {
+        try {
+            bookingPipeline.deleteAll();
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } finally {
+            appointmentLookups.forgetAll();
+        }
         return ResponseEntity.ok().build();
 
     }
@@ -73,15 +324,68 @@ public class AppointmentController {
         return !appointment.getStartsAt().isEqual(appointment.getFinishesAt());
     }
 
-    private boolean hasOverlap(Appointment newAppointment) {
-        List<Appointment> appointments = appointmentRepository.findAll();
+    // A clash with a committed booking needs no trip through the room's
+    // writer; the writer still decides for everything that gets past here.
+    private boolean overlapsPublishedSchedule(Appointment appointment) {
+        return bookingPipeline.loadedSchedule(appointment.getRoom().getRoomName())
+                .map(schedule -> schedule.overlaps(appointment))
+                .orElse(false);
+    }
 
-        for (Appointment existingAppointment : appointments) {
-            if (existingAppointment.overlaps(newAppointment)) {
-                return true;
+    //    AUXILIARY METHODS ON EXPORT
+    // gzip, x-gzip or * with a non-zero q-value; a named coding wins over *
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        Double gzip = null;
+        Double any = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
             }
+            if (coding.equals("gzip") || coding.equals("x-gzip"))
+                gzip = gzip == null ? quality : Math.max(gzip, quality);
+            else if (coding.equals("*"))
+                any = quality;
         }
-        return false;
+        if (gzip != null)
+            return gzip > 0;
+        return any != null && any > 0;
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Hands each buffered chunk to the emitter, which writes and flushes it
+     * to the response. Closing leaves completing the emitter to the caller.
+     */
+    private static final class EmitterOutputStream extends OutputStream {
+
+        private final ResponseBodyEmitter emitter;
+
+        EmitterOutputStream(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // The emitter may hold on to the chunk until the response is ready, so it gets a copy.
+            if (len > 0)
+                emitter.send(Arrays.copyOfRange(b, off, off + len));
+        }
+    }
+}
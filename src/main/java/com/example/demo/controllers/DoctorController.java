@@ -1,23 +1,41 @@
 package com.example.demo.controllers;
 
+import com.example.demo.concurrent.SingleFlight;
 import com.example.demo.repositories.*;
 import com.example.demo.entities.Doctor;
+import com.example.demo.services.ImportReport;
+import com.example.demo.services.PersonImporter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 
 @RestController
 @RequestMapping("/api")
@@ -26,6 +44,15 @@ public class DoctorController {
     @Autowired
     DoctorRepository doctorRepository;
 
+    @Autowired
+    PersonImporter personImporter;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // Ward-round terminals ask for the same doctor at once; share the lookup.
+    private final SingleFlight<Long, Optional<Doctor>> doctorLookups = new SingleFlight<>();
+
     @GetMapping("/doctors")
     public ResponseEntity<List<Doctor>> getAllDoctors(){
         List<Doctor> doctors = new ArrayList<>();
@@ -41,21 +68,80 @@ public class DoctorController {
 
     @GetMapping("/doctors/{id}")
     public ResponseEntity<Doctor> getDoctorById(@PathVariable("id") long id){
-        Optional<Doctor> doctor = doctorRepository.findById(id);
+        Optional<Doctor> doctor = doctorLookups.execute(id, () -> doctorRepository.findById(id));
         if (! doctor.isPresent()){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
 
-        return new ResponseEntity<>(doctor.get(),HttpStatus.OK);
+        return ResponseEntity.ok().eTag(Patches.etag(doctor.get().getVersion())).body(doctor.get());
+    }
+
+    @GetMapping("/doctors/search")
+    public ResponseEntity<Page<Doctor>> searchDoctors(@RequestParam(value = "name", required = false) String name,
+                                                   @RequestParam(value = "email", required = false) String email,
+                                                   @RequestParam(value = "minAge", required = false) Integer minAge,
+                                                   @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                                   @PageableDefault(size = 20, sort = {"lastName", "firstName", "id"}) Pageable pageable){
+        Specification<Doctor> criteria = PersonSpecifications.matching(name, email, minAge, maxAge);
+        if (criteria == null || !PersonSpecifications.sortable(pageable.getSort())){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        // An empty page still carries the totals and paging metadata
+        Page<Doctor> doctors = doctorRepository.findAll(criteria, pageable);
+
+        return new ResponseEntity<>(doctors, HttpStatus.OK);
     }
 
     @PostMapping("/doctor")
     public ResponseEntity<Doctor> createDoctor(@RequestBody Doctor doc){
         Doctor d = new Doctor(doc.getFirstName(), doc.getLastName(), doc.getAge(), doc.getEmail());
         doctorRepository.save(d);
+        doctorLookups.forget(d.getId());
         return new ResponseEntity<>(d, HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/doctors/import", consumes = {PersonImporter.TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ImportReport> importDoctors(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                      InputStream body) throws IOException {
+        ImportReport report = personImporter.importPeople(body, contentType,
+                p -> new Doctor(p.getFirstName(), p.getLastName(), p.getAge(), p.getEmail()));
+        doctorLookups.forgetAll();
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    // Only the fields sent are written; Hibernate checks the version again
+    // in the update, so a change committed after the read is not lost.
+    @PatchMapping("/doctors/{id}")
+    public ResponseEntity<Doctor> patchDoctor(@PathVariable("id") long id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestBody ObjectNode patch){
+        if (!Patches.changesOnly(patch, Patches.PERSON_FIELDS)){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Optional<Doctor> found = doctorRepository.findById(id);
+        if (! found.isPresent()){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        Doctor doctor = found.get();
+        HttpStatus unmet = Patches.unmet(ifMatch, doctor.getVersion());
+        if (unmet != null){
+            return ResponseEntity.status(unmet).eTag(Patches.etag(doctor.getVersion())).build();
+        }
+        try {
+            objectMapper.readerForUpdating(doctor).readValue(patch);
+        } catch (IOException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            doctor = doctorRepository.save(doctor);
+        } catch (OptimisticLockingFailureException e){
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        doctorLookups.forget(id);
+        return ResponseEntity.ok().eTag(Patches.etag(doctor.getVersion())).body(doctor);
+    }
+
     @DeleteMapping("/doctors/{id}")
     public ResponseEntity<HttpStatus> deleteDoctor(@PathVariable("id") long id){
         Optional<Doctor> doctor = doctorRepository.findById(id);
@@ -65,12 +151,14 @@ public class DoctorController {
         }
 
         doctorRepository.deleteById(id);
+        doctorLookups.forget(id);
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
     @DeleteMapping("/doctors")
     public ResponseEntity<HttpStatus> deleteAllDoctors(){
         doctorRepository.deleteAll();
+        doctorLookups.forgetAll();
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
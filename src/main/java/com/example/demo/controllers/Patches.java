@@ -0,0 +1,61 @@
+package com.example.demo.controllers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * What the PATCH endpoints share. A patch is a JSON object with the fields
+ * to change, and only those. A row's ETag is its version; a patch must send
+ * it back in If-Match, or {@code *}, so a client never overwrites a change
+ * it has not seen.
+ */
+final class Patches {
+
+    static final Set<String> PERSON_FIELDS = fields("firstName", "lastName", "age", "email");
+
+    private Patches(){
+    }
+
+    static Set<String> fields(String... names){
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+
+    static boolean changesOnly(ObjectNode patch, Set<String> fields){
+        for (Iterator<String> names = patch.fieldNames(); names.hasNext(); ){
+            if (!fields.contains(names.next())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String etag(long version){
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * The status to answer when If-Match does not let the patch through, or
+     * null when it does. Weak tags never match, as If-Match compares
+     * strongly.
+     */
+    static HttpStatus unmet(String ifMatch, long version){
+        if (ifMatch == null){
+            return HttpStatus.PRECONDITION_REQUIRED;
+        }
+        String current = etag(version);
+        for (String tag : ifMatch.split(",")){
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(current)){
+                return null;
+            }
+        }
+        return HttpStatus.PRECONDITION_FAILED;
+    }
+}
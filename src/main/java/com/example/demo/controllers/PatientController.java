@@ -3,22 +3,43 @@ package com.example.demo.controllers;
 
 import com.example.demo.repositories.*;
 import com.example.demo.entities.Patient;
+import com.example.demo.search.PatientNameIndex;
+import com.example.demo.search.TrigramIndex;
+import com.example.demo.services.ImportReport;
+import com.example.demo.services.PersonImporter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 
 @RestController
 @RequestMapping("/api")
@@ -27,6 +48,15 @@ public class PatientController {
     @Autowired
     PatientRepository patientRepository;
 
+    @Autowired
+    PersonImporter personImporter;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PatientNameIndex patientNameIndex;
+
     @GetMapping("/patients")
     public ResponseEntity<List<Patient>> getAllPatients(){
         List<Patient> patients = new ArrayList<>();
@@ -46,7 +76,53 @@ public class PatientController {
         if (! patient.isPresent()){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
-        return new ResponseEntity<>(patient.get(),HttpStatus.OK);
+        return ResponseEntity.ok().eTag(Patches.etag(patient.get().getVersion())).body(patient.get());
+    }
+
+    @GetMapping("/patients/search")
+    public ResponseEntity<Page<Patient>> searchPatients(@RequestParam(value = "name", required = false) String name,
+                                                   @RequestParam(value = "email", required = false) String email,
+                                                   @RequestParam(value = "minAge", required = false) Integer minAge,
+                                                   @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                                   @PageableDefault(size = 20, sort = {"lastName", "firstName", "id"}) Pageable pageable){
+        Specification<Patient> criteria = PersonSpecifications.matching(name, email, minAge, maxAge);
+        if (criteria == null || !PersonSpecifications.sortable(pageable.getSort())){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        // An empty page still carries the totals and paging metadata
+        Page<Patient> patients = patientRepository.findAll(criteria, pageable);
+
+        return new ResponseEntity<>(patients, HttpStatus.OK);
+    }
+
+    @GetMapping("/patients/lookup")
+    public ResponseEntity<List<Patient>> lookupPatients(@RequestParam("q") String query,
+                                                        @RequestParam(value = "limit", defaultValue = "10") int limit){
+        TrigramIndex.Matches matches = patientNameIndex.search(query, Math.min(Math.max(limit, 1), 50));
+
+        List<Long> ids = new ArrayList<>(matches.ids.length);
+        for (long id : matches.ids){
+            ids.add(id);
+        }
+        Map<Long, Patient> found = new HashMap<>();
+        if (!ids.isEmpty()){
+            patientRepository.findAllById(ids).forEach(p -> found.put(p.getId(), p));
+        }
+
+        List<Patient> patients = new ArrayList<>(found.size());
+        for (Long id : ids){
+            Patient patient = found.get(id);
+            if (patient != null){
+                patients.add(patient);
+            }
+        }
+
+        if (patients.isEmpty()){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+
+        return new ResponseEntity<>(patients, HttpStatus.OK);
     }
 
     @PostMapping("/patient")
@@ -56,6 +132,45 @@ public class PatientController {
         return new ResponseEntity<>(d, HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/patients/import", consumes = {PersonImporter.TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ImportReport> importPatients(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                      InputStream body) throws IOException {
+        ImportReport report = personImporter.importPeople(body, contentType,
+                p -> new Patient(p.getFirstName(), p.getLastName(), p.getAge(), p.getEmail()));
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    // Only the fields sent are written; Hibernate checks the version again
+    // in the update, so a change committed after the read is not lost.
+    @PatchMapping("/patients/{id}")
+    public ResponseEntity<Patient> patchPatient(@PathVariable("id") long id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestBody ObjectNode patch){
+        if (!Patches.changesOnly(patch, Patches.PERSON_FIELDS)){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Optional<Patient> found = patientRepository.findById(id);
+        if (! found.isPresent()){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        Patient patient = found.get();
+        HttpStatus unmet = Patches.unmet(ifMatch, patient.getVersion());
+        if (unmet != null){
+            return ResponseEntity.status(unmet).eTag(Patches.etag(patient.getVersion())).build();
+        }
+        try {
+            objectMapper.readerForUpdating(patient).readValue(patch);
+        } catch (IOException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            patient = patientRepository.save(patient);
+        } catch (OptimisticLockingFailureException e){
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        return ResponseEntity.ok().eTag(Patches.etag(patient.getVersion())).body(patient);
+    }
+
     @DeleteMapping("/patients/{id}")
     public ResponseEntity<HttpStatus> deletePatient(@PathVariable("id") long id){
         Optional<Patient> patient = patientRepository.findById(id);
@@ -51,8 +51,13 @@ public class RoomController {
 
     @PostMapping("/room")
     public ResponseEntity<Room> createRoom(@RequestBody Room room){
-        Room tmp = new Room(room.getRoomName());
-        roomRepository.save(tmp);
+        // roomName is no longer the primary key, so save() would insert a
+        // second row instead of merging into the existing one.
+        Room tmp = roomRepository.findByRoomName(room.getRoomName()).orElse(null);
+        if (tmp == null){
+            tmp = new Room(room.getRoomName());
+            roomRepository.save(tmp);
+        }
         return new ResponseEntity<>(tmp, HttpStatus.CREATED);
     }
 
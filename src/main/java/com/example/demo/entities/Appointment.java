@@ -3,29 +3,49 @@ package com.example.demo.entities;
 import java.time.LocalDateTime;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.*;
+
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.example.demo.invalidation.InvalidationListener;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_appointment_room_starts_at", columnList = "room_id, startsAt"),
+        @Index(name = "idx_appointment_starts_at", columnList = "startsAt")
+})
+@EntityListeners(InvalidationListener.class)
+@DynamicUpdate
 public class Appointment {
 
+    // Reserved 256 at a time, a full booking batch, in one round trip
     @Id
-    @GeneratedValue(strategy=GenerationType.AUTO)
+    @GeneratedValue(generator = "appointment_ids")
+    @GenericGenerator(name = "appointment_ids", strategy = "enhanced-table", parameters = {
+            @Parameter(name = "table_name", value = "id_block"),
+            @Parameter(name = "segment_value", value = "appointment"),
+            @Parameter(name = "increment_size", value = "256"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private long id;
 
 
     @ManyToOne(cascade = CascadeType.ALL)
-    @JoinColumn(name = "patient_id", referencedColumnName = "id")
+    @JoinColumn(name = "patient_id", referencedColumnName = "id", foreignKey = @ForeignKey(name = "fk_appointment_patient"))
     private Patient patient;
 
     @ManyToOne(cascade = CascadeType.ALL)
-    @JoinColumn(name = "doctor_id", referencedColumnName = "id")
+    @JoinColumn(name = "doctor_id", referencedColumnName = "id", foreignKey = @ForeignKey(name = "fk_appointment_doctor"))
     private Doctor doctor;
 
     @ManyToOne(cascade = CascadeType.ALL)
-    @JoinColumn(name = "room_id", referencedColumnName = "roomName")
+    @JoinColumn(name = "room_id", referencedColumnName = "id", foreignKey = @ForeignKey(name = "fk_appointment_room"))
     private Room room;
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "HH:mm dd/MM/yyyy")
@@ -34,6 +54,15 @@ public class Appointment {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "HH:mm dd/MM/yyyy")
     private LocalDateTime finishesAt;
 
+    // Sent as the ETag of the appointment instead of in its body
+    @Version
+    private long version;
+
+    // The room of the stored row when it was read, so that moving the
+    // appointment out of it invalidates that room as well
+    @Transient
+    private String loadedRoomName;
+
     public Appointment(){
         super();
     }
@@ -82,6 +111,23 @@ public class Appointment {
         this.doctor = doctor;
     }
 
+    @JsonIgnore
+    public long getVersion(){
+        return this.version;
+    }
+
+    public String loadedRoomName(){
+        return this.loadedRoomName;
+    }
+
+    // Rooms still behind a proxy, as after booking by reference, are left
+    // alone rather than loaded for this
+    @PostLoad
+    @PostUpdate
+    void stored(){
+        this.loadedRoomName = this.room == null || !Hibernate.isInitialized(this.room) ? null : this.room.getRoomName();
+    }
+
     public Room getRoom(){
         return this.room;
     }
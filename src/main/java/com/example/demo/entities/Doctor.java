@@ -2,12 +2,32 @@ package com.example.demo.entities;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.example.demo.invalidation.InvalidationListener;
+
 @Entity
-@Table(name="doctors")
+@Table(name="doctors", indexes = {
+        @Index(name = "idx_doctors_last_name", columnList = "lastName, firstName"),
+        @Index(name = "idx_doctors_first_name", columnList = "firstName"),
+        @Index(name = "idx_doctors_email", columnList = "email"),
+        @Index(name = "idx_doctors_age", columnList = "age")
+})
+@EntityListeners(InvalidationListener.class)
+@DynamicUpdate
 public class Doctor extends Person {
 
+    // Reserved 500 at a time, a default import chunk, in one round trip
     @Id
-    @GeneratedValue(strategy=GenerationType.AUTO)
+    @GeneratedValue(generator = "doctor_ids")
+    @GenericGenerator(name = "doctor_ids", strategy = "enhanced-table", parameters = {
+            @Parameter(name = "table_name", value = "id_block"),
+            @Parameter(name = "segment_value", value = "doctors"),
+            @Parameter(name = "increment_size", value = "500"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private long id;
  
     public Doctor() {
@@ -0,0 +1,83 @@
+package com.example.demo.entities;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * The stored outcome of a POST sent with an {@code Idempotency-Key} header.
+ * A row with status 0 is a claim: the first request with that key is still
+ * being processed.
+ */
+@Entity
+@Table(name = "idempotency_record", indexes = @Index(name = "idx_idempotency_record_created_at", columnList = "createdAt"))
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private int status;
+
+    private String requestHash;
+
+    private String contentType;
+
+    @Lob
+    private byte[] body;
+
+    public IdempotencyRecord(){
+        super();
+    }
+
+    public IdempotencyRecord(String key, LocalDateTime createdAt){
+        this.key = key;
+        this.createdAt = createdAt;
+    }
+
+    public IdempotencyRecord(String key, LocalDateTime createdAt, int status, String requestHash,
+                             String contentType, byte[] body){
+        this.key = key;
+        this.createdAt = createdAt;
+        this.status = status;
+        this.requestHash = requestHash;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    public String getKey(){
+        return this.key;
+    }
+
+    public LocalDateTime getCreatedAt(){
+        return this.createdAt;
+    }
+
+    public int getStatus(){
+        return this.status;
+    }
+
+    public boolean isCompleted(){
+        return this.status > 0;
+    }
+
+    public String getRequestHash(){
+        return this.requestHash;
+    }
+
+    public String getContentType(){
+        return this.contentType;
+    }
+
+    public byte[] getBody(){
+        return this.body;
+    }
+}
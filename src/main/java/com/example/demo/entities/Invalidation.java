@@ -0,0 +1,86 @@
+package com.example.demo.entities;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Tells the other instances that a doctor, patient, room or appointment
+ * changed, so they drop what they cache about it. An entity id of
+ * {@link #ALL} stands for every row of the entity. Appointments and rooms
+ * carry the room name, which is what schedules are cached by.
+ */
+@Entity
+@Table(name = "invalidation", indexes = @Index(name = "idx_invalidation_recorded_at", columnList = "recordedAt"))
+public class Invalidation {
+
+    public enum Target { DOCTOR, PATIENT, ROOM, APPOINTMENT }
+
+    public static final long ALL = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity", nullable = false, length = 16)
+    private Target target;
+
+    private long entityId;
+
+    private String roomName;
+
+    @Column(nullable = false, length = 36)
+    private String origin;
+
+    @Column(nullable = false)
+    private LocalDateTime recordedAt;
+
+    public Invalidation(){
+        super();
+    }
+
+    public Invalidation(Target target, long entityId, String roomName, String origin, LocalDateTime recordedAt){
+        this.target = target;
+        this.entityId = entityId;
+        this.roomName = roomName;
+        this.origin = origin;
+        this.recordedAt = recordedAt;
+    }
+
+    public long getId(){
+        return this.id;
+    }
+
+    public Target getTarget(){
+        return this.target;
+    }
+
+    public long getEntityId(){
+        return this.entityId;
+    }
+
+    public boolean isAll(){
+        return this.entityId == ALL;
+    }
+
+    public String getRoomName(){
+        return this.roomName;
+    }
+
+    public String getOrigin(){
+        return this.origin;
+    }
+
+    public LocalDateTime getRecordedAt(){
+        return this.recordedAt;
+    }
+}
@@ -1,15 +1,39 @@
 package com.example.demo.entities;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.Id;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.example.demo.invalidation.InvalidationListener;
+import com.example.demo.search.PatientIndexListener;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_patient_last_name", columnList = "lastName, firstName"),
+        @Index(name = "idx_patient_first_name", columnList = "firstName"),
+        @Index(name = "idx_patient_email", columnList = "email"),
+        @Index(name = "idx_patient_age", columnList = "age")
+})
+@EntityListeners({PatientIndexListener.class, InvalidationListener.class})
+@DynamicUpdate
 public class Patient extends Person{
 
+    // Reserved 500 at a time, a default import chunk, in one round trip
     @Id
-    @GeneratedValue(strategy=GenerationType.AUTO)
+    @GeneratedValue(generator = "patient_ids")
+    @GenericGenerator(name = "patient_ids", strategy = "enhanced-table", parameters = {
+            @Parameter(name = "table_name", value = "id_block"),
+            @Parameter(name = "segment_value", value = "patient"),
+            @Parameter(name = "increment_size", value = "500"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private long id;
 
     public Patient(){
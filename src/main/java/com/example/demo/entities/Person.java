@@ -1,6 +1,9 @@
 package com.example.demo.entities;
 
 import javax.persistence.MappedSuperclass;
+import javax.persistence.Version;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @MappedSuperclass
 public class Person {
@@ -8,6 +11,10 @@ public class Person {
     private String lastName;
     private int age;
     private String email;
+
+    // Sent as the ETag of the doctor or patient instead of in its body
+    @Version
+    private long version;
     
     public Person(){
         super();
@@ -48,4 +55,9 @@ public class Person {
     public void setEmail(String email){
         this.email = email; 
     }
+
+    @JsonIgnore
+    public long getVersion(){
+        return this.version;
+    }
 }
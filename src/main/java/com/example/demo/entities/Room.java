@@ -1,12 +1,26 @@
 package com.example.demo.entities;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import com.example.demo.invalidation.InvalidationListener;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_room_room_name", columnNames = "roomName"))
+@EntityListeners(InvalidationListener.class)
 public class Room {
 
     @Id
+    @GeneratedValue(strategy=GenerationType.AUTO)
+    private long id;
+
+    @Column(nullable = false)
     private String roomName;
 
     public Room(){
@@ -18,6 +32,13 @@ public class Room {
         this.roomName = roomName;
     }
 
+    public long getId(){
+        return this.id;
+    }
+
+    public void setId(long id){
+        this.id = id;
+    }
 
     public String getRoomName(){
         return this.roomName;
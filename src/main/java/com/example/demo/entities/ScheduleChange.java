@@ -0,0 +1,103 @@
+package com.example.demo.entities;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * One entry of the room schedule change log, written in the same
+ * transaction as the booking or delete it records. Together with a schedule
+ * snapshot it lets a restarted instance rebuild its schedules without
+ * reading every appointment. Times are epoch minutes.
+ */
+@Entity
+@Table(name = "schedule_change", indexes = @Index(name = "idx_schedule_change_recorded_at", columnList = "recordedAt"))
+public class ScheduleChange {
+
+    public enum Kind { BOOKED, REMOVED, CLEARED }
+
+    // auto_increment, so ids follow the order changes to a room were made in,
+    // across instances, as replay needs; written in the booking transaction
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(nullable = false)
+    private LocalDateTime recordedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Kind kind;
+
+    private String roomName;
+
+    private long appointmentId;
+
+    private int startsAt;
+
+    private int finishesAt;
+
+    private long doctorId;
+
+    private long patientId;
+
+    public ScheduleChange(){
+        super();
+    }
+
+    public ScheduleChange(LocalDateTime recordedAt, Kind kind, String roomName, long appointmentId,
+                          int startsAt, int finishesAt, long doctorId, long patientId){
+        this.recordedAt = recordedAt;
+        this.kind = kind;
+        this.roomName = roomName;
+        this.appointmentId = appointmentId;
+        this.startsAt = startsAt;
+        this.finishesAt = finishesAt;
+        this.doctorId = doctorId;
+        this.patientId = patientId;
+    }
+
+    public long getId(){
+        return this.id;
+    }
+
+    public LocalDateTime getRecordedAt(){
+        return this.recordedAt;
+    }
+
+    public Kind getKind(){
+        return this.kind;
+    }
+
+    public String getRoomName(){
+        return this.roomName;
+    }
+
+    public long getAppointmentId(){
+        return this.appointmentId;
+    }
+
+    public int getStartsAt(){
+        return this.startsAt;
+    }
+
+    public int getFinishesAt(){
+        return this.finishesAt;
+    }
+
+    public long getDoctorId(){
+        return this.doctorId;
+    }
+
+    public long getPatientId(){
+        return this.patientId;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.execution;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Lets as many API requests run as the connection pool has connections.
+ * Once request threads are cheap they no longer cap concurrency, and
+ * without this every waiting client would sit in the pool's own queue
+ * until its connection timeout. Requests wait for a permit up to
+ * {@code execution.permit-timeout} and then get 503 with a
+ * {@code Retry-After}.
+ * <p>
+ * An asynchronous request, such as the appointment export stream, keeps
+ * its permit until it completes rather than until its first dispatch
+ * returns. The reactive endpoints are left out: their queries run on the
+ * reactive executor's own few threads, and a parked long poll holds no
+ * connection. Booking writers, the invalidation poller and that executor
+ * take connections without permits, so the pool must also have room for
+ * them.
+ */
+public class ConnectionPermitFilter extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+    private final long timeoutNanos;
+    private final Counter timeouts;
+
+    public ConnectionPermitFilter(int permits, long timeoutNanos, MeterRegistry registry){
+        this.permits = new Semaphore(permits, true);
+        this.timeoutNanos = timeoutNanos;
+        this.timeouts = Counter.builder("execution.permit.timeouts")
+                .description("API requests refused after waiting for a connection permit").register(registry);
+        Gauge.builder("execution.permits.available", this.permits, Semaphore::availablePermits)
+                .description("Connection permits not held by a request").register(registry);
+        Gauge.builder("execution.permits.waiting", this.permits, Semaphore::getQueueLength)
+                .description("API requests waiting for a connection permit").register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired){
+            timeouts.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Server is busy");
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()){
+                request.getAsyncContext().addListener(new Release());
+                async = true;
+            }
+        } finally {
+            if (!async){
+                permits.release();
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request){
+        return request.getRequestURI().startsWith(request.getContextPath() + "/api/reactive/");
+    }
+
+    // Async dispatches pass through, as the permit is already held.
+    private final class Release implements AsyncListener {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event){
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event){
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event){
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event){
+            // Started again from a dispatch, which drops the listeners
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release(){
+            if (released.compareAndSet(false, true)){
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.execution;
+
+import java.sql.SQLException;
+
+import javax.servlet.DispatcherType;
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@EnableConfigurationProperties(ExecutionProperties.class)
+@ConditionalOnExpression("!'${execution.mode:platform}'.equalsIgnoreCase('platform')")
+public class ExecutionConfiguration {
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    @Bean
+    public RequestExecutorCustomizer requestExecutorCustomizer(ExecutionProperties properties) {
+        return new RequestExecutorCustomizer(RequestExecutors.create(properties));
+    }
+
+    // Right after admission control, so rate-limited requests never wait for a permit.
+    @Bean
+    public FilterRegistrationBean<ConnectionPermitFilter> connectionPermitFilter(ExecutionProperties properties,
+                                                                                 DataSource dataSource,
+                                                                                 MeterRegistry registry) throws SQLException {
+        int permits = properties.getConnectionPermits() > 0 ? properties.getConnectionPermits() : poolSize(dataSource);
+        FilterRegistrationBean<ConnectionPermitFilter> registration = new FilterRegistrationBean<>(
+                new ConnectionPermitFilter(permits, properties.getPermitTimeout().toNanos(), registry));
+        registration.addUrlPatterns("/api/*");
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+        return registration;
+    }
+
+    // Hikari reports -1 until its pool starts and then settles on 10, its default.
+    private static int poolSize(DataSource dataSource) throws SQLException {
+        int size = dataSource.isWrapperFor(HikariDataSource.class)
+                ? dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize()
+                : -1;
+        return size > 0 ? size : DEFAULT_POOL_SIZE;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.demo.execution;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * How HTTP requests are executed. Bound from {@code execution.*} at startup.
+ */
+@ConfigurationProperties(prefix = "execution")
+public class ExecutionProperties {
+
+    public enum Mode {
+        /** Tomcat's own pool of {@code server.tomcat.threads.max} platform threads. */
+        PLATFORM,
+        /** One virtual thread per request; falls back to ELASTIC before Java 21. */
+        VIRTUAL,
+        /** Platform threads created on demand up to a bound, and retired when idle. */
+        ELASTIC
+    }
+
+    private Mode mode = Mode.PLATFORM;
+
+    /** Most threads the elastic executor runs at once. */
+    private int elasticMaxThreads = 1000;
+
+    /** Requests queued once every elastic thread is busy; more are refused. */
+    private int elasticQueueCapacity = 10000;
+
+    /** API requests running at once outside PLATFORM mode; 0 means the connection pool size. */
+    private int connectionPermits = 0;
+
+    /** How long a request waits for a permit before it gets 503. */
+    private Duration permitTimeout = Duration.ofSeconds(2);
+
+    public Mode getMode(){
+        return this.mode;
+    }
+    public void setMode(Mode mode){
+        this.mode = mode;
+    }
+
+    public int getElasticMaxThreads(){
+        return this.elasticMaxThreads;
+    }
+    public void setElasticMaxThreads(int elasticMaxThreads){
+        this.elasticMaxThreads = elasticMaxThreads;
+    }
+
+    public int getElasticQueueCapacity(){
+        return this.elasticQueueCapacity;
+    }
+    public void setElasticQueueCapacity(int elasticQueueCapacity){
+        this.elasticQueueCapacity = elasticQueueCapacity;
+    }
+
+    public int getConnectionPermits(){
+        return this.connectionPermits;
+    }
+    public void setConnectionPermits(int connectionPermits){
+        this.connectionPermits = connectionPermits;
+    }
+
+    public Duration getPermitTimeout(){
+        return this.permitTimeout;
+    }
+    public void setPermitTimeout(Duration permitTimeout){
+        this.permitTimeout = permitTimeout;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.demo.execution;
+
+import java.util.concurrent.ExecutorService;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+
+/**
+ * Hands Tomcat the request executor and shuts it down with the context,
+ * which Tomcat does not do for an executor it did not create. The executor
+ * is deliberately not a bean of its own: any Executor bean would make
+ * Spring Boot back off from the application task executor used by MVC
+ * async requests.
+ */
+public class RequestExecutorCustomizer implements TomcatProtocolHandlerCustomizer<ProtocolHandler>, DisposableBean {
+
+    private final ExecutorService executor;
+
+    public RequestExecutorCustomizer(ExecutorService executor){
+        this.executor = executor;
+    }
+
+    @Override
+    public void customize(ProtocolHandler protocolHandler){
+        protocolHandler.setExecutor(executor);
+    }
+
+    @Override
+    public void destroy(){
+        executor.shutdown();
+    }
+
+    public ExecutorService getExecutor(){
+        return this.executor;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.demo.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tomcat.util.threads.TaskQueue;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the executor Tomcat hands requests to outside PLATFORM mode. The
+ * source level is Java 8, so virtual threads are looked up reflectively
+ * and only used when the running JDK has them.
+ */
+public final class RequestExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestExecutors.class);
+
+    private RequestExecutors(){
+    }
+
+    public static ExecutorService create(ExecutionProperties properties){
+        if (properties.getMode() == ExecutionProperties.Mode.VIRTUAL){
+            ExecutorService virtual = virtualThreadPerTask();
+            if (virtual != null){
+                return virtual;
+            }
+            log.warn("Virtual threads need Java 21 or later, running on {}; using the elastic executor",
+                    System.getProperty("java.version"));
+        }
+        return elastic(properties.getElasticMaxThreads(), properties.getElasticQueueCapacity());
+    }
+
+    /**
+     * Starts with no threads, reuses idle ones, adds one per request only
+     * while all are busy, up to {@code maxThreads}, then queues; idle threads
+     * go after a minute. Tomcat's own pool and queue do exactly this, where
+     * a plain JDK pool would either start every core thread or never grow
+     * past its core. A full queue refuses the request and Tomcat closes the
+     * connection.
+     */
+    static ExecutorService elastic(int maxThreads, int queueCapacity){
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threads = task -> {
+            Thread thread = new Thread(task, "http-elastic-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        TaskQueue queue = new TaskQueue(queueCapacity);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, queue, threads);
+        queue.setParent(executor);
+        return executor;
+    }
+
+    static ExecutorService virtualThreadPerTask(){
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.idempotency;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IdempotencyConfiguration {
+
+    // Only the endpoints that create something; imports report per row and
+    // are not replayable as a whole.
+    static final String[] IDEMPOTENT_POSTS = {
+            "/api/appointment", "/api/appointment/by-reference",
+            "/api/doctor", "/api/patient", "/api/room"
+    };
+
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(IdempotencyStore store) {
+        FilterRegistrationBean<IdempotencyFilter> registration = new FilterRegistrationBean<>(new IdempotencyFilter(store));
+        registration.addUrlPatterns(IDEMPOTENT_POSTS);
+        return registration;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.idempotency;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import com.example.demo.entities.IdempotencyRecord;
+
+/**
+ * Makes POSTs that carry an {@code Idempotency-Key} header safe to retry.
+ * The first request with a key runs normally and its response is stored;
+ * later requests with the same key and body get that response back without
+ * reaching the controller. A retry while the first request is still
+ * running gets 409, and reusing a key for a different body gets 422.
+ * Server errors are not stored, so the client may retry them.
+ * <p>
+ * Keys are scoped to the caller's address, so two clients that happen to
+ * pick the same key never see each other's responses. Once the controller
+ * has answered below 500 the claim is never given back: if storing the
+ * response fails, retries get the copy this instance keeps in memory, or
+ * 409 elsewhere, rather than running the request a second time.
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    static final int MAX_KEY_LENGTH = 128;
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    private final IdempotencyStore store;
+
+    public IdempotencyFilter(IdempotencyStore store){
+        this.store = store;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request){
+        return !HttpMethod.POST.matches(request.getMethod()) || request.getHeader(IDEMPOTENCY_KEY) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY).trim();
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH){
+            response.sendError(HttpStatus.BAD_REQUEST.value(),
+                    IDEMPOTENCY_KEY + " must have between 1 and " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        String key = request.getRemoteAddr() + " " + request.getMethod() + " " + request.getRequestURI()
+                + " " + idempotencyKey;
+
+        IdempotencyRecord record = store.find(key);
+        if (record != null){
+            replay(record, request, response);
+            return;
+        }
+        if (!store.claim(key)){
+            response.sendError(HttpStatus.CONFLICT.value(), "A request with this " + IDEMPOTENCY_KEY + " is in progress");
+            return;
+        }
+
+        ContentCachingRequestWrapper cachingRequest = new ContentCachingRequestWrapper(request);
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        boolean answered = false;
+        try {
+            chain.doFilter(cachingRequest, cachingResponse);
+            if (cachingResponse.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()){
+                // The request has taken effect; from here on the key stays taken
+                answered = true;
+                try {
+                    store.complete(key, sha256(cachingRequest.getContentAsByteArray()), cachingResponse.getStatus(),
+                            cachingResponse.getContentType(), cachingResponse.getContentAsByteArray());
+                } catch (RuntimeException e){
+                    log.warn("Could not store the response for {}; keeping the claim", key, e);
+                }
+            }
+        } finally {
+            if (!answered){
+                store.release(key);
+            }
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+    private static void replay(IdempotencyRecord record, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!record.isCompleted()){
+            response.sendError(HttpStatus.CONFLICT.value(), "A request with this " + IDEMPOTENCY_KEY + " is in progress");
+            return;
+        }
+        if (!sha256(StreamUtils.copyToByteArray(request.getInputStream())).equals(record.getRequestHash())){
+            response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    IDEMPOTENCY_KEY + " was already used with a different request body");
+            return;
+        }
+        response.setStatus(record.getStatus());
+        response.setHeader(IDEMPOTENT_REPLAYED, "true");
+        if (record.getContentType() != null){
+            response.setContentType(record.getContentType());
+        }
+        byte[] body = record.getBody();
+        if (body != null && body.length > 0){
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    static String sha256(byte[] content){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest){
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.demo.idempotency;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entities.IdempotencyRecord;
+
+/**
+ * Completed idempotent responses, kept in a bounded LRU map in front of the
+ * {@code idempotency_record} table. The map answers retries that land on
+ * the same instance; the table answers the ones that land elsewhere and
+ * is where claims are made, so two instances cannot both run one key.
+ * Responses older than the TTL, and claims older than the claim lease, are
+ * treated as absent and purged lazily; the lease frees a key whose request
+ * was lost to a crash, so it must outlast the slowest request.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final int PURGE_EVERY = 256;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Duration claimLease;
+    private final Map<String, IdempotencyRecord> cache;
+    private final AtomicInteger completions = new AtomicInteger();
+
+    public IdempotencyStore(PlatformTransactionManager transactionManager,
+                            @Value("${idempotency.cache-size:10000}") int cacheSize,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            @Value("${idempotency.claim-lease:1m}") Duration claimLease){
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+        this.claimLease = claimLease;
+        this.cache = new LinkedHashMap<String, IdempotencyRecord>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest){
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the live record for the key, completed or claimed, or null.
+     */
+    public IdempotencyRecord find(String key){
+        IdempotencyRecord record;
+        synchronized (cache){
+            record = cache.get(key);
+        }
+        if (record != null){
+            if (!isExpired(record)){
+                return record;
+            }
+            synchronized (cache){
+                cache.remove(key);
+            }
+        }
+
+        record = transactionTemplate.execute(status -> entityManager.find(IdempotencyRecord.class, key));
+        if (record == null){
+            return null;
+        }
+        if (isExpired(record)){
+            expire(record);
+            return null;
+        }
+        if (record.isCompleted()){
+            remember(record);
+        }
+        return record;
+    }
+
+    /**
+     * Claims the key for the calling request. Returns false when another
+     * request, here or on another instance, already holds it; any other
+     * failure, such as the database being down, is thrown.
+     */
+    public boolean claim(String key){
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.persist(new IdempotencyRecord(key, now()));
+                entityManager.flush();
+            });
+            return true;
+        } catch (RuntimeException e){
+            if (isDuplicateKey(e)){
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stores the response for a claimed key. It is kept in memory first, so
+     * when writing it to the table fails, and that failure is thrown, this
+     * instance can still replay it while the table keeps the claim.
+     */
+    public void complete(String key, String requestHash, int status, String contentType, byte[] body){
+        IdempotencyRecord record = new IdempotencyRecord(key, now(), status, requestHash, contentType, body);
+        remember(record);
+        transactionTemplate.executeWithoutResult(tx -> entityManager.createQuery(
+                        "update IdempotencyRecord r set r.createdAt = :createdAt, r.status = :status,"
+                        + " r.requestHash = :requestHash, r.contentType = :contentType, r.body = :body"
+                        + " where r.key = :key")
+                .setParameter("createdAt", record.getCreatedAt())
+                .setParameter("status", status)
+                .setParameter("requestHash", requestHash)
+                .setParameter("contentType", contentType)
+                .setParameter("body", body)
+                .setParameter("key", key)
+                .executeUpdate());
+
+        if (completions.incrementAndGet() % PURGE_EVERY == 0){
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Drops a claim or record so the key can be used again, e.g. after the
+     * request that held it failed.
+     */
+    public void release(String key){
+        synchronized (cache){
+            cache.remove(key);
+        }
+        transactionTemplate.executeWithoutResult(status -> entityManager
+                .createQuery("delete from IdempotencyRecord r where r.key = :key")
+                .setParameter("key", key)
+                .executeUpdate());
+    }
+
+    public int purgeExpired(){
+        LocalDateTime cutoff = now().minus(ttl);
+        synchronized (cache){
+            cache.values().removeIf(record -> record.getCreatedAt().isBefore(cutoff));
+        }
+        Integer purged = transactionTemplate.execute(status -> entityManager
+                .createQuery("delete from IdempotencyRecord r where r.createdAt < :cutoff"
+                        + " or r.status = 0 and r.createdAt < :leaseCutoff")
+                .setParameter("cutoff", cutoff)
+                .setParameter("leaseCutoff", now().minus(claimLease))
+                .executeUpdate());
+        return purged == null ? 0 : purged;
+    }
+
+    // Only this record, so a claim made since by another request survives
+    private void expire(IdempotencyRecord record){
+        synchronized (cache){
+            cache.remove(record.getKey());
+        }
+        transactionTemplate.executeWithoutResult(status -> entityManager
+                .createQuery("delete from IdempotencyRecord r where r.key = :key and r.createdAt = :createdAt")
+                .setParameter("key", record.getKey())
+                .setParameter("createdAt", record.getCreatedAt())
+                .executeUpdate());
+    }
+
+    private void remember(IdempotencyRecord record){
+        synchronized (cache){
+            cache.put(record.getKey(), record);
+        }
+    }
+
+    private boolean isExpired(IdempotencyRecord record){
+        return record.getCreatedAt().isBefore(now().minus(record.isCompleted() ? ttl : claimLease));
+    }
+
+    private static boolean isDuplicateKey(Throwable failure){
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()){
+            if (cause instanceof DuplicateKeyException
+                    || cause instanceof EntityExistsException
+                    || cause instanceof SQLIntegrityConstraintViolationException){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LocalDateTime now(){
+        return LocalDateTime.now();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.demo.invalidation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Invalidation;
+import com.example.demo.entities.Invalidation.Target;
+import com.example.demo.entities.Patient;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.search.PatientNameIndex;
+
+/**
+ * Drops what this instance caches when another instance changes it: the
+ * room schedules of {@link BookingPipeline}, for appointments and rooms,
+ * and the {@link PatientNameIndex} entries of patients. Doctors are not
+ * cached, so their invalidations have no subscriber here.
+ */
+public class CacheInvalidations {
+
+    static final int LOOKUP_SIZE = 1000;
+
+    private final BookingPipeline bookingPipeline;
+    private final PatientNameIndex patientNameIndex;
+    private final PatientRepository patientRepository;
+
+    public CacheInvalidations(InvalidationBus invalidationBus, BookingPipeline bookingPipeline,
+                              PatientNameIndex patientNameIndex, PatientRepository patientRepository){
+        this.bookingPipeline = bookingPipeline;
+        this.patientNameIndex = patientNameIndex;
+        this.patientRepository = patientRepository;
+        invalidationBus.subscribe(Target.APPOINTMENT, this::rooms);
+        invalidationBus.subscribe(Target.ROOM, this::rooms);
+        invalidationBus.subscribe(Target.PATIENT, this::patients);
+    }
+
+    void rooms(List<Invalidation> invalidations){
+        Set<String> roomNames = new LinkedHashSet<>();
+        for (Invalidation invalidation : invalidations){
+            if (invalidation.isAll()){
+                clearSchedules();
+                return;
+            }
+            if (invalidation.getRoomName() != null){
+                roomNames.add(invalidation.getRoomName());
+            }
+        }
+        for (String roomName : roomNames){
+            bookingPipeline.forget(roomName);
+        }
+    }
+
+    private void clearSchedules(){
+        try {
+            bookingPipeline.clear();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e){
+            throw new IllegalStateException("Room schedules were not cleared in time", e);
+        }
+    }
+
+    // Patients still stored are indexed again with their current names, the
+    // others are taken out.
+    void patients(List<Invalidation> invalidations){
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Invalidation invalidation : invalidations){
+            if (invalidation.isAll()){
+                patientNameIndex.rebuild();
+                return;
+            }
+            ids.add(invalidation.getEntityId());
+        }
+        List<Long> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += LOOKUP_SIZE){
+            List<Long> lookup = all.subList(from, Math.min(all.size(), from + LOOKUP_SIZE));
+            Set<Long> missing = new LinkedHashSet<>(lookup);
+            for (Patient patient : patientRepository.findAllById(lookup)){
+                patientNameIndex.add(patient);
+                missing.remove(patient.getId());
+            }
+            for (long id : missing){
+                patientNameIndex.remove(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.demo.invalidation;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entities.Invalidation;
+import com.example.demo.entities.Invalidation.Target;
+import com.example.demo.repositories.InvalidationRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Carries cache invalidations between instances through the
+ * {@code invalidation} table, without a broker. Changes published here are
+ * queued once their transaction commits; every {@code invalidation.interval}
+ * one thread writes the queue in a single transaction and reads the rows
+ * other instances wrote since the last read, handing them to the
+ * subscribers of each {@link Target}. A change therefore reaches the other
+ * instances within about two intervals.
+ * <p>
+ * Reads are a primary key range scan past a high-water mark. Ids are taken
+ * when a row is inserted, not when it commits, so a missing id below newer
+ * rows may still show up; the mark waits at such a gap for up to
+ * {@code invalidation.gap-timeout} and reads the newer rows again meanwhile,
+ * skipping the ones already handled. Ids of rolled back writes are never
+ * filled and only cost that wait.
+ * <p>
+ * The queue holds at most {@code invalidation.queue-capacity} changes. If it
+ * overflows, or a write fails, the next write invalidates everything
+ * instead, so the other instances over-invalidate rather than miss a change.
+ */
+public class InvalidationBus implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private static final long PURGE_EVERY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final InvalidationRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final InvalidationProperties properties;
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<Target, List<Consumer<List<Invalidation>>>> subscribers = new EnumMap<>(Target.class);
+
+    private final Object queueLock = new Object();
+    private List<Invalidation> queue = new ArrayList<>();
+    private boolean overflowed;
+
+    private final Timer delay;
+    private final Counter overflows;
+
+    // Only touched by the polling thread, or by tests calling poll()
+    private long highWater;
+    private final TreeSet<Long> seen = new TreeSet<>();
+    private long blockedSince;
+    private long lastPurge = System.nanoTime();
+
+    private volatile ScheduledExecutorService poller;
+
+    public InvalidationBus(InvalidationRepository repository, PlatformTransactionManager transactionManager,
+                           InvalidationProperties properties, MeterRegistry registry){
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        for (Target target : Target.values()){
+            this.subscribers.put(target, new CopyOnWriteArrayList<>());
+        }
+        this.delay = Timer.builder("invalidation.delay")
+                .description("Time from a change on another instance to its invalidation here")
+                .register(registry);
+        this.overflows = Counter.builder("invalidation.overflows")
+                .description("Times the queue overflowed and everything was invalidated instead")
+                .register(registry);
+        Gauge.builder("invalidation.queue.depth", this, InvalidationBus::queueDepth)
+                .description("Invalidations waiting to be written").register(registry);
+    }
+
+    /**
+     * Calls the subscriber with the invalidations of the target that other
+     * instances wrote, a list per read. Subscribers run on the polling
+     * thread, one at a time.
+     */
+    public void subscribe(Target target, Consumer<List<Invalidation>> subscriber){
+        subscribers.get(target).add(subscriber);
+    }
+
+    /**
+     * Queues an invalidation of one row, or of every row with
+     * {@link Invalidation#ALL}. Inside a transaction it is queued when the
+     * transaction commits, and dropped if it rolls back.
+     */
+    public void publish(Target target, long entityId, String roomName){
+        Invalidation invalidation = new Invalidation(target, entityId, roomName, origin, LocalDateTime.now());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()){
+            enqueue(Collections.singletonList(invalidation));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Invalidation> inTransaction = (List<Invalidation>) TransactionSynchronizationManager.getResource(this);
+        if (inTransaction == null){
+            List<Invalidation> buffered = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, buffered);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization(){
+                @Override
+                public void afterCompletion(int status){
+                    TransactionSynchronizationManager.unbindResourceIfPossible(InvalidationBus.this);
+                    if (status == STATUS_COMMITTED){
+                        enqueue(buffered);
+                    }
+                }
+            });
+            inTransaction = buffered;
+        }
+        inTransaction.add(invalidation);
+    }
+
+    private void enqueue(List<Invalidation> invalidations){
+        synchronized (queueLock){
+            if (overflowed){
+                return;
+            }
+            if (queue.size() + invalidations.size() > properties.getQueueCapacity()){
+                overflow();
+                return;
+            }
+            queue.addAll(invalidations);
+        }
+    }
+
+    // Callers hold queueLock
+    private void overflow(){
+        overflowed = true;
+        queue = new ArrayList<>();
+        overflows.increment();
+    }
+
+    int queueDepth(){
+        synchronized (queueLock){
+            return overflowed ? Target.values().length : queue.size();
+        }
+    }
+
+    /**
+     * Writes the queued invalidations in one transaction.
+     */
+    public void flush(){
+        List<Invalidation> batch;
+        synchronized (queueLock){
+            if (overflowed){
+                batch = new ArrayList<>();
+                for (Target target : Target.values()){
+                    batch.add(new Invalidation(target, Invalidation.ALL, null, origin, LocalDateTime.now()));
+                }
+                overflowed = false;
+            } else {
+                batch = queue;
+            }
+            queue = new ArrayList<>();
+        }
+        if (batch.isEmpty()){
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.saveAll(batch));
+        } catch (RuntimeException e){
+            log.warn("Could not write {} invalidations, invalidating everything next", batch.size(), e);
+            synchronized (queueLock){
+                overflow();
+            }
+        }
+    }
+
+    /**
+     * Reads the rows other instances wrote past the high-water mark and
+     * hands them to the subscribers.
+     */
+    public void poll(){
+        Map<Target, List<Invalidation>> received = new EnumMap<>(Target.class);
+        long after = highWater;
+        List<Invalidation> page;
+        do {
+            long from = after;
+            page = transactionTemplate.execute(status ->
+                    repository.findByIdGreaterThanOrderById(from, PageRequest.of(0, properties.getPageSize())));
+            LocalDateTime now = LocalDateTime.now();
+            for (Invalidation invalidation : page){
+                after = invalidation.getId();
+                if (!seen.add(invalidation.getId()) || origin.equals(invalidation.getOrigin())){
+                    continue;
+                }
+                // Clocks of different instances may disagree slightly
+                Duration late = Duration.between(invalidation.getRecordedAt(), now);
+                delay.record(late.isNegative() ? Duration.ZERO : late);
+                received.computeIfAbsent(invalidation.getTarget(), target -> new ArrayList<>()).add(invalidation);
+            }
+        } while (page.size() == properties.getPageSize());
+        advance();
+
+        for (Map.Entry<Target, List<Invalidation>> invalidations : received.entrySet()){
+            for (Consumer<List<Invalidation>> subscriber : subscribers.get(invalidations.getKey())){
+                try {
+                    subscriber.accept(invalidations.getValue());
+                } catch (RuntimeException e){
+                    log.warn("Invalidation subscriber failed for {} {}", invalidations.getValue().size(),
+                            invalidations.getKey(), e);
+                }
+            }
+        }
+    }
+
+    // Moves the mark over the ids handled right above it, and over a gap
+    // that stayed open longer than the gap timeout.
+    private void advance(){
+        while (!seen.isEmpty()){
+            if (seen.first() == highWater + 1){
+                highWater = seen.pollFirst();
+                blockedSince = 0;
+                continue;
+            }
+            long now = System.nanoTime();
+            if (blockedSince == 0){
+                blockedSince = now;
+                return;
+            }
+            if (now - blockedSince < properties.getGapTimeout().toNanos()){
+                return;
+            }
+            highWater = seen.first() - 1;
+            blockedSince = 0;
+        }
+    }
+
+    long highWater(){
+        return highWater;
+    }
+
+    String origin(){
+        return origin;
+    }
+
+    private void purge(){
+        if (System.nanoTime() - lastPurge < PURGE_EVERY_NANOS){
+            return;
+        }
+        lastPurge = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status ->
+                repository.deleteRecordedBefore(LocalDateTime.now().minus(properties.getRetention())));
+    }
+
+    private void tick(){
+        try {
+            flush();
+            poll();
+            purge();
+        } catch (RuntimeException e){
+            log.warn("Invalidation poll failed", e);
+        }
+    }
+
+    // Started once every bean is created, so no subscriber misses a read.
+    @Override
+    public void start(){
+        highWater = transactionTemplate.execute(status -> repository.findMaxId());
+        ScheduledExecutorService started = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "invalidation-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getInterval().toMillis();
+        started.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+        poller = started;
+    }
+
+    // Stopped before the data source closes, so the last changes are written.
+    @Override
+    public void stop(){
+        ScheduledExecutorService stopping = poller;
+        poller = null;
+        if (stopping == null){
+            return;
+        }
+        stopping.shutdownNow();
+        try {
+            stopping.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (RuntimeException e){
+            log.warn("Could not write the last invalidations", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning(){
+        return poller != null;
+    }
+}
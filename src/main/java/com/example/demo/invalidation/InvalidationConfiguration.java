@@ -0,0 +1,32 @@
+package com.example.demo.invalidation;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.repositories.InvalidationRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.search.PatientNameIndex;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@EnableConfigurationProperties(InvalidationProperties.class)
+@ConditionalOnProperty(prefix = "invalidation", name = "enabled", matchIfMissing = true)
+public class InvalidationConfiguration {
+
+    @Bean
+    public InvalidationBus invalidationBus(InvalidationRepository repository, PlatformTransactionManager transactionManager,
+                                           InvalidationProperties properties, MeterRegistry registry) {
+        return new InvalidationBus(repository, transactionManager, properties, registry);
+    }
+
+    @Bean
+    public CacheInvalidations cacheInvalidations(InvalidationBus invalidationBus, BookingPipeline bookingPipeline,
+                                                 PatientNameIndex patientNameIndex, PatientRepository patientRepository) {
+        return new CacheInvalidations(invalidationBus, bookingPipeline, patientNameIndex, patientRepository);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.demo.invalidation;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Invalidation.Target;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+
+/**
+ * Publishes an invalidation for every write to a doctor, patient, room or
+ * appointment, whichever controller or cascade made it. Hibernate obtains
+ * this listener from the Spring context; contexts without the bus simply
+ * skip it.
+ */
+public class InvalidationListener {
+
+    private final ObjectProvider<InvalidationBus> invalidationBus;
+
+    public InvalidationListener(ObjectProvider<InvalidationBus> invalidationBus){
+        this.invalidationBus = invalidationBus;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void changed(Object entity){
+        invalidationBus.ifAvailable(bus -> publish(bus, entity));
+    }
+
+    private static void publish(InvalidationBus bus, Object entity){
+        if (entity instanceof Appointment){
+            Appointment appointment = (Appointment) entity;
+            Room room = appointment.getRoom();
+            String roomName = room == null ? null : room.getRoomName();
+            bus.publish(Target.APPOINTMENT, appointment.getId(), roomName);
+            // Moved out of another room, which must drop it too. JPA calls
+            // this listener before the entity's own callbacks update it.
+            String loadedRoomName = appointment.loadedRoomName();
+            if (loadedRoomName != null && !loadedRoomName.equals(roomName)){
+                bus.publish(Target.APPOINTMENT, appointment.getId(), loadedRoomName);
+            }
+        } else if (entity instanceof Room){
+            Room room = (Room) entity;
+            bus.publish(Target.ROOM, room.getId(), room.getRoomName());
+        } else if (entity instanceof Doctor){
+            bus.publish(Target.DOCTOR, ((Doctor) entity).getId(), null);
+        } else if (entity instanceof Patient){
+            bus.publish(Target.PATIENT, ((Patient) entity).getId(), null);
+        }
+    }
+}
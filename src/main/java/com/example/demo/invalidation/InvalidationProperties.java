@@ -0,0 +1,72 @@
+package com.example.demo.invalidation;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Cache invalidation between instances. Bound from {@code invalidation.*}
+ * at startup.
+ */
+@ConfigurationProperties(prefix = "invalidation")
+public class InvalidationProperties {
+
+    private boolean enabled = true;
+
+    /** How often queued invalidations are written and new ones read. */
+    private Duration interval = Duration.ofMillis(200);
+
+    /** Invalidations queued between writes; beyond it every cache is invalidated instead. */
+    private int queueCapacity = 10000;
+
+    /** Rows read per query. */
+    private int pageSize = 1000;
+
+    /** How long a missing id below newer rows is waited for before it is given up. */
+    private Duration gapTimeout = Duration.ofSeconds(5);
+
+    /** How long rows are kept in the table. */
+    private Duration retention = Duration.ofHours(1);
+
+    public boolean isEnabled(){
+        return this.enabled;
+    }
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    public Duration getInterval(){
+        return this.interval;
+    }
+    public void setInterval(Duration interval){
+        this.interval = interval;
+    }
+
+    public int getQueueCapacity(){
+        return this.queueCapacity;
+    }
+    public void setQueueCapacity(int queueCapacity){
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getPageSize(){
+        return this.pageSize;
+    }
+    public void setPageSize(int pageSize){
+        this.pageSize = pageSize;
+    }
+
+    public Duration getGapTimeout(){
+        return this.gapTimeout;
+    }
+    public void setGapTimeout(Duration gapTimeout){
+        this.gapTimeout = gapTimeout;
+    }
+
+    public Duration getRetention(){
+        return this.retention;
+    }
+    public void setRetention(Duration retention){
+        this.retention = retention;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.json;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+
+/**
+ * Reads a {@link LocalDateTime} in the {@value FastLocalDateTimeSerializer#PATTERN}
+ * format directly from the parser's character buffer, without building a
+ * String or going through {@link DateTimeFormatter} parsing.
+ *
+ * Anything that is not a well-formed, in-range value of exactly that shape
+ * is handed to the regular JSR-310 deserializer, so lenient inputs and error
+ * messages behave as before.
+ */
+public class FastLocalDateTimeDeserializer extends StdDeserializer<LocalDateTime> implements ContextualDeserializer {
+
+    private static final int[] DIGITS = {0, 1, 3, 4, 6, 7, 9, 10, 12, 13, 14, 15};
+
+    private final LocalDateTimeDeserializer fallback =
+            new LocalDateTimeDeserializer(DateTimeFormatter.ofPattern(FastLocalDateTimeSerializer.PATTERN));
+
+    public FastLocalDateTimeDeserializer(){
+        super(LocalDateTime.class);
+    }
+
+    @Override
+    public LocalDateTime deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_STRING) && parser.getTextLength() == FastLocalDateTimeSerializer.LENGTH){
+            LocalDateTime value = parse(parser.getTextCharacters(), parser.getTextOffset());
+            if (value != null){
+                return value;
+            }
+        }
+        return fallback.deserialize(parser, context);
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext context, BeanProperty property) throws JsonMappingException {
+        JsonFormat.Value format = findFormatOverrides(context, property, handledType());
+        if (format != null && (format.hasLenient()
+                || (format.hasPattern() || format.hasShape()) && !FastLocalDateTimeSerializer.isOwnFormat(format))){
+            return fallback.createContextual(context, property);
+        }
+        return this;
+    }
+
+    private static LocalDateTime parse(char[] text, int offset){
+        if (text[offset + 2] != ':' || text[offset + 5] != ' ' || text[offset + 8] != '/' || text[offset + 11] != '/'){
+            return null;
+        }
+        for (int position : DIGITS){
+            char c = text[offset + position];
+            if (c < '0' || c > '9'){
+                return null;
+            }
+        }
+        int hour = number(text, offset, 2);
+        int minute = number(text, offset + 3, 2);
+        int day = number(text, offset + 6, 2);
+        int month = number(text, offset + 9, 2);
+        int year = number(text, offset + 12, 4);
+        if (hour > 23 || minute > 59 || month < 1 || month > 12 || year < 1 || day < 1
+                || day > (month == 2 ? (Year.isLeap(year) ? 29 : 28) : month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31)){
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute);
+    }
+
+    private static int number(char[] text, int offset, int digits){
+        int value = 0;
+        for (int i = 0; i < digits; i++){
+            value = value * 10 + (text[offset + i] - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.json;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+
+/**
+ * Writes a {@link LocalDateTime} in the API's {@value #PATTERN} format by
+ * placing the digits straight into a reusable char buffer handed to the
+ * generator, with no {@link DateTimeFormatter} and no intermediate String.
+ *
+ * Years outside 1..9999, which the pattern renders with a sign or extra
+ * digits, and properties whose {@code @JsonFormat} asks for a different
+ * pattern, go through the regular JSR-310 serializer.
+ */
+public class FastLocalDateTimeSerializer extends StdSerializer<LocalDateTime> implements ContextualSerializer {
+
+    public static final String PATTERN = "HH:mm dd/MM/yyyy";
+
+    static final int LENGTH = PATTERN.length();
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[LENGTH]);
+
+    private final LocalDateTimeSerializer fallback = new LocalDateTimeSerializer(DateTimeFormatter.ofPattern(PATTERN));
+
+    public FastLocalDateTimeSerializer(){
+        super(LocalDateTime.class);
+    }
+
+    @Override
+    public void serialize(LocalDateTime value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        int year = value.getYear();
+        if (year < 1 || year > 9999){
+            fallback.serialize(value, generator, provider);
+            return;
+        }
+        char[] buffer = BUFFER.get();
+        twoDigits(buffer, 0, value.getHour());
+        buffer[2] = ':';
+        twoDigits(buffer, 3, value.getMinute());
+        buffer[5] = ' ';
+        twoDigits(buffer, 6, value.getDayOfMonth());
+        buffer[8] = '/';
+        twoDigits(buffer, 9, value.getMonthValue());
+        buffer[11] = '/';
+        twoDigits(buffer, 12, year / 100);
+        twoDigits(buffer, 14, year % 100);
+        generator.writeString(buffer, 0, LENGTH);
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        JsonFormat.Value format = findFormatOverrides(provider, property, handledType());
+        if (format != null && (format.hasPattern() || format.hasShape()) && !isOwnFormat(format)){
+            return fallback.createContextual(provider, property);
+        }
+        return this;
+    }
+
+    static boolean isOwnFormat(JsonFormat.Value format){
+        return PATTERN.equals(format.getPattern())
+                && (format.getShape() == JsonFormat.Shape.STRING || format.getShape() == JsonFormat.Shape.ANY)
+                && !format.hasLocale() && !format.hasTimeZone();
+    }
+
+    private static void twoDigits(char[] buffer, int at, int value){
+        buffer[at] = (char) ('0' + value / 10);
+        buffer[at + 1] = (char) ('0' + value % 10);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.reactive;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes one whole response body without blocking, from any thread, and
+ * completes the request once the container has taken every byte.
+ */
+final class AsyncBody implements WriteListener {
+
+    private final AsyncContext async;
+    private final ServletOutputStream out;
+    private byte[] body;
+
+    private AsyncBody(AsyncContext async, ServletOutputStream out, byte[] body){
+        this.async = async;
+        this.out = out;
+        this.body = body;
+    }
+
+    static void send(AsyncContext async, int status, String contentType, String etag, byte[] body){
+        HttpServletResponse response = (HttpServletResponse) async.getResponse();
+        response.setStatus(status);
+        if (etag != null){
+            response.setHeader("ETag", etag);
+        }
+        if (body == null || body.length == 0){
+            async.complete();
+            return;
+        }
+        response.setContentType(contentType);
+        response.setContentLength(body.length);
+        try {
+            ServletOutputStream out = response.getOutputStream();
+            out.setWriteListener(new AsyncBody(async, out, body));
+        } catch (IOException e){
+            async.complete();
+        }
+    }
+
+    static void status(AsyncContext async, int status){
+        send(async, status, null, null, null);
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+        if (body != null && out.isReady()){
+            out.write(body);
+            body = null;
+        }
+        if (body == null && out.isReady()){
+            async.complete();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t){
+        async.complete();
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.demo.reactive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.ToLongFunction;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+/**
+ * Streams a table as NDJSON, one keyset page at a time, without holding a
+ * thread while the client reads. A page is fetched on the database executor
+ * only once the previous one has been handed to the socket in full, so a
+ * slow client slows the queries down instead of piling rows up in memory;
+ * while the socket is full no thread waits, and the container calls
+ * {@link #onWritePossible} again when it drains.
+ * <p>
+ * An empty table answers 204, like the MVC endpoints. A query that fails
+ * after the first page cuts the stream short.
+ */
+final class NdjsonStream<T> implements WriteListener {
+
+    /** Rows with an id above {@code afterId}, in id order, at most {@code size}. */
+    interface Pages<T> {
+        List<T> after(long afterId, int size);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(NdjsonStream.class);
+
+    private final AsyncContext async;
+    private final ServletOutputStream out;
+    private final Pages<T> pages;
+    private final ToLongFunction<T> id;
+    private final int pageSize;
+    private final ObjectWriter writer;
+    private final Executor database;
+    private final String uri;
+
+    // Guarded by this
+    private byte[] pending;
+    private boolean fetching;
+    private boolean last;
+    private boolean started;
+    private boolean done;
+    private long afterId;
+
+    private NdjsonStream(AsyncContext async, ServletOutputStream out, Pages<T> pages, ToLongFunction<T> id,
+                         int pageSize, ObjectWriter writer, Executor database){
+        this.async = async;
+        this.out = out;
+        this.pages = pages;
+        this.id = id;
+        this.pageSize = pageSize;
+        this.writer = writer;
+        this.database = database;
+        this.uri = ((HttpServletRequest) async.getRequest()).getRequestURI();
+    }
+
+    static <T> void start(AsyncContext async, Pages<T> pages, ToLongFunction<T> id, int pageSize,
+                          ObjectWriter writer, Executor database) throws IOException {
+        async.setTimeout(0);
+        HttpServletResponse response = (HttpServletResponse) async.getResponse();
+        response.setContentType("application/x-ndjson");
+        ServletOutputStream out = response.getOutputStream();
+        out.setWriteListener(new NdjsonStream<>(async, out, pages, id, pageSize, writer, database));
+    }
+
+    @Override
+    public void onWritePossible(){
+        drain();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t){
+        finish();
+    }
+
+    private synchronized void drain(){
+        try {
+            while (!done && out.isReady()){
+                if (pending != null){
+                    out.write(pending);
+                    pending = null;
+                } else if (last){
+                    finish();
+                } else {
+                    if (!fetching){
+                        fetching = true;
+                        database.execute(this::fetch);
+                    }
+                    return;
+                }
+            }
+        } catch (IOException | RejectedExecutionException e){
+            finish();
+        }
+    }
+
+    private void fetch(){
+        List<T> rows;
+        byte[] bytes;
+        try {
+            rows = pages.after(afterId, pageSize);
+            bytes = ndjson(rows);
+        } catch (RuntimeException | IOException e){
+            log.warn("Stream of {} stopped after id {}", uri, afterId, e);
+            failed();
+            return;
+        }
+        synchronized (this){
+            fetching = false;
+            last = rows.size() < pageSize;
+            if (!rows.isEmpty()){
+                afterId = id.applyAsLong(rows.get(rows.size() - 1));
+                pending = bytes;
+                started = true;
+            } else if (!started){
+                ((HttpServletResponse) async.getResponse()).setStatus(HttpServletResponse.SC_NO_CONTENT);
+            }
+        }
+        drain();
+    }
+
+    private synchronized void failed(){
+        if (!started){
+            ((HttpServletResponse) async.getResponse()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        finish();
+    }
+
+    private void finish(){
+        if (!done){
+            done = true;
+            async.complete();
+        }
+    }
+
+    private byte[] ndjson(List<T> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows.size() * 256);
+        try (SequenceWriter sequence = writer.withRootValueSeparator("\n").writeValues(bytes)){
+            sequence.writeAll(rows);
+        }
+        if (!rows.isEmpty()){
+            bytes.write('\n');
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo.reactive;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Configuration
+public class ReactiveReadConfiguration {
+
+    @Bean
+    public ServletRegistrationBean<ReactiveReadServlet> reactiveReadServlet(
+            AppointmentRepository appointmentRepository, DoctorRepository doctorRepository,
+            RoomRepository roomRepository, BookingPipeline bookingPipeline, ObjectMapper objectMapper,
+            @Value("${reactive.database-threads:4}") int databaseThreads,
+            @Value("${reactive.page-size:500}") int pageSize,
+            @Value("${reactive.long-poll-timeout:30s}") Duration longPollTimeout) {
+        ScheduleWatch scheduleWatch = new ScheduleWatch(bookingPipeline, objectMapper.writer(),
+                longPollTimeout.toMillis());
+        ServletRegistrationBean<ReactiveReadServlet> registration = new ServletRegistrationBean<>(
+                new ReactiveReadServlet(appointmentRepository, doctorRepository, roomRepository, scheduleWatch,
+                        objectMapper.writer(), databaseExecutor(databaseThreads), pageSize), "/api/reactive/*");
+        registration.setName("reactiveRead");
+        registration.setAsyncSupported(true);
+        return registration;
+    }
+
+    // Runs the queries of the reactive endpoints; everything else they do is
+    // non-blocking. Not a bean, so that it does not stand in for the
+    // application task executor. The servlet shuts it down.
+    private static ExecutorService databaseExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "reactive-db-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
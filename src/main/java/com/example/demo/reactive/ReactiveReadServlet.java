@@ -0,0 +1,123 @@
+package com.example.demo.reactive;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.data.domain.PageRequest;
+
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Room;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Read-only appointment, doctor and room endpoints under /api/reactive,
+ * next to the MVC controllers and answering the same JSON. Every request
+ * goes async at once: queries run on a small database executor, responses
+ * are written with non-blocking I/O, and no request thread is held while
+ * a query runs, a client reads slowly or a dashboard waits for a change.
+ * <ul>
+ * <li>GET /appointments, /doctors, /rooms: NDJSON, streamed with backpressure
+ * (see {@link NdjsonStream})</li>
+ * <li>GET /appointments/{id}, /doctors/{id}, /rooms/{roomName}</li>
+ * <li>GET /rooms/{roomName}/appointments: the room's schedule, as a long
+ * poll with {@code If-None-Match} (see {@link ScheduleWatch})</li>
+ * </ul>
+ */
+public class ReactiveReadServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final String JSON = "application/json";
+
+    private final transient AppointmentRepository appointmentRepository;
+    private final transient DoctorRepository doctorRepository;
+    private final transient RoomRepository roomRepository;
+    private final transient ScheduleWatch scheduleWatch;
+    private final transient ObjectWriter writer;
+    private final transient ExecutorService database;
+    private final int pageSize;
+
+    ReactiveReadServlet(AppointmentRepository appointmentRepository, DoctorRepository doctorRepository,
+                        RoomRepository roomRepository, ScheduleWatch scheduleWatch, ObjectWriter writer,
+                        ExecutorService database, int pageSize){
+        this.appointmentRepository = appointmentRepository;
+        this.doctorRepository = doctorRepository;
+        this.roomRepository = roomRepository;
+        this.scheduleWatch = scheduleWatch;
+        this.writer = writer;
+        this.database = database;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String[] path = request.getPathInfo() == null ? new String[0] : request.getPathInfo().substring(1).split("/");
+        AsyncContext async = request.startAsync();
+
+        if (path.length == 1 && path[0].equals("appointments")){
+            NdjsonStream.<Appointment>start(async, (afterId, size) -> appointmentRepository.findPageAfter(afterId,
+                    PageRequest.of(0, size)), Appointment::getId, pageSize, writer, database);
+        } else if (path.length == 1 && path[0].equals("doctors")){
+            NdjsonStream.<Doctor>start(async, (afterId, size) -> doctorRepository.findByIdGreaterThanOrderById(afterId,
+                    PageRequest.of(0, size)), Doctor::getId, pageSize, writer, database);
+        } else if (path.length == 1 && path[0].equals("rooms")){
+            NdjsonStream.<Room>start(async, (afterId, size) -> roomRepository.findByIdGreaterThanOrderById(afterId,
+                    PageRequest.of(0, size)), Room::getId, pageSize, writer, database);
+        } else if (path.length == 2 && path[0].equals("appointments") && isId(path[1])){
+            lookup(async, () -> appointmentRepository.findById(Long.parseLong(path[1])));
+        } else if (path.length == 2 && path[0].equals("doctors") && isId(path[1])){
+            lookup(async, () -> doctorRepository.findById(Long.parseLong(path[1])));
+        } else if (path.length == 2 && path[0].equals("rooms")){
+            lookup(async, () -> roomRepository.findByRoomName(path[1]));
+        } else if (path.length == 3 && path[0].equals("rooms") && path[2].equals("appointments")){
+            scheduleWatch.answer(async, path[1], request.getHeader("If-None-Match"));
+        } else {
+            AsyncBody.status(async, HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    @Override
+    public void destroy(){
+        database.shutdown();
+    }
+
+    private void lookup(AsyncContext async, Supplier<? extends Optional<?>> query){
+        CompletableFuture.supplyAsync(query, database).whenComplete((found, error) -> {
+            if (error != null){
+                log("Lookup failed", error);
+                AsyncBody.status(async, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } else if (!found.isPresent()){
+                AsyncBody.status(async, HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                try {
+                    AsyncBody.send(async, HttpServletResponse.SC_OK, JSON, null, writer.writeValueAsBytes(found.get()));
+                } catch (IOException e){
+                    AsyncBody.status(async, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+            }
+        });
+    }
+
+    private static boolean isId(String segment){
+        if (segment.isEmpty() || segment.length() > 18){
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++){
+            if (!Character.isDigit(segment.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+}
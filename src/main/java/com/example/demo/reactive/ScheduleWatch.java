@@ -0,0 +1,194 @@
+package com.example.demo.reactive;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.RoomSchedule;
+import com.example.demo.services.AppointmentReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Long poll on a room's schedule for dashboards. A request carrying the
+ * ETag of the schedule it already shows, in {@code If-None-Match}, is parked
+ * without a thread until the room's writer publishes a different schedule,
+ * and answered then; after the poll timeout it gets 304 and polls again.
+ * Any other request is answered at once.
+ */
+final class ScheduleWatch {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleWatch.class);
+    private static final String JSON = "application/json";
+
+    private final BookingPipeline bookingPipeline;
+    private final ObjectWriter writer;
+    private final long timeoutMillis;
+    private final ConcurrentHashMap<String, Queue<Poll>> polls = new ConcurrentHashMap<>();
+
+    ScheduleWatch(BookingPipeline bookingPipeline, ObjectWriter writer, long timeoutMillis){
+        this.bookingPipeline = bookingPipeline;
+        this.writer = writer;
+        this.timeoutMillis = timeoutMillis;
+        bookingPipeline.addScheduleListener(this::changed);
+    }
+
+    /**
+     * Must be called on the thread that started {@code async}, as it sets
+     * the timeout and listens for it.
+     */
+    void answer(AsyncContext async, String roomName, String ifNoneMatch){
+        Poll poll = new Poll(async, roomName, ifNoneMatch);
+        async.setTimeout(timeoutMillis);
+        async.addListener(poll);
+        bookingPipeline.loadSchedule(roomName).whenComplete((schedule, error) -> {
+            Body current = null;
+            if (error != null){
+                log.warn("Could not load the schedule of room {}", roomName, error);
+            } else {
+                try {
+                    current = body(schedule.getAppointments());
+                } catch (IOException e){
+                    log.warn("Could not serialize the schedule of room {}", roomName, e);
+                }
+            }
+            if (current == null){
+                if (poll.claim()){
+                    AsyncBody.status(async, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                }
+            } else if (!current.etag.equals(ifNoneMatch)){
+                if (poll.claim()){
+                    current.send(async);
+                }
+            } else {
+                park(poll);
+            }
+        });
+    }
+
+    private void park(Poll poll){
+        polls.computeIfAbsent(poll.roomName, room -> new ConcurrentLinkedQueue<>()).add(poll);
+        // The schedule may have changed between reading it and parking.
+        changed(poll.roomName);
+    }
+
+    private void changed(String roomName){
+        Queue<Poll> waiting = polls.get(roomName);
+        if (waiting == null || waiting.isEmpty()){
+            return;
+        }
+        Optional<RoomSchedule> loaded = bookingPipeline.loadedSchedule(roomName);
+        if (loaded.isPresent()){
+            changed(roomName, waiting, loaded.get());
+            return;
+        }
+        // Forgotten, not emptied; answer from the schedule loaded again, or
+        // leave the polls parked if it cannot be.
+        bookingPipeline.loadSchedule(roomName).whenComplete((schedule, error) -> {
+            if (error != null){
+                log.warn("Could not load the schedule of room {}", roomName, error);
+            } else {
+                changed(roomName, waiting, schedule);
+            }
+        });
+    }
+
+    private void changed(String roomName, Queue<Poll> waiting, RoomSchedule schedule){
+        Body current;
+        try {
+            current = body(schedule.getAppointments());
+        } catch (IOException e){
+            log.warn("Could not serialize the schedule of room {}", roomName, e);
+            return;
+        }
+        for (Poll poll : waiting){
+            if (!poll.etag.equals(current.etag) && poll.claim()){
+                current.send(poll.async);
+            }
+        }
+    }
+
+    private Body body(List<AppointmentReference> appointments) throws IOException {
+        byte[] json = writer.writeValueAsBytes(appointments);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        return new Body(appointments.isEmpty() ? null : json, "\"" + Long.toHexString(crc.getValue()) + "\"");
+    }
+
+    private static final class Body {
+
+        final byte[] json;
+        final String etag;
+
+        Body(byte[] json, String etag){
+            this.json = json;
+            this.etag = etag;
+        }
+
+        void send(AsyncContext async){
+            AsyncBody.send(async, json == null ? HttpServletResponse.SC_NO_CONTENT : HttpServletResponse.SC_OK,
+                    JSON, etag, json);
+        }
+    }
+
+    private final class Poll implements AsyncListener {
+
+        final AsyncContext async;
+        final String roomName;
+        final String etag;
+        private final AtomicBoolean answered = new AtomicBoolean();
+
+        Poll(AsyncContext async, String roomName, String etag){
+            this.async = async;
+            this.roomName = roomName;
+            this.etag = etag;
+        }
+
+        // Exactly one of the first read, a change, the timeout and a client error answers.
+        boolean claim(){
+            if (!answered.compareAndSet(false, true)){
+                return false;
+            }
+            Queue<Poll> waiting = polls.get(roomName);
+            if (waiting != null){
+                waiting.remove(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event){
+            if (claim()){
+                AsyncBody.send(async, HttpServletResponse.SC_NOT_MODIFIED, null, etag, null);
+            }
+        }
+
+        @Override
+        public void onError(AsyncEvent event){
+            if (claim()){
+                async.complete();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event){
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event){
+        }
+    }
+}
@@ -1,14 +1,53 @@
-
 package com.example.demo.repositories;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 import com.example.demo.entities.Appointment;
 
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
     List<Appointment> findAll();
     Appointment save(Appointment appointment);
     void delete(Appointment appointment);
+    List<Appointment> findByRoomRoomName(String roomName);
+
+    @Query("select a from Appointment a left join fetch a.patient left join fetch a.doctor left join fetch a.room"
+            + " where a.id > :afterId order by a.id")
+    List<Appointment> findPageAfter(@Param("afterId") long afterId, Pageable page);
+
+    // Oldest ids first, so an archiver's chunks come back in a stable order
+    @Query("select a from Appointment a left join fetch a.patient left join fetch a.doctor left join fetch a.room"
+            + " where a.finishesAt < :before order by a.id")
+    List<Appointment> findFinishedBefore(@Param("before") LocalDateTime before, Pageable page);
+
+    @Query("select a from Appointment a left join fetch a.room where a.id in :ids")
+    List<Appointment> findWithRoomByIdIn(@Param("ids") List<Long> ids);
+
+    // Id, start and finish of the room's appointments that start or finish
+    // within [from, to], or span it: every one that can overlap a booking
+    // whose times lie in that window
+    @Query("select a.id, a.startsAt, a.finishesAt from Appointment a where a.room.roomName = :roomName"
+            + " and (a.startsAt between :from and :to or a.finishesAt between :from and :to"
+            + " or (a.startsAt < :to and :from < a.finishesAt))")
+    List<Object[]> findTimesAround(@Param("roomName") String roomName, @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Appointment a where a.id = :id")
+    Optional<Appointment> findForUpdate(@Param("id") long id);
+
+    @Query("select r.id from Patient p, Doctor d, Room r"
+            + " where p.id = :patientId and d.id = :doctorId and r.roomName = :roomName")
+    Optional<Long> findRoomIdIfReferencesExist(@Param("patientId") long patientId,
+                                               @Param("doctorId") long doctorId,
+                                               @Param("roomName") String roomName);
 }
@@ -0,0 +1,23 @@
+package com.example.demo.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.example.demo.entities.Invalidation;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface InvalidationRepository extends JpaRepository<Invalidation, Long> {
+    List<Invalidation> findByIdGreaterThanOrderById(long afterId, Pageable page);
+
+    @Query("select coalesce(max(i.id), 0) from Invalidation i")
+    long findMaxId();
+
+    @Modifying
+    @Query("delete from Invalidation i where i.recordedAt < :before")
+    int deleteRecordedBefore(@Param("before") LocalDateTime before);
+}
@@ -2,13 +2,26 @@
 package com.example.demo.repositories;
 
 import java.util.List;
+import java.util.Optional;
 
 import com.example.demo.entities.Patient;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 
-public interface PatientRepository extends JpaRepository<Patient, Long> {
+public interface PatientRepository extends JpaRepository<Patient, Long>, JpaSpecificationExecutor<Patient> {
     List<Patient> findAll();
     Patient save(Patient doc);
     void delete(Patient doc);
+    Slice<Patient> findByIdGreaterThan(long id, Pageable pageable);
+    Slice<Patient> findByIdGreaterThanAndIdLessThanEqual(long afterId, long lastId, Pageable pageable);
+
+    @Query("select min(p.id) from Patient p")
+    Optional<Long> findMinId();
+
+    @Query("select max(p.id) from Patient p")
+    Optional<Long> findMaxId();
 }
@@ -0,0 +1,83 @@
+package com.example.demo.repositories;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import com.example.demo.entities.Person;
+
+/**
+ * Search criteria shared by doctors and patients. Every criterion maps onto
+ * one of the indexed {@link Person} columns; absent criteria are left out of
+ * the query entirely so they never defeat an index.
+ */
+public final class PersonSpecifications {
+
+    private static final Set<String> SORTABLE = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("id", "firstName", "lastName", "email", "age")));
+
+    private PersonSpecifications(){
+    }
+
+    /**
+     * Returns null when no criterion is given, so callers can refuse
+     * unfiltered scans.
+     */
+    public static <T extends Person> Specification<T> matching(String name, String email, Integer minAge, Integer maxAge){
+        Specification<T> specification = null;
+        if (name != null && !name.trim().isEmpty()){
+            specification = and(specification, nameStartsWith(name.trim()));
+        }
+        if (email != null && !email.trim().isEmpty()){
+            specification = and(specification, hasEmail(email.trim()));
+        }
+        if (minAge != null || maxAge != null){
+            specification = and(specification, ageBetween(minAge, maxAge));
+        }
+        return specification;
+    }
+
+    /**
+     * Whether every order in the sort names a {@link Person} column; anything
+     * else would only fail once the query is built.
+     */
+    public static boolean sortable(Sort sort){
+        for (Sort.Order order : sort){
+            if (!SORTABLE.contains(order.getProperty())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static <T extends Person> Specification<T> nameStartsWith(String prefix){
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(root.get("lastName"), pattern, '\\'),
+                cb.like(root.get("firstName"), pattern, '\\'));
+    }
+
+    public static <T extends Person> Specification<T> hasEmail(String email){
+        return (root, query, cb) -> cb.equal(root.get("email"), email);
+    }
+
+    public static <T extends Person> Specification<T> ageBetween(Integer minAge, Integer maxAge){
+        return (root, query, cb) -> {
+            if (minAge == null){
+                return cb.le(root.get("age"), maxAge);
+            }
+            if (maxAge == null){
+                return cb.ge(root.get("age"), minAge);
+            }
+            return cb.between(root.get("age"), minAge, maxAge);
+        };
+    }
+
+    private static <T> Specification<T> and(Specification<T> left, Specification<T> right){
+        return left == null ? right : left.and(right);
+    }
+}
@@ -6,7 +6,9 @@ import java.util.Optional;
 
 import com.example.demo.entities.Room;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface RoomRepository extends JpaRepository<Room, Long> {
     List<Room> findAll();
@@ -14,4 +16,12 @@ public interface RoomRepository extends JpaRepository<Room, Long> {
     Room save(Room room);
     void delete(Room room);
     void deleteByRoomName(String roomName);
+    List<Room> findByIdGreaterThanAndIdLessThanEqual(long afterId, long lastId);
+    List<Room> findByIdGreaterThanOrderById(long afterId, Pageable page);
+
+    @Query("select min(r.id) from Room r")
+    Optional<Long> findMinId();
+
+    @Query("select max(r.id) from Room r")
+    Optional<Long> findMaxId();
 }
@@ -0,0 +1,15 @@
+package com.example.demo.repositories;
+
+import java.util.List;
+
+import com.example.demo.entities.ScheduleChange;
+
+/**
+ * Appends to the schedule change log in one JDBC batch, inside the caller's
+ * transaction. The ids come from auto_increment, so Hibernate would insert
+ * each change on its own and flush every pending insert ahead of it.
+ */
+public interface ScheduleChangeLog {
+
+    void append(List<ScheduleChange> changes);
+}
@@ -0,0 +1,40 @@
+package com.example.demo.repositories;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.entities.ScheduleChange;
+
+class ScheduleChangeLogImpl implements ScheduleChangeLog {
+
+    private static final String INSERT_SQL = "insert into schedule_change"
+            + " (recorded_at, kind, room_name, appointment_id, starts_at, finishes_at, doctor_id, patient_id)"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    ScheduleChangeLogImpl(DataSource dataSource){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void append(List<ScheduleChange> changes){
+        if (changes.isEmpty()){
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, changes, changes.size(), (statement, change) -> {
+            statement.setTimestamp(1, Timestamp.valueOf(change.getRecordedAt()));
+            statement.setString(2, change.getKind().name());
+            statement.setString(3, change.getRoomName());
+            statement.setLong(4, change.getAppointmentId());
+            statement.setInt(5, change.getStartsAt());
+            statement.setInt(6, change.getFinishesAt());
+            statement.setLong(7, change.getDoctorId());
+            statement.setLong(8, change.getPatientId());
+        });
+    }
+}
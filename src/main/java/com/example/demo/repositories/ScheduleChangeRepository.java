@@ -0,0 +1,19 @@
+package com.example.demo.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.example.demo.entities.ScheduleChange;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ScheduleChangeRepository extends JpaRepository<ScheduleChange, Long>, ScheduleChangeLog {
+    List<ScheduleChange> findByRecordedAtAfterOrderById(LocalDateTime after);
+
+    @Modifying
+    @Query("delete from ScheduleChange c where c.recordedAt < :before")
+    int deleteRecordedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,35 @@
+package com.example.demo.search;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.example.demo.entities.Patient;
+
+/**
+ * Keeps {@link PatientNameIndex} in step with every write to a patient,
+ * including bulk imports and patients created through an appointment.
+ * Hibernate obtains this listener from the Spring context; contexts without
+ * the index simply skip the update.
+ */
+public class PatientIndexListener {
+
+    private final ObjectProvider<PatientNameIndex> patientNameIndex;
+
+    public PatientIndexListener(ObjectProvider<PatientNameIndex> patientNameIndex){
+        this.patientNameIndex = patientNameIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void indexPatient(Patient patient){
+        patientNameIndex.ifAvailable(index -> index.add(patient));
+    }
+
+    @PostRemove
+    public void unindexPatient(Patient patient){
+        patientNameIndex.ifAvailable(index -> index.remove(patient.getId()));
+    }
+}
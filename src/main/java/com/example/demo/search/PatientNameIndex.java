@@ -0,0 +1,80 @@
+package com.example.demo.search;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.entities.Patient;
+import com.example.demo.repositories.PatientRepository;
+
+/**
+ * Typo-tolerant lookup of patients by first and last name, for reception.
+ *
+ * Built from the database during warm-up, one id range per task, and kept
+ * current by {@link PatientIndexListener} as patients are persisted,
+ * updated or removed. Entries are added on flush, so a rolled back insert may leave an
+ * id behind; callers resolve ids against the repository, which drops it.
+ */
+@Component
+public class PatientNameIndex {
+
+    static final int PAGE_SIZE = 10_000;
+    static final float MIN_SCORE = 0.3f;
+
+    private final TrigramIndex index = new TrigramIndex();
+    private final PatientRepository patientRepository;
+
+    public PatientNameIndex(PatientRepository patientRepository){
+        this.patientRepository = patientRepository;
+    }
+
+    public void rebuild(){
+        index.clear();
+        long lastId = Long.MIN_VALUE;
+        Slice<Patient> page;
+        do {
+            page = patientRepository.findByIdGreaterThan(lastId, PageRequest.of(0, PAGE_SIZE, Sort.by("id")));
+            for (Patient patient : page){
+                add(patient);
+                lastId = patient.getId();
+            }
+        } while (page.hasNext());
+    }
+
+    /**
+     * Adds the patients with ids in (afterId, lastId]. Safe to call for
+     * disjoint ranges from several threads.
+     */
+    public void load(long afterId, long lastId){
+        Slice<Patient> page;
+        do {
+            page = patientRepository.findByIdGreaterThanAndIdLessThanEqual(afterId, lastId,
+                    PageRequest.of(0, PAGE_SIZE, Sort.by("id")));
+            for (Patient patient : page){
+                add(patient);
+                afterId = patient.getId();
+            }
+        } while (page.hasNext());
+    }
+
+    public void clear(){
+        index.clear();
+    }
+
+    public void add(Patient patient){
+        index.put(patient.getId(), patient.getFirstName() + " " + patient.getLastName());
+    }
+
+    public void remove(long patientId){
+        index.remove(patientId);
+    }
+
+    public int size(){
+        return index.size();
+    }
+
+    public TrigramIndex.Matches search(String query, int limit){
+        return index.search(query, limit, MIN_SCORE);
+    }
+}
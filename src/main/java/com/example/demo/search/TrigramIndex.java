@@ -0,0 +1,393 @@
+package com.example.demo.search;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over short texts keyed by a long id, answering
+ * ranked fuzzy matches by Dice similarity of trigram sets.
+ *
+ * Texts are folded to lower-case ASCII letters, digits and spaces, so every
+ * trigram packs into an int below 37^3 and postings live in a flat array
+ * indexed by trigram. Postings are primitive int arrays of document
+ * ordinals; removed documents are tombstoned and skipped while scoring,
+ * and compacted away once they make up half of the ordinals.
+ */
+public class TrigramIndex {
+
+    private static final int ALPHABET = 37;
+    private static final int TRIGRAMS = ALPHABET * ALPHABET * ALPHABET;
+    private static final int MIN_TOMBSTONES = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int[][] postings = new int[TRIGRAMS][];
+    private final int[] postingSizes = new int[TRIGRAMS];
+
+    private long[] ids = new long[1024];
+    private int[] gramCounts = new int[1024];
+    private final BitSet removed = new BitSet();
+    private final LongIntMap ordinals = new LongIntMap();
+    private int documents;
+    private int live;
+
+    // Few searches run at once, so a handful of scratch arrays serve any
+    // number of threads; extras made under load are left to the collector.
+    private final Queue<Scratch> scratches =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    /** Ranked matches, best first; {@code ids.length} is the number of hits. */
+    public static final class Matches {
+        public final long[] ids;
+        public final float[] scores;
+
+        Matches(long[] ids, float[] scores){
+            this.ids = ids;
+            this.scores = scores;
+        }
+    }
+
+    public void put(long id, String text){
+        int[] grams = trigrams(text);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (documents == ids.length){
+                ids = Arrays.copyOf(ids, documents * 2);
+                gramCounts = Arrays.copyOf(gramCounts, documents * 2);
+            }
+            int ordinal = documents++;
+            ids[ordinal] = id;
+            gramCounts[ordinal] = grams.length;
+            ordinals.put(id, ordinal);
+            live++;
+            for (int gram : grams){
+                append(gram, ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id){
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(postings, null);
+            Arrays.fill(postingSizes, 0);
+            removed.clear();
+            ordinals.clear();
+            documents = 0;
+            live = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} documents whose Dice similarity to the
+     * query is at least {@code minScore}, best first.
+     */
+    public Matches search(String query, int limit, float minScore){
+        int[] grams = trigrams(query);
+        if (grams.length == 0 || limit <= 0){
+            return new Matches(new long[0], new float[0]);
+        }
+        Scratch s = scratches.poll();
+        if (s == null){
+            s = new Scratch();
+        }
+        long[] topIds = new long[limit];
+        float[] topScores = new float[limit];
+        int hits = 0;
+
+        lock.readLock().lock();
+        try {
+            s.ensure(documents);
+            for (int gram : grams){
+                int[] posting = postings[gram];
+                for (int i = 0, n = postingSizes[gram]; i < n; i++){
+                    int ordinal = posting[i];
+                    if (s.shared[ordinal]++ == 0){
+                        s.touch(ordinal);
+                    }
+                }
+            }
+            for (int t = 0; t < s.touchedCount; t++){
+                int ordinal = s.touched[t];
+                int shared = s.shared[ordinal];
+                s.shared[ordinal] = 0;
+                if (removed.get(ordinal)){
+                    continue;
+                }
+                float score = 2f * shared / (grams.length + gramCounts[ordinal]);
+                if (score < minScore || hits == limit && score <= topScores[hits - 1]){
+                    continue;
+                }
+                int at = hits < limit ? hits++ : limit - 1;
+                while (at > 0 && topScores[at - 1] < score){
+                    topScores[at] = topScores[at - 1];
+                    topIds[at] = topIds[at - 1];
+                    at--;
+                }
+                topScores[at] = score;
+                topIds[at] = ids[ordinal];
+            }
+            s.touchedCount = 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+        scratches.offer(s);
+        return new Matches(Arrays.copyOf(topIds, hits), Arrays.copyOf(topScores, hits));
+    }
+
+    private void removeLocked(long id){
+        int ordinal = ordinals.remove(id);
+        if (ordinal >= 0){
+            removed.set(ordinal);
+            live--;
+            int tombstones = documents - live;
+            if (tombstones >= MIN_TOMBSTONES && tombstones * 2 >= documents){
+                compact();
+            }
+        }
+    }
+
+    // Renumbers the live documents in order and drops the tombstones from
+    // every posting, so updates do not grow the index without bound.
+    private void compact(){
+        int[] renumbered = new int[documents];
+        int next = 0;
+        for (int ordinal = 0; ordinal < documents; ordinal++){
+            if (removed.get(ordinal)){
+                renumbered[ordinal] = -1;
+                continue;
+            }
+            renumbered[ordinal] = next;
+            ids[next] = ids[ordinal];
+            gramCounts[next] = gramCounts[ordinal];
+            ordinals.put(ids[next], next);
+            next++;
+        }
+        for (int gram = 0; gram < TRIGRAMS; gram++){
+            int[] posting = postings[gram];
+            if (posting == null){
+                continue;
+            }
+            int kept = 0;
+            for (int i = 0, n = postingSizes[gram]; i < n; i++){
+                int ordinal = renumbered[posting[i]];
+                if (ordinal >= 0){
+                    posting[kept++] = ordinal;
+                }
+            }
+            postingSizes[gram] = kept;
+            if (kept == 0){
+                postings[gram] = null;
+            } else if (kept * 4 < posting.length){
+                postings[gram] = Arrays.copyOf(posting, Math.max(4, kept * 2));
+            }
+        }
+        if (next * 4 < ids.length && ids.length > 1024){
+            ids = Arrays.copyOf(ids, Math.max(1024, next * 2));
+            gramCounts = Arrays.copyOf(gramCounts, ids.length);
+        }
+        removed.clear();
+        documents = next;
+    }
+
+    private void append(int gram, int ordinal){
+        int[] posting = postings[gram];
+        int size = postingSizes[gram];
+        if (posting == null){
+            posting = postings[gram] = new int[4];
+        } else if (size == posting.length){
+            posting = postings[gram] = Arrays.copyOf(posting, size + (size >> 1));
+        }
+        posting[size] = ordinal;
+        postingSizes[gram] = size + 1;
+    }
+
+    /**
+     * Distinct trigrams of the folded text, each word padded with two leading
+     * and one trailing space so that short names and word starts weigh in.
+     */
+    static int[] trigrams(String text){
+        if (text == null){
+            return new int[0];
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        int[] codes = new int[2 * folded.length() + 3];
+        int length = 0;
+        codes[length++] = 0;
+        codes[length++] = 0;
+        for (int i = 0; i < folded.length(); i++){
+            int code = code(Character.toLowerCase(folded.charAt(i)));
+            if (code < 0){
+                continue;
+            }
+            if (code == 0 && codes[length - 1] == 0){
+                continue;
+            }
+            if (code == 0){
+                codes[length++] = 0;
+                codes[length++] = 0;
+                continue;
+            }
+            codes[length++] = code;
+        }
+        if (codes[length - 1] != 0){
+            codes[length++] = 0;
+        }
+
+        int[] grams = new int[Math.max(0, length - 2)];
+        int count = 0;
+        for (int i = 0; i + 2 < length; i++){
+            if (codes[i + 2] == 0 && codes[i + 1] == 0){
+                continue;
+            }
+            grams[count++] = (codes[i] * ALPHABET + codes[i + 1]) * ALPHABET + codes[i + 2];
+        }
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++){
+            if (distinct == 0 || grams[distinct - 1] != grams[i]){
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    private static int code(char c){
+        if (c >= 'a' && c <= 'z'){
+            return c - 'a' + 1;
+        }
+        if (c >= '0' && c <= '9'){
+            return c - '0' + 27;
+        }
+        if (Character.getType(c) == Character.NON_SPACING_MARK){
+            return -1;
+        }
+        return 0;
+    }
+
+    private static final class Scratch {
+        int[] shared = new int[0];
+        int[] touched = new int[64];
+        int touchedCount;
+
+        void ensure(int documents){
+            if (shared.length < documents){
+                shared = new int[Math.max(documents, shared.length * 2)];
+            } else if (shared.length > 1024 && shared.length > documents * 4){
+                // The index was compacted
+                shared = new int[documents * 2];
+            }
+        }
+
+        void touch(int ordinal){
+            if (touchedCount == touched.length){
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = ordinal;
+        }
+    }
+
+    /** Open-addressing long to int map, so id lookups do not box. */
+    private static final class LongIntMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(1024);
+        private int[] values = new int[1024];
+        private int size;
+
+        void put(long key, int value){
+            if ((size + 1) * 4 > keys.length * 3){
+                resize();
+            }
+            int slot = slot(key, keys);
+            if (keys[slot] == EMPTY){
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        int remove(long key){
+            int slot = slot(key, keys);
+            if (keys[slot] == EMPTY){
+                return -1;
+            }
+            int value = values[slot];
+            keys[slot] = EMPTY;
+            size--;
+            // Re-insert the rest of the probe run so lookups do not stop early.
+            int mask = keys.length - 1;
+            for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask){
+                long moved = keys[i];
+                int movedValue = values[i];
+                keys[i] = EMPTY;
+                int target = slot(moved, keys);
+                keys[target] = moved;
+                values[target] = movedValue;
+            }
+            return value;
+        }
+
+        void clear(){
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+
+        private void resize(){
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++){
+                if (oldKeys[i] != EMPTY){
+                    int slot = slot(oldKeys[i], keys);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long key, long[] keys){
+            int mask = keys.length - 1;
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key){
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static long[] newKeys(int capacity){
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
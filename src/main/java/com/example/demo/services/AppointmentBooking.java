@@ -0,0 +1,59 @@
+package com.example.demo.services;
+
+import java.util.Optional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+import com.example.demo.repositories.AppointmentRepository;
+
+/**
+ * Books appointments from {@link AppointmentReference}s. The three
+ * references are checked in a single query and attached as uninitialized
+ * proxies, so the cascade on {@link Appointment} has nothing to merge and
+ * only the appointment row is written.
+ */
+@Service
+public class AppointmentBooking {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final AppointmentRepository appointmentRepository;
+
+    public AppointmentBooking(AppointmentRepository appointmentRepository){
+        this.appointmentRepository = appointmentRepository;
+    }
+
+    /**
+     * Stores the appointment and returns it with its generated id, or empty
+     * when the patient, doctor or room does not exist.
+     */
+    @Transactional
+    public Optional<AppointmentReference> book(AppointmentReference request){
+        Optional<Long> roomId = appointmentRepository.findRoomIdIfReferencesExist(
+                request.getPatientId(), request.getDoctorId(), request.getRoomName());
+        if (!roomId.isPresent()){
+            return Optional.empty();
+        }
+
+        Appointment appointment = new Appointment(
+                entityManager.getReference(Patient.class, request.getPatientId()),
+                entityManager.getReference(Doctor.class, request.getDoctorId()),
+                entityManager.getReference(Room.class, roomId.get()),
+                request.getStartsAt(), request.getFinishesAt());
+        entityManager.persist(appointment);
+
+        AppointmentReference booked = new AppointmentReference(request.getPatientId(), request.getDoctorId(),
+                request.getRoomName(), request.getStartsAt(), request.getFinishesAt());
+        booked.setId(appointment.getId());
+        return Optional.of(booked);
+    }
+}
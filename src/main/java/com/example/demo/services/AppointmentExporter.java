@@ -0,0 +1,158 @@
+package com.example.demo.services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams appointments, flattened with their patient, doctor and room, from
+ * a forward-only JDBC cursor straight to an output stream. Only the current
+ * row is ever held in memory.
+ */
+@Service
+public class AppointmentExporter {
+
+    public enum Format { NDJSON, CSV }
+
+    static final String[] COLUMNS = {
+            "id", "startsAt", "finishesAt", "roomName",
+            "patientId", "patientFirstName", "patientLastName", "patientEmail",
+            "doctorId", "doctorFirstName", "doctorLastName", "doctorEmail"
+    };
+
+    private static final String EXPORT_SQL =
+            "select a.id, a.starts_at, a.finishes_at, r.room_name,"
+            + " p.id, p.first_name, p.last_name, p.email,"
+            + " d.id, d.first_name, d.last_name, d.email"
+            + " from appointment a"
+            + " left join room r on r.id = a.room_id"
+            + " left join patient p on p.id = a.patient_id"
+            + " left join doctors d on d.id = a.doctor_id"
+            + " where a.starts_at >= ? and a.starts_at < ?"
+            + " order by a.starts_at";
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public AppointmentExporter(DataSource dataSource, ObjectMapper objectMapper,
+                               @Value("${export.fetch-size:1000}") int fetchSize){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes every appointment starting in [from, to) to the stream. The
+     * stream is flushed but not closed.
+     */
+    public void export(LocalDateTime from, LocalDateTime to, Format format, OutputStream out) throws IOException {
+        try {
+            if (format == Format.CSV){
+                exportCsv(from, to, out);
+            } else {
+                exportNdjson(from, to, out);
+            }
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    private void exportNdjson(LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+
+        jdbcTemplate.query(EXPORT_SQL, rs -> {
+            try {
+                json.writeStartObject();
+                json.writeNumberField(COLUMNS[0], rs.getLong(1));
+                json.writeStringField(COLUMNS[1], format(rs.getTimestamp(2)));
+                json.writeStringField(COLUMNS[2], format(rs.getTimestamp(3)));
+                json.writeStringField(COLUMNS[3], rs.getString(4));
+                for (int column = 5; column <= 12; column++){
+                    json.writeFieldName(COLUMNS[column - 1]);
+                    if (column == 5 || column == 9){
+                        long id = rs.getLong(column);
+                        if (rs.wasNull()){
+                            json.writeNull();
+                        } else {
+                            json.writeNumber(id);
+                        }
+                    } else {
+                        json.writeString(rs.getString(column));
+                    }
+                }
+                json.writeEndObject();
+            } catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }, from, to);
+
+        json.writeRaw('\n');
+        json.close();
+    }
+
+    private void exportCsv(LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        csv.write(String.join(",", COLUMNS));
+        csv.write('\n');
+
+        jdbcTemplate.query(EXPORT_SQL, rs -> {
+            try {
+                csv.write(Long.toString(rs.getLong(1)));
+                csv.write(',');
+                csv.write(format(rs.getTimestamp(2)));
+                csv.write(',');
+                csv.write(format(rs.getTimestamp(3)));
+                for (int column = 4; column <= 12; column++){
+                    csv.write(',');
+                    writeCsvField(csv, rs, column);
+                }
+                csv.write('\n');
+            } catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }, from, to);
+
+        csv.flush();
+    }
+
+    private static void writeCsvField(Writer csv, ResultSet rs, int column) throws IOException, SQLException {
+        String value = rs.getString(column);
+        if (value == null){
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0){
+            csv.write(value);
+            return;
+        }
+        csv.write('"');
+        csv.write(value.replace("\"", "\"\""));
+        csv.write('"');
+    }
+
+    private static String format(Timestamp timestamp){
+        return timestamp == null ? "" : DATE_TIME_FORMATTER.format(timestamp.toLocalDateTime());
+    }
+}
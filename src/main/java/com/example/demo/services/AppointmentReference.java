@@ -0,0 +1,80 @@
+package com.example.demo.services;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * An appointment that names its patient, doctor and room instead of
+ * embedding them. Used both as the request and the response of the
+ * reference-based booking path, so neither side drags in the related
+ * entities.
+ */
+public class AppointmentReference {
+
+    private long id;
+    private long patientId;
+    private long doctorId;
+    private String roomName;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "HH:mm dd/MM/yyyy")
+    private LocalDateTime startsAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "HH:mm dd/MM/yyyy")
+    private LocalDateTime finishesAt;
+
+    public AppointmentReference(){
+        super();
+    }
+
+    public AppointmentReference(long patientId, long doctorId, String roomName,
+                                LocalDateTime startsAt, LocalDateTime finishesAt){
+        this.patientId = patientId;
+        this.doctorId = doctorId;
+        this.roomName = roomName;
+        this.startsAt = startsAt;
+        this.finishesAt = finishesAt;
+    }
+
+    public long getId(){
+        return this.id;
+    }
+    public void setId(long id){
+        this.id = id;
+    }
+
+    public long getPatientId(){
+        return this.patientId;
+    }
+    public void setPatientId(long patientId){
+        this.patientId = patientId;
+    }
+
+    public long getDoctorId(){
+        return this.doctorId;
+    }
+    public void setDoctorId(long doctorId){
+        this.doctorId = doctorId;
+    }
+
+    public String getRoomName(){
+        return this.roomName;
+    }
+    public void setRoomName(String roomName){
+        this.roomName = roomName;
+    }
+
+    public LocalDateTime getStartsAt(){
+        return this.startsAt;
+    }
+    public void setStartsAt(LocalDateTime startsAt){
+        this.startsAt = startsAt;
+    }
+
+    public LocalDateTime getFinishesAt(){
+        return this.finishesAt;
+    }
+    public void setFinishesAt(LocalDateTime finishesAt){
+        this.finishesAt = finishesAt;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.demo.services;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs appointment exports on their own threads, at most
+ * {@code export.max-concurrent} at a time, so long streams never take the
+ * application task executor from other async work. Exports do not queue:
+ * once every thread is streaming, {@link #execute} refuses the next one.
+ * <p>
+ * Deliberately not an {@link java.util.concurrent.Executor} bean, which would
+ * make Boot drop its own application task executor.
+ */
+@Service
+public class ExportExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    public ExportExecutor(@Value("${export.max-concurrent:4}") int maxConcurrent){
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), task -> {
+                    Thread thread = new Thread(task, "export-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @throws RejectedExecutionException when {@code export.max-concurrent}
+     *                                    exports are already running
+     */
+    public void execute(Runnable export){
+        executor.execute(export);
+    }
+
+    @PreDestroy
+    void stop(){
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: how many rows were stored and why the others
+ * were rejected, keyed by their line number in the uploaded document.
+ */
+public class ImportReport {
+
+    private int imported;
+    private final List<RowError> errors = new ArrayList<>();
+
+    public int getImported(){
+        return this.imported;
+    }
+
+    public int getRejected(){
+        return this.errors.size();
+    }
+
+    public List<RowError> getErrors(){
+        return this.errors;
+    }
+
+    void addImported(int rows){
+        this.imported += rows;
+    }
+
+    void reject(long line, String message){
+        this.errors.add(new RowError(line, message));
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String message;
+
+        public RowError(long line, String message){
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine(){
+            return this.line;
+        }
+
+        public String getMessage(){
+            return this.message;
+        }
+    }
+}
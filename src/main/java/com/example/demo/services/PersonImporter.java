@@ -0,0 +1,213 @@
+package com.example.demo.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entities.Person;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Streams doctors or patients out of a CSV or NDJSON upload and stores them
+ * in fixed-size chunks, one transaction and one JDBC batch per chunk.
+ * Doctors and patients reserve their ids in blocks, so a chunk does not
+ * fetch an id per row. Rows are read one line at a time, so the upload is
+ * never held in memory.
+ */
+@Service
+public class PersonImporter {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final MediaType TEXT_CSV = MediaType.valueOf(TEXT_CSV_VALUE);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader personReader;
+    private final int batchSize;
+
+    public PersonImporter(PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                          @Value("${import.batch-size:500}") int batchSize){
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.personReader = objectMapper.readerFor(Person.class);
+        this.batchSize = batchSize;
+    }
+
+    public <T extends Person> ImportReport importPeople(InputStream body, MediaType contentType,
+                                                        Function<Person, T> factory) throws IOException {
+        ImportReport report = new ImportReport();
+        boolean csv = TEXT_CSV.isCompatibleWith(contentType);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+
+        int[] columns = null;
+        List<T> chunk = new ArrayList<>(batchSize);
+        long[] chunkLines = new long[batchSize];
+        long lineNumber = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null){
+            lineNumber++;
+            if (line.trim().isEmpty()){
+                continue;
+            }
+            if (csv && columns == null){
+                columns = csvColumns(splitCsv(line));
+                if (columns == null){
+                    report.reject(lineNumber, "Header must name the firstName, lastName, age and email columns");
+                    return report;
+                }
+                continue;
+            }
+
+            Person person;
+            try {
+                person = csv ? fromCsv(columns, splitCsv(line)) : personReader.readValue(line);
+            } catch (JsonProcessingException e){
+                report.reject(lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+                continue;
+            } catch (IllegalArgumentException e){
+                report.reject(lineNumber, e.getMessage());
+                continue;
+            }
+
+            String problem = validate(person);
+            if (problem != null){
+                report.reject(lineNumber, problem);
+                continue;
+            }
+
+            chunkLines[chunk.size()] = lineNumber;
+            chunk.add(factory.apply(person));
+            if (chunk.size() == batchSize){
+                store(chunk, chunkLines, report);
+            }
+        }
+        store(chunk, chunkLines, report);
+        return report;
+    }
+
+    private <T extends Person> void store(List<T> chunk, long[] chunkLines, ImportReport report){
+        if (chunk.isEmpty()){
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (T person : chunk){
+                    entityManager.persist(person);
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+            report.addImported(chunk.size());
+        } catch (DataAccessException | PersistenceException | TransactionException e){
+            String message = "Chunk rejected by the database: " + e.getMessage();
+            for (int i = 0; i < chunk.size(); i++){
+                report.reject(chunkLines[i], message);
+            }
+        }
+        chunk.clear();
+    }
+
+    private static String validate(Person person){
+        if (person == null){
+            return "Row is empty";
+        }
+        if (isBlank(person.getFirstName())){
+            return "firstName is required";
+        }
+        if (isBlank(person.getLastName())){
+            return "lastName is required";
+        }
+        if (person.getAge() < 0 || person.getAge() > 150){
+            return "age must be between 0 and 150";
+        }
+        if (isBlank(person.getEmail()) || person.getEmail().indexOf('@') < 1){
+            return "email is not valid";
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value){
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static int[] csvColumns(List<String> header){
+        String[] names = {"firstName", "lastName", "age", "email"};
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++){
+            columns[i] = -1;
+            for (int j = 0; j < header.size(); j++){
+                if (names[i].equalsIgnoreCase(header.get(j).trim())){
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0){
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    private static Person fromCsv(int[] columns, List<String> fields){
+        for (int column : columns){
+            if (column >= fields.size()){
+                throw new IllegalArgumentException("Expected at least " + (column + 1) + " fields but found " + fields.size());
+            }
+        }
+        String age = fields.get(columns[2]).trim();
+        try {
+            return new Person(fields.get(columns[0]).trim(), fields.get(columns[1]).trim(),
+                    age.isEmpty() ? 0 : Integer.parseInt(age), fields.get(columns[3]).trim());
+        } catch (NumberFormatException e){
+            throw new IllegalArgumentException("age is not a number: " + age);
+        }
+    }
+
+    static List<String> splitCsv(String line){
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if (quoted){
+                if (c != '"'){
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"'){
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"'){
+                quoted = true;
+            } else if (c == ','){
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.warmup;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads the ids in (afterId, lastId] by halving the range until each piece
+ * spans at most {@code chunkSize} ids, so a fork-join pool spreads the
+ * pieces over its workers.
+ */
+class IdRangeTask extends RecursiveAction {
+
+    interface Loader {
+        void load(long afterId, long lastId);
+    }
+
+    private final long afterId;
+    private final long lastId;
+    private final long chunkSize;
+    private final Loader loader;
+
+    IdRangeTask(long afterId, long lastId, long chunkSize, Loader loader){
+        this.afterId = afterId;
+        this.lastId = lastId;
+        this.chunkSize = chunkSize;
+        this.loader = loader;
+    }
+
+    @Override
+    protected void compute(){
+        if (lastId - afterId <= chunkSize){
+            loader.load(afterId, lastId);
+            return;
+        }
+        long middle = afterId + (lastId - afterId) / 2;
+        invokeAll(new IdRangeTask(afterId, middle, chunkSize, loader),
+                new IdRangeTask(middle, lastId, chunkSize, loader));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.demo.warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Room;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.search.PatientNameIndex;
+
+/**
+ * Fills the in-memory structures before the instance takes traffic: the
+ * schedule of every room and the patient name index. Both are loaded in
+ * parallel on a fork-join pool, one task per id range of at most
+ * {@code warmup.chunk-size} ids.
+ *
+ * <p>The instance reports {@link ReadinessState#REFUSING_TRAFFIC} until
+ * warm-up ends, so a rollout only routes requests to it once its caches
+ * are full. A failed warm-up is logged and the instance accepts traffic
+ * anyway; what was not loaded loads on first use.
+ */
+@Component
+public class WarmUp {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+    private final ApplicationEventPublisher publisher;
+    private final RoomRepository roomRepository;
+    private final PatientRepository patientRepository;
+    private final PatientNameIndex patientNameIndex;
+    private final BookingPipeline bookingPipeline;
+    private final int parallelism;
+    private final long chunkSize;
+
+    public WarmUp(ApplicationEventPublisher publisher, RoomRepository roomRepository,
+                  PatientRepository patientRepository, PatientNameIndex patientNameIndex,
+                  BookingPipeline bookingPipeline,
+                  @Value("${warmup.parallelism:0}") int parallelism,
+                  @Value("${warmup.chunk-size:5000}") long chunkSize){
+        this.publisher = publisher;
+        this.roomRepository = roomRepository;
+        this.patientRepository = patientRepository;
+        this.patientNameIndex = patientNameIndex;
+        this.bookingPipeline = bookingPipeline;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp(){
+        AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+        long started = System.nanoTime();
+        AtomicInteger rooms = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            patientNameIndex.clear();
+            ForkJoinTask<Void> patients = pool.submit(task(patientRepository.findMinId(), patientRepository.findMaxId(),
+                    patientNameIndex::load));
+            ForkJoinTask<Void> schedules = pool.submit(task(roomRepository.findMinId(), roomRepository.findMaxId(),
+                    (afterId, lastId) -> {
+                        for (Room room : roomRepository.findByIdGreaterThanAndIdLessThanEqual(afterId, lastId)){
+                            loadSchedule(room.getRoomName());
+                            rooms.incrementAndGet();
+                        }
+                    }));
+            patients.join();
+            schedules.join();
+            log.info("Warmed up {} room schedules and {} indexed patients in {} ms", rooms.get(),
+                    patientNameIndex.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (RuntimeException e){
+            log.warn("Warm-up failed after {} rooms; the rest loads on first use", rooms.get(), e);
+        } finally {
+            pool.shutdown();
+        }
+        AvailabilityChangeEvent.publish(publisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+
+    private IdRangeTask task(Optional<Long> minId, Optional<Long> maxId, IdRangeTask.Loader loader){
+        long afterId = minId.map(id -> id - 1).orElse(0L);
+        return new IdRangeTask(afterId, maxId.orElse(afterId), chunkSize, loader);
+    }
+
+    private void loadSchedule(String roomName){
+        try {
+            bookingPipeline.schedule(roomName);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading " + roomName, e);
+        } catch (TimeoutException e){
+            throw new IllegalStateException("Timed out loading " + roomName, e);
+        }
+    }
+}
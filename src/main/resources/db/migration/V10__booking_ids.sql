@@ -0,0 +1,8 @@
+-- Appointment ids come from id_block, a booking batch at a time, and the
+-- schedule change log from auto_increment, so a batch no longer commits once
+-- per id on connections of its own. Change ids keep following the order the
+-- changes were made in, which replay relies on.
+
+insert into id_block (sequence_name, next_val) select 'appointment', coalesce(max(id), 0) + 1 from appointment;
+
+alter table schedule_change modify id bigint not null auto_increment;
@@ -0,0 +1,50 @@
+-- Schema as ddl-auto=update first created it, before any of the later
+-- versions: room keyed by its name, appointment.room_id holding that name.
+--
+-- Databases that already have these tables are baselined at this version
+-- and never run this script. The foreign keys carry the names Hibernate
+-- generated for them, so later versions find them under the same name on
+-- either kind of database.
+
+create table doctors (
+    id bigint not null,
+    age integer not null,
+    email varchar(255),
+    first_name varchar(255),
+    last_name varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table patient (
+    id bigint not null,
+    age integer not null,
+    email varchar(255),
+    first_name varchar(255),
+    last_name varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table room (
+    room_name varchar(255) not null,
+    primary key (room_name)
+) engine=InnoDB;
+
+create table appointment (
+    id bigint not null,
+    finishes_at datetime,
+    starts_at datetime,
+    doctor_id bigint,
+    patient_id bigint,
+    room_id varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table hibernate_sequence (
+    next_val bigint
+) engine=InnoDB;
+
+insert into hibernate_sequence values (1);
+
+alter table appointment add constraint FK51y2ce12yp0g0hgsa39p2u9jq foreign key (doctor_id) references doctors (id);
+alter table appointment add constraint FK4apif2ewfyf14077ichee8g06 foreign key (patient_id) references patient (id);
+alter table appointment add constraint FK8yxiq8d6ubccrih94xicd2l5b foreign key (room_id) references room (room_name);
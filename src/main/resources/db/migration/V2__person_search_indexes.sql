@@ -0,0 +1,12 @@
+-- The doctor and patient search pages filter by name, email and age and
+-- sort by last name.
+
+create index idx_doctors_last_name on doctors (last_name, first_name);
+create index idx_doctors_first_name on doctors (first_name);
+create index idx_doctors_email on doctors (email);
+create index idx_doctors_age on doctors (age);
+
+create index idx_patient_last_name on patient (last_name, first_name);
+create index idx_patient_first_name on patient (first_name);
+create index idx_patient_email on patient (email);
+create index idx_patient_age on patient (age);
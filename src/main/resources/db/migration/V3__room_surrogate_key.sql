@@ -0,0 +1,35 @@
+-- Moves room from its room_name primary key to a numeric surrogate key.
+--
+-- New room ids are drawn from hibernate_sequence, the table Hibernate
+-- allocates ids from, so rooms created afterwards cannot collide with
+-- migrated ones. room_name stays unique and appointment.room_id is
+-- rewritten to point at the new key.
+
+create table room_key (
+    room_name varchar(255) not null,
+    id bigint not null,
+    primary key (room_name)
+) engine=InnoDB;
+
+insert into room_key (room_name, id)
+    select r.room_name, s.next_val + (select count(*) from room p where p.room_name < r.room_name)
+    from room r cross join hibernate_sequence s;
+
+update hibernate_sequence set next_val = next_val + (select count(*) from room_key);
+
+alter table appointment drop foreign key FK8yxiq8d6ubccrih94xicd2l5b;
+alter table appointment change room_id room_name varchar(255);
+alter table appointment add column room_id bigint;
+update appointment set room_id = (select k.id from room_key k where k.room_name = appointment.room_name);
+alter table appointment drop column room_name;
+
+alter table room add column id bigint;
+update room set id = (select k.id from room_key k where k.room_name = room.room_name);
+alter table room drop primary key;
+alter table room modify id bigint not null;
+alter table room add primary key (id);
+create unique index uk_room_room_name on room (room_name);
+
+alter table appointment add constraint fk_appointment_room foreign key (room_id) references room (id);
+
+drop table room_key;
@@ -0,0 +1,15 @@
+-- Responses to requests sent with an Idempotency-Key, and claims on keys
+-- whose request is still running (status 0). Old rows are purged by
+-- created_at.
+
+create table idempotency_record (
+    idempotency_key varchar(255) not null,
+    body longblob,
+    content_type varchar(255),
+    created_at datetime not null,
+    request_hash varchar(255),
+    status integer not null,
+    primary key (idempotency_key)
+) engine=InnoDB;
+
+create index idx_idempotency_record_created_at on idempotency_record (created_at);
@@ -0,0 +1,17 @@
+-- Log of booked and removed appointments, replayed on top of a schedule
+-- snapshot at startup and purged by recorded_at.
+
+create table schedule_change (
+    id bigint not null,
+    appointment_id bigint not null,
+    doctor_id bigint not null,
+    finishes_at integer not null,
+    kind varchar(8) not null,
+    patient_id bigint not null,
+    recorded_at datetime not null,
+    room_name varchar(255),
+    starts_at integer not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index idx_schedule_change_recorded_at on schedule_change (recorded_at);
@@ -0,0 +1,8 @@
+-- Room schedules are loaded with findByRoomRoomName and checked for overlaps
+-- by start time within one room; (room_id, starts_at) serves both and also
+-- backs fk_appointment_room. The appointment export ranges over and sorts by
+-- starts_at alone. The doctor and patient list pages are already covered by
+-- the name, email and age indexes from V2.
+
+create index idx_appointment_room_starts_at on appointment (room_id, starts_at);
+create index idx_appointment_starts_at on appointment (starts_at);
@@ -0,0 +1,16 @@
+-- Cache invalidations between instances (see InvalidationBus). Ids come from
+-- auto_increment rather than hibernate_sequence, so each instance polls for
+-- new rows past a high-water mark with a primary key range scan, and old
+-- rows are purged by recorded_at.
+
+create table invalidation (
+    id bigint not null auto_increment,
+    entity varchar(16) not null,
+    entity_id bigint not null,
+    origin varchar(36) not null,
+    recorded_at datetime not null,
+    room_name varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create index idx_invalidation_recorded_at on invalidation (recorded_at);
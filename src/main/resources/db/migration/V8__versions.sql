@@ -0,0 +1,7 @@
+-- Optimistic locking for the PATCH endpoints: every update of an appointment,
+-- doctor or patient checks and increments its version, which clients send
+-- back in If-Match. Existing rows start at version 0.
+
+alter table appointment add column version bigint default 0 not null;
+alter table doctors add column version bigint default 0 not null;
+alter table patient add column version bigint default 0 not null;
@@ -0,0 +1,13 @@
+-- Doctors and patients take their ids from id_block, a block at a time,
+-- instead of one round trip to hibernate_sequence per row. Each row holds the
+-- next id not yet handed out for its table; an instance reserves the ids
+-- below next_val + block size and moves next_val past them.
+
+create table id_block (
+    sequence_name varchar(255) not null,
+    next_val bigint,
+    primary key (sequence_name)
+) engine=InnoDB;
+
+insert into id_block (sequence_name, next_val) select 'doctors', coalesce(max(id), 0) + 1 from doctors;
+insert into id_block (sequence_name, next_val) select 'patient', coalesce(max(id), 0) + 1 from patient;
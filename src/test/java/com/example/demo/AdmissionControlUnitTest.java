@@ -0,0 +1,87 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.admission.AdmissionControl;
+import com.example.demo.admission.AdmissionControl.Decision;
+import com.example.demo.admission.AdmissionControl.Outcome;
+import com.example.demo.admission.AdmissionEndpoint;
+import com.example.demo.admission.AdmissionProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionControlUnitTest {
+
+    private AdmissionProperties properties;
+    private SimpleMeterRegistry registry;
+    private AdmissionControl admissionControl;
+
+    @BeforeEach
+    void setUp(){
+        properties = new AdmissionProperties();
+        properties.setReadRate(0.01);
+        properties.setReadBurst(2);
+        properties.setWriteRate(0.01);
+        properties.setWriteBurst(1);
+        properties.setExpensiveConcurrency(1);
+        registry = new SimpleMeterRegistry();
+        admissionControl = new AdmissionControl(properties, registry);
+    }
+
+    @Test
+    void shouldRateLimitEachClientOnItsOwnBudgets(){
+        assertThat(admissionControl.admit("a", false, false).isAdmitted()).isTrue();
+        assertThat(admissionControl.admit("a", false, false).isAdmitted()).isTrue();
+
+        Decision rejected = admissionControl.admit("a", false, false);
+        assertThat(rejected.getOutcome()).isEqualTo(Outcome.RATE_LIMITED);
+        assertThat(rejected.getRetryAfterSeconds()).isBetween(90L, 100L);
+
+        // writes and other clients are budgeted separately
+        assertThat(admissionControl.admit("a", true, false).isAdmitted()).isTrue();
+        assertThat(admissionControl.admit("a", true, false).isAdmitted()).isFalse();
+        assertThat(admissionControl.admit("b", false, false).isAdmitted()).isTrue();
+
+        assertThat(registry.get("admission.requests").tag("kind", "read").tag("outcome", "rate_limited")
+                .counter().count()).isEqualTo(1);
+        assertThat(registry.get("admission.clients").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCapExpensiveRequestsAcrossClients(){
+        properties.setReadBurst(10);
+
+        Decision first = admissionControl.admit("a", false, true);
+        assertThat(first.isAdmitted()).isTrue();
+
+        Decision second = admissionControl.admit("b", false, true);
+        assertThat(second.getOutcome()).isEqualTo(Outcome.OVERLOADED);
+        assertThat(second.getRetryAfterSeconds()).isEqualTo(1);
+        assertThat(admissionControl.admit("b", false, false).isAdmitted()).isTrue();
+
+        admissionControl.release(second);
+        assertThat(admissionControl.getExpensiveInFlight()).isEqualTo(1);
+        admissionControl.release(first);
+        assertThat(admissionControl.getExpensiveInFlight()).isZero();
+        assertThat(admissionControl.admit("b", false, true).isAdmitted()).isTrue();
+    }
+
+    @Test
+    void shouldApplyLimitsChangedAtRuntime(){
+        AdmissionEndpoint endpoint = new AdmissionEndpoint(properties, admissionControl);
+
+        admissionControl.admit("a", true, false);
+        assertThat(admissionControl.admit("a", true, false).isAdmitted()).isFalse();
+
+        endpoint.configure(null, null, null, 1e9, 5, null, null);
+        assertThat(admissionControl.admit("a", true, false).isAdmitted()).isTrue();
+        assertThat(registry.get("admission.limit").tag("limit", "write_burst").gauge().value()).isEqualTo(5);
+
+        endpoint.configure(false, null, null, 0.0, 0, null, null);
+        assertThat(admissionControl.admit("a", true, false).isAdmitted()).isTrue();
+        assertThat(endpoint.admission()).containsEntry("enabled", false);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.demo;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.admission.AdmissionConfiguration;
+import com.example.demo.controllers.RoomController;
+import com.example.demo.repositories.RoomRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@WebMvcTest(RoomController.class)
+@Import({AdmissionConfiguration.class, AdmissionFilterUnitTest.Metrics.class})
+@TestPropertySource(properties = {"admission.read-rate=0.01", "admission.read-burst=2"})
+class AdmissionFilterUnitTest {
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry(){
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @MockBean
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void shouldRejectClientOverItsReadBudgetWithRetryAfter() throws Exception {
+        mockMvc.perform(get("/api/rooms")).andExpect(status().isNoContent());
+        mockMvc.perform(get("/api/rooms")).andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/api/rooms"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+
+        mockMvc.perform(get("/api/rooms").with(request -> {
+                    request.setRemoteAddr("10.0.0.2");
+                    return request;
+                }))
+                .andExpect(status().isNoContent());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Boots the whole application on a real port and walks one booking through
+ * HTTP. Runs on the JVM with the rest of the suite, and as a native
+ * executable with mvn -Pnative test, where it checks the reflection, proxy
+ * and resource hints under META-INF/native-image.
+ * <p>
+ * Native instances do not run migrations (see application-native.properties),
+ * so this test lets Hibernate create its own schema in a database of its own.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:smoke;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "management.endpoint.health.probes.enabled=true"
+})
+class ApplicationSmokeTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    void should_book_an_appointment_over_http(){
+        assertThat(rest.getForObject("/actuator/health/readiness", Map.class)).containsEntry("status", "UP");
+
+        Map doctor = post("/api/doctor", "{\"firstName\":\"Perla\",\"lastName\":\"Amalia\",\"age\":24,"
+                + "\"email\":\"p.amalia@hospital.accwe\"}").getBody();
+        Map patient = post("/api/patient", "{\"firstName\":\"Jose Luis\",\"lastName\":\"Olaya\",\"age\":37,"
+                + "\"email\":\"j.olaya@email.com\"}").getBody();
+        assertThat(post("/api/room", "{\"roomName\":\"Dermatology\"}").getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+        String booking = "{\"patientId\":" + patient.get("id") + ",\"doctorId\":" + doctor.get("id")
+                + ",\"roomName\":\"Dermatology\",\"startsAt\":\"09:00 24/04/2023\",\"finishesAt\":\"09:30 24/04/2023\"}";
+        assertThat(post("/api/appointment/by-reference", booking).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(post("/api/appointment/by-reference", booking).getStatusCode()).isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+
+        ResponseEntity<Map[]> schedule = rest.getForEntity("/api/rooms/Dermatology/appointments", Map[].class);
+        assertThat(schedule.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(schedule.getBody()).hasSize(1);
+        assertThat(schedule.getBody()[0]).containsEntry("startsAt", "09:00 24/04/2023");
+    }
+
+    @SuppressWarnings("rawtypes")
+    private ResponseEntity<Map> post(String path, String json){
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return rest.postForEntity(path, new HttpEntity<>(json, headers), Map.class);
+    }
+}
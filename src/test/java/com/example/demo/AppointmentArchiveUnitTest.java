@@ -0,0 +1,151 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.demo.archive.AppointmentArchive;
+import com.example.demo.archive.EpochMinutes;
+import com.example.demo.entities.*;
+
+class AppointmentArchiveUnitTest {
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldScanAppendedBlocksByTimeWindow() throws IOException {
+        Path file = dir.resolve("appointments.archive");
+        AppointmentArchive.append(file, Arrays.asList(
+                appointment(1, "Dermatology", 7, 70, "10:00 24/04/2023", "11:00 24/04/2023"),
+                appointment(2, "Oncology", 8, 80, "09:00 24/04/2023", "09:30 24/04/2023")));
+        AppointmentArchive.append(file, Arrays.asList(
+                appointment(3, "Dermatology", 7, 90, "10:00 25/04/2023", "10:45 25/04/2023")));
+
+        try (AppointmentArchive archive = AppointmentArchive.open(file)){
+            assertThat(archive.size()).isEqualTo(3);
+
+            List<Long> ids = new ArrayList<>();
+            archive.scan(parse("09:15 24/04/2023"), parse("10:30 24/04/2023"),
+                    (id, startsAt, finishesAt, roomName, doctorId, patientId) -> ids.add(id));
+            assertThat(ids).containsExactly(2L, 1L);
+
+            List<String> rows = new ArrayList<>();
+            archive.scan(parse("00:00 25/04/2023"), parse("00:00 26/04/2023"),
+                    (id, startsAt, finishesAt, roomName, doctorId, patientId) ->
+                            rows.add(roomName + "/" + doctorId + "/" + patientId + "@" + EpochMinutes.toLocalDateTime(startsAt)));
+            assertThat(rows).containsExactly("Dermatology/7/90@2023-04-25T10:00");
+        }
+    }
+
+    @Test
+    void shouldSeeBlocksAppendedAfterRefresh() throws IOException {
+        Path file = dir.resolve("appointments.archive");
+        AppointmentArchive.append(file, Arrays.asList(
+                appointment(1, "Dermatology", 7, 70, "10:00 24/04/2023", "11:00 24/04/2023")));
+
+        try (AppointmentArchive archive = AppointmentArchive.open(file)){
+            AppointmentArchive.append(file, Arrays.asList(
+                    appointment(2, "Dermatology", 7, 71, "12:00 24/04/2023", "12:30 24/04/2023")));
+            assertThat(archive.size()).isEqualTo(1);
+
+            archive.refresh();
+            assertThat(archive.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void shouldReportBookedMinutesClippedToWindow() throws IOException {
+        Path file = dir.resolve("appointments.archive");
+        AppointmentArchive.append(file, Arrays.asList(
+                appointment(1, "Dermatology", 7, 70, "10:00 24/04/2023", "11:00 24/04/2023"),
+                appointment(2, "Dermatology", 8, 71, "11:00 24/04/2023", "11:30 24/04/2023"),
+                appointment(3, "Oncology", 8, 72, "10:00 24/04/2023", "12:00 24/04/2023")));
+
+        try (AppointmentArchive archive = AppointmentArchive.open(file)){
+            Map<String, Long> minutes = archive.bookedMinutesByRoom(parse("10:30 24/04/2023"), parse("11:15 24/04/2023"));
+
+            assertThat(minutes).containsEntry("Dermatology", 45L).containsEntry("Oncology", 45L);
+        }
+    }
+
+    @Test
+    void shouldKeepAppointmentsWithoutRoomDoctorOrPatient() throws IOException {
+        Path file = dir.resolve("appointments.archive");
+        Appointment roomless = new Appointment(null, null, null, parse("10:00 24/04/2023"), parse("11:00 24/04/2023"));
+        roomless.setId(1);
+        AppointmentArchive.append(file, Arrays.asList(roomless,
+                appointment(2, "Dermatology", 0, 70, "12:00 24/04/2023", "12:30 24/04/2023")));
+
+        try (AppointmentArchive archive = AppointmentArchive.open(file)){
+            List<String> rows = new ArrayList<>();
+            archive.scan(parse("00:00 24/04/2023"), parse("00:00 25/04/2023"),
+                    (id, startsAt, finishesAt, roomName, doctorId, patientId) ->
+                            rows.add(id + ":" + roomName + "/" + doctorId + "/" + patientId));
+            assertThat(rows).containsExactly("1:null/null/null", "2:Dermatology/0/70");
+
+            assertThat(archive.bookedMinutesByRoom(parse("00:00 24/04/2023"), parse("00:00 25/04/2023")))
+                    .containsOnlyKeys("Dermatology");
+        }
+    }
+
+    @Test
+    void shouldKeepRoomNamesLongerThanAShortLength() throws IOException {
+        Path file = dir.resolve("appointments.archive");
+        char[] name = new char[70000];
+        Arrays.fill(name, 'r');
+        String roomName = new String(name);
+        AppointmentArchive.append(file, Arrays.asList(
+                appointment(1, roomName, 7, 70, "10:00 24/04/2023", "11:00 24/04/2023")));
+
+        try (AppointmentArchive archive = AppointmentArchive.open(file)){
+            List<String> rooms = new ArrayList<>();
+            archive.scan(parse("00:00 24/04/2023"), parse("00:00 25/04/2023"),
+                    (id, startsAt, finishesAt, room, doctorId, patientId) -> rooms.add(room));
+            assertThat(rooms).containsExactly(roomName);
+        }
+    }
+
+    @Test
+    void shouldFindLongAppointmentsStartingBeforeTheWindow() throws IOException {
+        Path file = dir.resolve("appointments.archive");
+        AppointmentArchive.append(file, Arrays.asList(
+                appointment(1, "Surgery", 7, 70, "08:00 20/04/2023", "08:00 25/04/2023"),
+                appointment(2, "Surgery", 7, 71, "09:00 21/04/2023", "09:30 21/04/2023"),
+                appointment(3, "Surgery", 7, 72, "10:00 24/04/2023", "10:30 24/04/2023")));
+
+        try (AppointmentArchive archive = AppointmentArchive.open(file)){
+            List<Long> ids = new ArrayList<>();
+            archive.scan(parse("00:00 24/04/2023"), parse("00:00 25/04/2023"),
+                    (id, startsAt, finishesAt, roomName, doctorId, patientId) -> ids.add(id));
+            assertThat(ids).containsExactly(1L, 3L);
+            assertThat(archive.lastBlockIds()).containsExactly(1L, 2L, 3L);
+        }
+    }
+
+    private Appointment appointment(long id, String roomName, long doctorId, long patientId, String startsAt, String finishesAt){
+        Patient patient = new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com");
+        patient.setId(patientId);
+        Doctor doctor = new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe");
+        doctor.setId(doctorId);
+        Appointment appointment = new Appointment(patient, doctor, new Room(roomName), parse(startsAt), parse(finishesAt));
+        appointment.setId(id);
+        return appointment;
+    }
+
+    private LocalDateTime parse(String dateTime){
+        return LocalDateTime.parse(dateTime, formatter);
+    }
+}
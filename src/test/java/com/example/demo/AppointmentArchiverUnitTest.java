@@ -0,0 +1,141 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.archive.AppointmentArchive;
+import com.example.demo.archive.AppointmentArchiver;
+import com.example.demo.archive.ArchivedAppointment;
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.services.AppointmentReference;
+
+/**
+ * Archiving against the real database: past appointments leave the table
+ * and the schedules, and the history endpoints read them back.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:archiver;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "archive.path=target/archiver-test.archive",
+        "archive.after=1d",
+        "archive.interval=0",
+        "archive.chunk-size=2"
+})
+@AutoConfigureMockMvc
+class AppointmentArchiverUnitTest {
+
+    private static final Path ARCHIVE = Paths.get("target/archiver-test.archive");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AppointmentArchiver appointmentArchiver;
+
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @BeforeAll
+    @AfterAll
+    static void deleteArchive() throws IOException {
+        Files.deleteIfExists(ARCHIVE);
+    }
+
+    @Test
+    void shouldMovePastAppointmentsToTheArchive() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        roomRepository.save(new Room("Cardiology"));
+        LocalDateTime lastYear = LocalDateTime.of(LocalDateTime.now().getYear() - 1, 3, 2, 9, 0);
+        LocalDateTime nextYear = lastYear.plusYears(2);
+        long first = book(patient, doctor, "Cardiology", lastYear);
+        long second = book(patient, doctor, "Cardiology", lastYear.plusHours(1));
+        long third = book(patient, doctor, "Cardiology", lastYear.plusHours(2));
+        long future = book(patient, doctor, "Cardiology", nextYear);
+        long roomless = appointmentRepository.save(new Appointment(null, null, null,
+                lastYear.plusDays(1), lastYear.plusDays(1).plusMinutes(30))).getId();
+
+        assertThat(appointmentArchiver.archive()).isEqualTo(4);
+
+        assertThat(appointmentRepository.findAll()).extracting(Appointment::getId).containsExactly(future);
+        assertThat(doctorRepository.existsById(doctor.getId())).isTrue();
+        assertThat(patientRepository.existsById(patient.getId())).isTrue();
+        assertThat(bookingPipeline.schedule("Cardiology").getAppointments()).extracting(AppointmentReference::getId)
+                .containsExactly(future);
+        assertThat(appointmentArchiver.history(lastYear.minusDays(1), lastYear.plusDays(2)))
+                .extracting(ArchivedAppointment::getId, ArchivedAppointment::getRoomName, ArchivedAppointment::getDoctorId)
+                .containsExactlyInAnyOrder(tuple(first, "Cardiology", doctor.getId()),
+                        tuple(second, "Cardiology", doctor.getId()), tuple(third, "Cardiology", doctor.getId()),
+                        tuple(roomless, null, null));
+        assertThat(appointmentArchiver.archive()).isZero();
+
+        String from = lastYear.toLocalDate().toString();
+        String to = lastYear.toLocalDate().plusDays(2).toString();
+        mockMvc.perform(get("/api/appointments/history").param("from", from).param("to", to))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4));
+        mockMvc.perform(get("/api/appointments/history/utilization").param("from", from).param("to", to))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.Cardiology").value(180));
+    }
+
+    @Test
+    void shouldDeleteRowsLeftBehindByAFailedRun() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        roomRepository.save(new Room("Neurology"));
+        LocalDateTime lastYear = LocalDateTime.of(LocalDateTime.now().getYear() - 1, 6, 7, 9, 0);
+        long id = book(patient, doctor, "Neurology", lastYear);
+        // Appended, but the run stopped before deleting it
+        Appointment archived = appointmentRepository.findWithRoomByIdIn(Collections.singletonList(id)).get(0);
+        AppointmentArchive.append(ARCHIVE, Collections.singletonList(archived));
+
+        appointmentArchiver.archive();
+
+        assertThat(appointmentRepository.existsById(id)).isFalse();
+        assertThat(appointmentArchiver.history(lastYear.minusDays(1), lastYear.plusDays(1)))
+                .extracting(ArchivedAppointment::getId).containsExactly(id);
+    }
+
+    private long book(Patient patient, Doctor doctor, String roomName, LocalDateTime startsAt) throws Exception {
+        return bookingPipeline.book(new AppointmentReference(patient.getId(), doctor.getId(), roomName,
+                startsAt, startsAt.plusMinutes(60))).getAppointment().getId();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import com.example.demo.entities.*;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.services.AppointmentBooking;
+import com.example.demo.services.AppointmentReference;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(AppointmentBooking.class)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class AppointmentBookingUnitTest {
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private AppointmentBooking appointmentBooking;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    private Patient patient;
+    private Doctor doctor;
+
+    @BeforeEach
+    void setUp(){
+        patient = entityManager.persist(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        doctor = entityManager.persist(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        entityManager.persist(new Room("Dermatology"));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void should_book_with_one_lookup_and_one_insert(){
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Optional<AppointmentReference> booked = appointmentBooking.book(reference(patient.getId(), "Dermatology"));
+        entityManager.flush();
+
+        assertThat(booked).isPresent();
+        assertThat(booked.get().getId()).isPositive();
+        // reference lookup, appointment insert; the id comes from a block reserved in
+        // id_block on a connection of its own, which the session statistics do not count
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(1);
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+
+        entityManager.clear();
+        Appointment stored = appointmentRepository.findById(booked.get().getId()).get();
+        assertThat(stored.getPatient().getLastName()).isEqualTo("Olaya");
+        assertThat(stored.getRoom().getRoomName()).isEqualTo("Dermatology");
+        assertThat(patientRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void should_not_book_unknown_references(){
+        assertThat(appointmentBooking.book(reference(patient.getId() + 100, "Dermatology"))).isEmpty();
+        assertThat(appointmentBooking.book(reference(patient.getId(), "Cardiology"))).isEmpty();
+        assertThat(appointmentRepository.count()).isZero();
+    }
+
+    private AppointmentReference reference(long patientId, String roomName){
+        return new AppointmentReference(patientId, doctor.getId(), roomName,
+                LocalDateTime.parse("19:30 24/04/2023", formatter), LocalDateTime.parse("20:30 24/04/2023", formatter));
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.demo;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -9,41 +14,98 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 
 import java.time.LocalDateTime;
 import java.time.format.*;
 
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
+import com.example.demo.archive.AppointmentArchiver;
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.RoomLocks;
 import com.example.demo.controllers.AppointmentController;
 import com.example.demo.repositories.*;
 import com.example.demo.entities.*;
+import com.example.demo.services.AppointmentBooking;
+import com.example.demo.services.AppointmentExporter;
+import com.example.demo.services.AppointmentReference;
+import com.example.demo.services.ExportExecutor;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 @WebMvcTest(AppointmentController.class)
+@Import({JacksonConfiguration.class, BookingPipeline.class, ExportExecutor.class})
 class AppointmentControllerUnitTest{
 
     @MockBean
     private AppointmentRepository appointmentRepository;
 
+    @MockBean
+    private AppointmentExporter appointmentExporter;
+
+    @MockBean
+    private AppointmentArchiver appointmentArchiver;
+
+    @MockBean
+    private AppointmentBooking appointmentBooking;
+
+    @MockBean
+    private RoomRepository roomRepository;
+
+    @MockBean
+    private ScheduleChangeRepository scheduleChangeRepository;
+
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private RoomLocks roomLocks;
+
     @Autowired 
     private MockMvc mockMvc;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    // No database to lock in; run the writer's work directly.
+    @BeforeEach
+    void runLockedWorkDirectly(){
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(2).run();
+            return null;
+        }).when(roomLocks).inLockedTransaction(any(), any(), any());
+    }
+
+    @AfterEach
+    void clearSchedules() throws Exception {
+        bookingPipeline.clear();
+    }
+
     @Test
     void shouldCreateAppointment() throws Exception {
         
@@ -274,5 +336,316 @@ class AppointmentControllerUnitTest{
                 .andExpect(status().isOk());
                 
     }
-}
 
+    @Test
+    void shouldExportAppointmentsAsNdjson() throws Exception{
+        doAnswer(invocation -> {
+            invocation.getArgument(3, OutputStream.class).write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(appointmentExporter).export(any(), any(), any(), any());
+
+        MvcResult result = mockMvc.perform(get("/api/appointments/export")
+                        .param("from", "2023-04-01")
+                        .param("to", "2023-05-01"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // Only the export runs without a time limit
+        assertThat(result.getRequest().getAsyncContext().getTimeout()).isEqualTo(-1);
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string("{\"id\":1}\n"));
+
+        verify(appointmentExporter).export(eq(LocalDateTime.of(2023, 4, 1, 0, 0)), eq(LocalDateTime.of(2023, 5, 1, 0, 0)),
+                eq(AppointmentExporter.Format.NDJSON), any());
+    }
+
+    @Test
+    void shouldExportGzippedCsvWhenAccepted() throws Exception{
+        MvcResult result = mockMvc.perform(get("/api/appointments/export")
+                        .param("from", "2023-04-01")
+                        .param("to", "2023-05-01")
+                        .param("format", "csv")
+                        .header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(header().string("Content-Encoding", "gzip"));
+    }
+
+    @Test
+    void shouldNotGzipExportWhenRefusedByQValue() throws Exception{
+        MvcResult result = mockMvc.perform(get("/api/appointments/export")
+                        .param("from", "2023-04-01")
+                        .param("to", "2023-05-01")
+                        .header("Accept-Encoding", "gzip;q=0, *;q=0.5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"));
+    }
+
+    @Test
+    void shouldRefuseExportOnceEveryExportThreadIsBusy() throws Exception{
+        // export.max-concurrent defaults to 4
+        CountDownLatch started = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(appointmentExporter).export(any(), any(), any(), any());
+
+        List<MvcResult> running = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++)
+                running.add(mockMvc.perform(get("/api/appointments/export")
+                                .param("from", "2023-04-01")
+                                .param("to", "2023-05-01"))
+                        .andExpect(request().asyncStarted())
+                        .andReturn());
+            started.await();
+
+            mockMvc.perform(get("/api/appointments/export")
+                            .param("from", "2023-04-01")
+                            .param("to", "2023-05-01"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+        } finally {
+            release.countDown();
+        }
+        for (MvcResult result : running)
+            mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldNotExportUnknownFormatOrEmptyRange() throws Exception{
+        mockMvc.perform(get("/api/appointments/export")
+                        .param("from", "2023-04-01")
+                        .param("to", "2023-05-01")
+                        .param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/appointments/export")
+                        .param("from", "2023-05-01")
+                        .param("to", "2023-04-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldNegotiateBinaryFormatsKeepingDateFormat() throws Exception{
+        Patient patient = new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com");
+        Doctor doctor = new Doctor ("Perla", "Amalia", 24, "p.amalia@hospital.accwe");
+        Room room = new Room("Dermatology");
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+        Appointment appointment = new Appointment(patient, doctor, room,
+                LocalDateTime.parse("19:00 24/04/2023", formatter), LocalDateTime.parse("20:00 24/04/2023", formatter));
+
+        when(appointmentRepository.findAll()).thenReturn(Collections.singletonList(appointment));
+
+        byte[] smile = mockMvc.perform(get("/api/appointments").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode smileBody = new ObjectMapper(new SmileFactory()).readTree(smile);
+        assertThat(smileBody.get(0).get("startsAt").asText()).isEqualTo("19:00 24/04/2023");
+
+        byte[] cbor = mockMvc.perform(get("/api/appointments").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode cborBody = new ObjectMapper(new CBORFactory()).readTree(cbor);
+        assertThat(cborBody.get(0).get("finishesAt").asText()).isEqualTo("20:00 24/04/2023");
+    }
+
+    @Test
+    void shouldCreateAppointmentFromSmileBody() throws Exception{
+        Patient patient = new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com");
+        Doctor doctor = new Doctor ("Perla", "Amalia", 24, "p.amalia@hospital.accwe");
+        Room room = new Room("Dermatology");
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+        Appointment appointment = new Appointment(patient, doctor, room,
+                LocalDateTime.parse("19:30 24/04/2023", formatter), LocalDateTime.parse("20:30 24/04/2023", formatter));
+
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        byte[] body = smileMapper.writeValueAsBytes(objectMapper.readTree(objectMapper.writeValueAsString(appointment)));
+
+        mockMvc.perform(post("/api/appointment").contentType("application/x-jackson-smile").content(body))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldCreateAppointmentByReference() throws Exception{
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+        AppointmentReference reference = new AppointmentReference(3, 5, "Dermatology",
+                LocalDateTime.parse("19:30 24/04/2023", formatter), LocalDateTime.parse("20:30 24/04/2023", formatter));
+
+        when(appointmentBooking.book(any(AppointmentReference.class))).thenAnswer(invocation -> {
+            AppointmentReference booked = invocation.getArgument(0);
+            booked.setId(11);
+            return Optional.of(booked);
+        });
+
+        mockMvc.perform(post("/api/appointment/by-reference").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(reference)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(11))
+                .andExpect(jsonPath("$.patientId").value(3))
+                .andExpect(jsonPath("$.startsAt").value("19:30 24/04/2023"));
+    }
+
+    @Test
+    void shouldNotCreateAppointmentByReferenceWhenInvalidOrOverlapping() throws Exception{
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+        LocalDateTime startsAt = LocalDateTime.parse("19:30 24/04/2023", formatter);
+        LocalDateTime finishesAt = LocalDateTime.parse("20:30 24/04/2023", formatter);
+
+        mockMvc.perform(post("/api/appointment/by-reference").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new AppointmentReference(3, 5, "Dermatology", startsAt, startsAt))))
+                .andExpect(status().isBadRequest());
+
+        Appointment existing = new Appointment(new Patient(), new Doctor(), new Room("Dermatology"), startsAt, finishesAt);
+        when(appointmentRepository.findByRoomRoomName("Dermatology")).thenReturn(Collections.singletonList(existing));
+
+        mockMvc.perform(post("/api/appointment/by-reference").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new AppointmentReference(3, 5, "Dermatology", startsAt, finishesAt))))
+                .andExpect(status().isNotAcceptable());
+
+        verify(appointmentBooking, never()).book(any());
+    }
+
+    @Test
+    void shouldNotCreateAppointmentByReferenceToUnknownEntities() throws Exception{
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+        AppointmentReference reference = new AppointmentReference(3, 5, "Dermatology",
+                LocalDateTime.parse("19:30 24/04/2023", formatter), LocalDateTime.parse("20:30 24/04/2023", formatter));
+
+        when(appointmentBooking.book(any(AppointmentReference.class))).thenReturn(Optional.empty());
+
+        mockMvc.perform(post("/api/appointment/by-reference").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(reference)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldGetRoomScheduleFromBookings() throws Exception{
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+        LocalDateTime startsAt = LocalDateTime.parse("19:30 24/04/2023", formatter);
+
+        Patient patient = new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com");
+        patient.setId(3);
+        Appointment stored = new Appointment(patient, new Doctor(), new Room("Oncology"), startsAt, startsAt.plusHours(1));
+        stored.setId(7);
+        when(appointmentRepository.findByRoomRoomName("Oncology")).thenReturn(Collections.singletonList(stored));
+
+        mockMvc.perform(get("/api/rooms/Dermatology/appointments"))
+                .andExpect(status().isNoContent());
+
+        Appointment later = new Appointment(new Patient(), new Doctor(), new Room("Oncology"),
+                startsAt.plusHours(2), startsAt.plusHours(3));
+        mockMvc.perform(post("/api/appointment").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(later)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/rooms/Oncology/appointments"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(7))
+                .andExpect(jsonPath("$[0].patientId").value(3))
+                .andExpect(jsonPath("$[1].startsAt").value("21:30 24/04/2023"));
+    }
+
+    @Test
+    void shouldMoveAppointmentKeepingItsId() throws Exception{
+        LocalDateTime startsAt = LocalDateTime.of(2023, 4, 24, 19, 0);
+        Room room = new Room("Dermatology");
+        room.setId(2);
+        Appointment stored = new Appointment(new Patient(), new Doctor(), room, startsAt, startsAt.plusHours(1));
+        stored.setId(1);
+        Appointment other = new Appointment(new Patient(), new Doctor(), room, startsAt.plusHours(2), startsAt.plusHours(3));
+        other.setId(2);
+        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(stored));
+        when(appointmentRepository.findByRoomRoomName("Dermatology")).thenReturn(Arrays.asList(stored, other));
+        when(appointmentRepository.findForUpdate(1L)).thenReturn(Optional.of(stored));
+        when(roomRepository.findByRoomName("Dermatology")).thenReturn(Optional.of(room));
+
+        mockMvc.perform(patch("/api/appointments/1").header("If-Match", "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"finishesAt\":\"21:30 24/04/2023\"}"))
+                .andExpect(status().isNotAcceptable());
+
+        mockMvc.perform(patch("/api/appointments/1").header("If-Match", "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"finishesAt\":\"20:30 24/04/2023\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.startsAt").value("19:00 24/04/2023"))
+                .andExpect(jsonPath("$.finishesAt").value("20:30 24/04/2023"));
+
+        assertThat(stored.getFinishesAt()).isEqualTo(startsAt.plusMinutes(90));
+        assertThat(bookingPipeline.schedule("Dermatology").getAppointments())
+                .extracting(AppointmentReference::getFinishesAt)
+                .containsExactly(startsAt.plusMinutes(90), startsAt.plusHours(3));
+    }
+
+    @Test
+    void shouldNotCheckOrWriteAnUnchangedSlot() throws Exception{
+        LocalDateTime startsAt = LocalDateTime.of(2023, 4, 24, 19, 0);
+        Appointment stored = new Appointment(new Patient(), new Doctor(), new Room("Dermatology"),
+                startsAt, startsAt.plusHours(1));
+        stored.setId(1);
+        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(stored));
+
+        mockMvc.perform(patch("/api/appointments/1").header("If-Match", "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"startsAt\":\"19:00 24/04/2023\",\"room\":{\"roomName\":\"Dermatology\"}}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""));
+
+        verify(appointmentRepository, never()).findForUpdate(anyLong());
+    }
+
+    @Test
+    void shouldNotPatchAnythingButTheSlotOrWithoutTheVersion() throws Exception{
+        LocalDateTime startsAt = LocalDateTime.of(2023, 4, 24, 19, 0);
+        Appointment stored = new Appointment(new Patient(), new Doctor(), new Room("Dermatology"),
+                startsAt, startsAt.plusHours(1));
+        stored.setId(1);
+        when(appointmentRepository.findById(1L)).thenReturn(Optional.of(stored));
+
+        mockMvc.perform(patch("/api/appointments/1").header("If-Match", "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"doctor\":{\"id\":5}}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/api/appointments/1").header("If-Match", "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"room\":{\"id\":5}}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/api/appointments/1").header("If-Match", "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"finishesAt\":\"19:00 24/04/2023\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/api/appointments/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"finishesAt\":\"20:30 24/04/2023\"}"))
+                .andExpect(status().isPreconditionRequired());
+        mockMvc.perform(patch("/api/appointments/2").header("If-Match", "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"finishesAt\":\"20:30 24/04/2023\"}"))
+                .andExpect(status().isNotFound());
+
+        verify(appointmentRepository, never()).findForUpdate(anyLong());
+    }
+}
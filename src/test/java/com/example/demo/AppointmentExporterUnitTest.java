@@ -0,0 +1,80 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import com.example.demo.entities.*;
+import com.example.demo.services.AppointmentExporter;
+
+@DataJpaTest
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(AppointmentExporter.class)
+class AppointmentExporterUnitTest {
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private AppointmentExporter appointmentExporter;
+
+    @BeforeEach
+    void setUp(){
+        Patient patient = new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com");
+        Doctor doctor = new Doctor("Perla", "Amalia, MD", 24, "p.amalia@hospital.accwe");
+        Room room = new Room("Dermatology");
+
+        entityManager.persist(new Appointment(patient, doctor, room,
+                LocalDateTime.parse("19:30 24/04/2023", formatter), LocalDateTime.parse("20:30 24/04/2023", formatter)));
+        entityManager.persist(new Appointment(patient, doctor, room,
+                LocalDateTime.parse("09:00 02/05/2023", formatter), LocalDateTime.parse("09:30 02/05/2023", formatter)));
+        entityManager.flush();
+    }
+
+    @Test
+    void should_export_flattened_appointments_as_ndjson() throws IOException {
+        String[] lines = export(AppointmentExporter.Format.NDJSON).split("\n");
+
+        assertThat(lines).hasSize(1);
+        assertThat(lines[0])
+                .contains("\"startsAt\":\"19:30 24/04/2023\"")
+                .contains("\"finishesAt\":\"20:30 24/04/2023\"")
+                .contains("\"roomName\":\"Dermatology\"")
+                .contains("\"patientLastName\":\"Olaya\"")
+                .contains("\"doctorEmail\":\"p.amalia@hospital.accwe\"");
+    }
+
+    @Test
+    void should_export_csv_with_header_and_quoted_fields() throws IOException {
+        String[] lines = export(AppointmentExporter.Format.CSV).split("\n");
+
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("id,startsAt,finishesAt,roomName,patientId");
+        assertThat(lines[1]).contains(",19:30 24/04/2023,20:30 24/04/2023,Dermatology,")
+                .contains(",Perla,\"Amalia, MD\",p.amalia@hospital.accwe");
+    }
+
+    private String export(AppointmentExporter.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        appointmentExporter.export(LocalDateTime.parse("00:00 01/04/2023", formatter),
+                LocalDateTime.parse("00:00 01/05/2023", formatter), format, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -3,11 +3,18 @@ package com.example.demo;
 import java.time.LocalDateTime;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
@@ -35,6 +42,9 @@ class AppointmentJpaUnitTest {
     @Autowired
     RoomRepository repoRooms;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
     @Test
     void should_find_no_appointments_if_repository_is_empty(){
         Iterable<Appointment> appointments = repoAppointments.findAll();
@@ -257,5 +267,32 @@ class AppointmentJpaUnitTest {
         Iterable appointments = repoAppointments.findAll();
         assertThat(appointments).isEmpty();
     }
-    
+
+    @Test
+    void should_write_only_changed_columns_and_refuse_a_stale_version(){
+        LocalDateTime nine = LocalDateTime.of(2023, 4, 24, 9, 0);
+        long id = entityManager.persistAndGetId(new Appointment(
+                new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"),
+                new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"),
+                new Room("Dermatology"), nine, nine.plusMinutes(30)), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+        Appointment stale = entityManager.find(Appointment.class, id);
+        entityManager.detach(stale);
+
+        Appointment current = entityManager.find(Appointment.class, id);
+        current.setFinishesAt(nine.plusHours(1));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(repoAppointments.findById(id).get().getVersion()).isEqualTo(stale.getVersion() + 1);
+        stale.setStartsAt(nine.minusMinutes(30));
+        assertThatThrownBy(() -> repoAppointments.save(stale))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        EntityPersister persister = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getMetamodel()
+                .entityPersister(Appointment.class);
+        assertThat(persister.getEntityMetamodel().isDynamicUpdate()).isTrue();
+        assertThat(persister.isVersioned()).isTrue();
+    }
 }
@@ -0,0 +1,409 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.BookingResult;
+import com.example.demo.booking.RoomLocks;
+import com.example.demo.entities.*;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.repositories.ScheduleChangeRepository;
+import com.example.demo.services.AppointmentBooking;
+import com.example.demo.services.AppointmentReference;
+
+// The writers commit on their own threads, so the test must not hold a transaction.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import({BookingPipeline.class, AppointmentBooking.class, RoomLocks.class})
+@TestPropertySource(properties = {
+        "booking.pipeline.shards=2", "booking.pipeline.batch-size=64",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+class BookingPipelineUnitTest {
+
+    private static final LocalDateTime NINE = LocalDateTime.of(2023, 4, 24, 9, 0);
+
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private ScheduleChangeRepository scheduleChangeRepository;
+
+    @Autowired
+    private AppointmentBooking appointmentBooking;
+
+    @Autowired
+    private RoomLocks roomLocks;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @TempDir
+    Path snapshotDirectory;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        scheduleChangeRepository.deleteAll();
+        appointmentRepository.deleteAll();
+        patientRepository.deleteAll();
+        doctorRepository.deleteAll();
+        roomRepository.deleteAll();
+        bookingPipeline.clear();
+    }
+
+    @Test
+    void should_accept_only_one_of_many_concurrent_bookings_for_a_slot(){
+        List<CompletableFuture<BookingResult>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++){
+            results.add(bookingPipeline.submit(appointment("Dermatology", NINE, 30)));
+        }
+
+        long accepted = results.stream().map(CompletableFuture::join).filter(BookingResult::isAccepted).count();
+
+        assertThat(accepted).isEqualTo(1);
+        assertThat(appointmentRepository.count()).isEqualTo(1);
+        assertThat(roomRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void should_commit_many_bookings_per_transaction(){
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<CompletableFuture<BookingResult>> results = new ArrayList<>();
+        for (int i = 0; i < 120; i++){
+            results.add(bookingPipeline.submit(appointment("Room " + (i % 3), NINE.plusMinutes(30L * i), 30)));
+        }
+
+        assertThat(results.stream().map(CompletableFuture::join).allMatch(BookingResult::isAccepted)).isTrue();
+        assertThat(appointmentRepository.count()).isEqualTo(120);
+        assertThat(roomRepository.count()).isEqualTo(3);
+        assertThat(statistics.getSuccessfulTransactionCount()).isLessThan(60);
+    }
+
+    @Test
+    void should_fail_only_the_bad_booking_of_a_batch() throws Exception {
+        // Not stored, yet carries an id, so the cascade refuses to insert it
+        Appointment bad = appointment("Dermatology", NINE, 30);
+        bad.getPatient().setId(Long.MAX_VALUE);
+        List<CompletableFuture<BookingResult>> results = new ArrayList<>();
+        for (int i = 1; i <= 10; i++){
+            results.add(bookingPipeline.submit(appointment("Dermatology", NINE.plusHours(i), 30)));
+            if (i == 5){
+                results.add(bookingPipeline.submit(bad));
+            }
+        }
+        CompletableFuture<BookingResult> failed = results.remove(5);
+
+        assertThat(results.stream().map(CompletableFuture::join).allMatch(BookingResult::isAccepted)).isTrue();
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(bad.getId()).isZero();
+        assertThat(appointmentRepository.count()).isEqualTo(10);
+        assertThat(roomRepository.count()).isEqualTo(1);
+        assertThat(bookingPipeline.schedule("Dermatology").getAppointments()).extracting(AppointmentReference::getId)
+                .hasSize(10).allMatch(id -> id > 0);
+        assertThat(bookingPipeline.book(appointment("Dermatology", NINE, 30)).isAccepted()).isTrue();
+    }
+
+    @Test
+    void should_not_store_a_booking_after_its_caller_timed_out() throws Exception {
+        roomRepository.save(new Room("Oncology"));
+        BookingPipeline impatient = pipeline(snapshotDirectory.resolve("schedule.snapshot"), Duration.ofMillis(300),
+                Duration.ofDays(1));
+        impatient.start();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> roomLocks.inLockedTransaction(new TransactionTemplate(transactionManager),
+                Collections.singleton("Oncology"), () -> {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        holder.start();
+        try {
+            assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+            // Keeps the room's writer waiting for the lock, with the next
+            // booking left in its queue
+            CompletableFuture<BookingResult> first = impatient.submit(appointment("Oncology", NINE, 30));
+            Thread.sleep(100);
+
+            assertThatThrownBy(() -> impatient.book(appointment("Oncology", NINE.plusHours(1), 30)))
+                    .isInstanceOf(TimeoutException.class);
+            release.countDown();
+            holder.join();
+
+            assertThat(first.join().isAccepted()).isTrue();
+            assertThat(impatient.schedule("Oncology").getAppointments()).extracting(AppointmentReference::getStartsAt)
+                    .containsExactly(NINE);
+            assertThat(appointmentRepository.count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            impatient.stop();
+        }
+    }
+
+    @Test
+    void should_check_against_stored_appointments_and_forget_removed_ones() throws Exception {
+        Appointment stored = appointmentRepository.save(appointment("Oncology", NINE, 60));
+
+        assertThat(bookingPipeline.book(appointment("Oncology", NINE.plusMinutes(30), 60)).isAccepted()).isFalse();
+
+        bookingPipeline.delete(stored);
+
+        BookingResult result = bookingPipeline.book(appointment("Oncology", NINE.plusMinutes(30), 60));
+        assertThat(result.isAccepted()).isTrue();
+        assertThat(result.getAppointment().getId()).isPositive();
+        assertThat(roomRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void should_check_a_batch_against_stored_appointments_with_one_query_per_room() throws Exception {
+        bookingPipeline.schedule("Oncology");
+        bookingPipeline.schedule("Radiology");
+        // Stored by another instance, after this one loaded the rooms
+        appointmentRepository.save(appointment("Oncology", NINE.plusHours(2), 60));
+        appointmentRepository.save(appointment("Radiology", NINE.plusHours(5), 60));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<CompletableFuture<BookingResult>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++){
+            results.add(bookingPipeline.submit(appointment(i % 2 == 0 ? "Oncology" : "Radiology",
+                    NINE.plusMinutes(30L * (i / 2)), 30)));
+        }
+
+        List<LocalDateTime> rejected = new ArrayList<>();
+        for (CompletableFuture<BookingResult> result : results){
+            if (!result.join().isAccepted()){
+                rejected.add(result.join().getAppointment().getStartsAt());
+            }
+        }
+        assertThat(rejected).containsExactlyInAnyOrder(NINE.plusHours(2), NINE.plusMinutes(150),
+                NINE.plusHours(5), NINE.plusMinutes(330));
+        long overlapQueries = 0;
+        for (String query : statistics.getQueries()){
+            if (query.startsWith("select a.id, a.startsAt, a.finishesAt from Appointment a")){
+                overlapQueries += statistics.getQueryStatistics(query).getExecutionCount();
+            }
+        }
+        assertThat(overlapQueries).isPositive().isLessThan(20);
+    }
+
+    @Test
+    void should_move_an_appointment_over_its_own_slot_and_into_another_room() throws Exception {
+        long id = bookingPipeline.book(appointment("Oncology", NINE, 30)).getAppointment().getId();
+        assertThat(bookingPipeline.book(appointment("Radiology", NINE.plusHours(1), 30)).isAccepted()).isTrue();
+
+        Appointment stored = appointmentRepository.findById(id).get();
+        BookingResult longer = bookingPipeline.move(stored, moved(stored, "Oncology", NINE, 60), stored.getVersion());
+        assertThat(longer.isAccepted()).isTrue();
+        assertThat(longer.getAppointment().getVersion()).isEqualTo(stored.getVersion() + 1);
+        assertThat(bookingPipeline.schedule("Oncology").getAppointments()).extracting(AppointmentReference::getFinishesAt)
+                .containsExactly(NINE.plusHours(1));
+
+        // The old room may be on another writer, which drops it afterwards
+        CountDownLatch left = new CountDownLatch(1);
+        bookingPipeline.addScheduleListener(roomName -> {
+            if (roomName.equals("Oncology")){
+                left.countDown();
+            }
+        });
+        stored = appointmentRepository.findById(id).get();
+        assertThat(bookingPipeline.move(stored, moved(stored, "Radiology", NINE, 60), stored.getVersion())
+                .isAccepted()).isTrue();
+        assertThat(left.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(bookingPipeline.schedule("Oncology").size()).isZero();
+        assertThat(bookingPipeline.schedule("Radiology").getAppointments()).extracting(AppointmentReference::getId)
+                .contains(id).hasSize(2);
+        assertThat(appointmentRepository.findById(id).get().getRoom().getRoomName()).isEqualTo("Radiology");
+        assertThat(roomRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void should_not_move_onto_a_taken_slot_from_a_stale_version_or_into_an_unknown_room() throws Exception {
+        long id = bookingPipeline.book(appointment("Oncology", NINE, 30)).getAppointment().getId();
+        assertThat(bookingPipeline.book(appointment("Oncology", NINE.plusHours(1), 30)).isAccepted()).isTrue();
+        Appointment stored = appointmentRepository.findById(id).get();
+
+        assertThat(bookingPipeline.move(stored, moved(stored, "Oncology", NINE.plusMinutes(45), 30),
+                stored.getVersion()).getStatus()).isEqualTo(BookingResult.Status.REJECTED);
+        assertThat(bookingPipeline.move(stored, moved(stored, "Oncology", NINE.plusHours(2), 30),
+                stored.getVersion() + 1).getStatus()).isEqualTo(BookingResult.Status.CONFLICT);
+        assertThat(bookingPipeline.move(stored, moved(stored, "Nowhere", NINE, 30),
+                stored.getVersion()).getStatus()).isEqualTo(BookingResult.Status.NOT_FOUND);
+
+        assertThat(bookingPipeline.schedule("Oncology").getAppointments()).extracting(AppointmentReference::getStartsAt)
+                .containsExactly(NINE, NINE.plusHours(1));
+        Appointment unchanged = appointmentRepository.findById(id).get();
+        assertThat(unchanged.getStartsAt()).isEqualTo(NINE);
+        assertThat(unchanged.getVersion()).isEqualTo(stored.getVersion());
+        assertThat(roomRepository.findByRoomName("Nowhere")).isEmpty();
+    }
+
+    private static Appointment moved(Appointment stored, String room, LocalDateTime startsAt, int minutes){
+        Appointment moved = new Appointment(stored.getPatient(), stored.getDoctor(), new Room(room),
+                startsAt, startsAt.plusMinutes(minutes));
+        moved.setId(stored.getId());
+        return moved;
+    }
+
+    private static Appointment appointment(String room, LocalDateTime startsAt, int minutes){
+        return new Appointment(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"),
+                new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"),
+                new Room(room), startsAt, startsAt.plusMinutes(minutes));
+    }
+
+    @Test
+    void should_publish_the_schedule_only_after_commit() throws Exception {
+        assertThat(bookingPipeline.loadedSchedule("Cardiology")).isEmpty();
+        assertThat(bookingPipeline.schedule("Cardiology").size()).isZero();
+
+        CompletableFuture<BookingResult> pending = bookingPipeline.submit(appointment("Cardiology", NINE, 30));
+        BookingResult result = pending.join();
+
+        assertThat(bookingPipeline.loadedSchedule("Cardiology")).hasValueSatisfying(schedule ->
+                assertThat(schedule.getAppointments()).extracting(AppointmentReference::getId)
+                        .containsExactly(result.getAppointment().getId()));
+    }
+
+    @Test
+    void should_book_by_reference_through_the_room_writer() throws Exception {
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        roomRepository.save(new Room("Neurology"));
+
+        AppointmentReference reference = new AppointmentReference(patient.getId(), doctor.getId(), "Neurology",
+                NINE, NINE.plusMinutes(30));
+        BookingResult booked = bookingPipeline.book(reference);
+        BookingResult clash = bookingPipeline.book(reference);
+        reference.setDoctorId(doctor.getId() + 1000);
+        reference.setStartsAt(NINE.plusHours(1));
+        reference.setFinishesAt(NINE.plusHours(2));
+        BookingResult unknownDoctor = bookingPipeline.book(reference);
+
+        assertThat(booked.isAccepted()).isTrue();
+        assertThat(booked.getAppointment().getId()).isPositive();
+        assertThat(clash.getStatus()).isEqualTo(BookingResult.Status.REJECTED);
+        assertThat(unknownDoctor.getStatus()).isEqualTo(BookingResult.Status.NOT_FOUND);
+        assertThat(bookingPipeline.schedule("Neurology").size()).isEqualTo(1);
+        assertThat(appointmentRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void should_restore_schedules_from_snapshot_and_logged_changes() throws Exception {
+        Path snapshot = snapshotDirectory.resolve("schedule.snapshot");
+        BookingPipeline before = pipeline(snapshot);
+        before.start();
+        Appointment removed = before.book(appointment("Oncology", NINE, 30)).getAppointment();
+        assertThat(before.book(appointment("Radiology", NINE.plusHours(1), 30)).isAccepted()).isTrue();
+        before.stop();
+
+        // Changes after the snapshot was taken, logged by another instance
+        bookingPipeline.delete(removed);
+        assertThat(bookingPipeline.book(appointment("Radiology", NINE.plusHours(2), 30)).isAccepted()).isTrue();
+        // Unlogged, so only visible if the restarted pipeline read the table
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Appointment unlogged = appointment("Radiology", NINE.plusHours(3), 30);
+            unlogged.setRoom(roomRepository.findByRoomName("Radiology").get());
+            appointmentRepository.save(unlogged);
+        });
+
+        BookingPipeline after = pipeline(snapshot);
+        after.start();
+        try {
+            assertThat(after.loadedSchedule("Radiology")).hasValueSatisfying(schedule ->
+                    assertThat(schedule.getAppointments()).extracting(AppointmentReference::getStartsAt)
+                            .containsExactly(NINE.plusHours(1), NINE.plusHours(2)));
+            assertThat(after.loadedSchedule("Oncology")).hasValueSatisfying(schedule ->
+                    assertThat(schedule.size()).isZero());
+        } finally {
+            after.stop();
+        }
+    }
+
+    @Test
+    void should_load_from_the_database_when_the_snapshot_is_older_than_the_log() throws Exception {
+        Path snapshot = snapshotDirectory.resolve("schedule.snapshot");
+        BookingPipeline before = pipeline(snapshot, Duration.ofSeconds(10), Duration.ofMillis(1));
+        before.start();
+        assertThat(before.book(appointment("Radiology", NINE, 30)).isAccepted()).isTrue();
+        before.stop();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Appointment unlogged = appointment("Radiology", NINE.plusHours(1), 30);
+            unlogged.setRoom(roomRepository.findByRoomName("Radiology").get());
+            appointmentRepository.save(unlogged);
+        });
+
+        BookingPipeline after = pipeline(snapshot, Duration.ofSeconds(10), Duration.ofMillis(1));
+        after.start();
+        try {
+            assertThat(after.loadedSchedule("Radiology")).isEmpty();
+            assertThat(after.schedule("Radiology").getAppointments()).extracting(AppointmentReference::getStartsAt)
+                    .containsExactly(NINE, NINE.plusHours(1));
+        } finally {
+            after.stop();
+        }
+    }
+
+    private BookingPipeline pipeline(Path snapshot){
+        return pipeline(snapshot, Duration.ofSeconds(10), Duration.ofDays(1));
+    }
+
+    private BookingPipeline pipeline(Path snapshot, Duration timeout, Duration logRetention){
+        return new BookingPipeline(appointmentRepository, roomRepository, scheduleChangeRepository, appointmentBooking,
+                roomLocks, transactionManager, 2, 64, timeout, snapshot.toString(), Duration.ZERO, Duration.ofMinutes(1),
+                logRetention);
+    }
+}
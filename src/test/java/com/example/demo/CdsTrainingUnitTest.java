@@ -0,0 +1,47 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import com.example.demo.cds.CdsTraining;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PatientRepository;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+        "management.endpoints.web.exposure.include=health,admission",
+        "management.endpoint.health.probes.enabled=true"})
+class CdsTrainingUnitTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Test
+    void should_call_every_endpoint_successfully_and_leave_no_data() throws InterruptedException {
+        String server = "http://localhost:" + port;
+        CdsTraining cdsTraining = new CdsTraining(server, server);
+
+        assertThat(cdsTraining.awaitReadiness(TimeUnit.SECONDS.toNanos(30))).isTrue();
+        assertThat(cdsTraining.train()).isEmpty();
+
+        assertThat(appointmentRepository.count()).isZero();
+        assertThat(doctorRepository.count()).isZero();
+        assertThat(patientRepository.count()).isZero();
+    }
+}
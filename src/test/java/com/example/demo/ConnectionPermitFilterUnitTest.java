@@ -0,0 +1,109 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.example.demo.execution.ConnectionPermitFilter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ConnectionPermitFilterUnitTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void should_refuse_a_request_with_retry_after_once_every_permit_is_held() throws Exception {
+        ConnectionPermitFilter filter = new ConnectionPermitFilter(1, TimeUnit.MILLISECONDS.toNanos(50), registry);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> slow = executor.submit(() -> {
+                filter.doFilter(new MockHttpServletRequest("GET", "/api/rooms"), new MockHttpServletResponse(),
+                        (request, response) -> {
+                            holding.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e){
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+                return null;
+            });
+            holding.await();
+
+            MockHttpServletResponse refused = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("GET", "/api/rooms"), refused, new MockFilterChain());
+            assertThat(refused.getStatus()).isEqualTo(503);
+            assertThat(refused.getHeader("Retry-After")).isEqualTo("1");
+            assertThat(registry.get("execution.permit.timeouts").counter().count()).isEqualTo(1);
+            assertThat(registry.get("execution.permits.available").gauge().value()).isZero();
+
+            release.countDown();
+            slow.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        MockHttpServletResponse served = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/rooms"), served, chain);
+        assertThat(served.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(registry.get("execution.permits.available").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void should_release_the_permit_when_the_request_fails(){
+        ConnectionPermitFilter filter = new ConnectionPermitFilter(1, 0, registry);
+
+        try {
+            filter.doFilter(new MockHttpServletRequest("GET", "/api/rooms"), new MockHttpServletResponse(),
+                    (request, response) -> {
+                        throw new IllegalStateException("boom");
+                    });
+        } catch (Exception expected){
+            assertThat(expected).hasMessage("boom");
+        }
+
+        assertThat(registry.get("execution.permits.available").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void should_hold_the_permit_until_an_async_request_completes() throws Exception {
+        ConnectionPermitFilter filter = new ConnectionPermitFilter(1, 0, registry);
+        MockHttpServletRequest streaming = new MockHttpServletRequest("GET", "/api/appointments/export");
+        streaming.setAsyncSupported(true);
+
+        filter.doFilter(streaming, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        assertThat(registry.get("execution.permits.available").gauge().value()).isZero();
+
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/rooms"), refused, new MockFilterChain());
+        assertThat(refused.getStatus()).isEqualTo(503);
+
+        streaming.getAsyncContext().complete();
+        assertThat(registry.get("execution.permits.available").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void should_not_take_a_permit_for_reactive_requests() throws Exception {
+        ConnectionPermitFilter filter = new ConnectionPermitFilter(1, 0, registry);
+        MockHttpServletRequest poll = new MockHttpServletRequest("GET", "/api/reactive/rooms/Oncology/appointments");
+        poll.setAsyncSupported(true);
+
+        filter.doFilter(poll, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+        assertThat(registry.get("execution.permits.available").gauge().value()).isEqualTo(1);
+    }
+}
@@ -2,16 +2,27 @@ package com.example.demo;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
 
 import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PersonSpecifications;
 import com.example.demo.entities.Doctor;
 
 
@@ -25,6 +36,9 @@ class DoctorJpaUnitTest {
     @Autowired
     DoctorRepository repository;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
     @Test
     void should_find_no_doctors_if_repository_is_empty(){
         Iterable<Doctor> doctors = repository.findAll();
@@ -102,5 +116,65 @@ class DoctorJpaUnitTest {
         repository.deleteAll();
         assertThat(repository.findAll()).isEmpty();
     }
-    
+
+    @Test
+    void should_search_doctors_by_name_prefix_email_and_age(){
+        Doctor a = new Doctor("Juan","Carlos", 34, "j.carlos@hospital.accwe");
+        Doctor b = new Doctor("Carla","Andrea", 59, "c.andrea@hospital.accwe");
+        Doctor c = new Doctor("Clarisa","Julia", 29, "c.julia@hospital.accwe");
+        Doctor d = new Doctor("Pedro","Carmona", 71, "p.carmona@hospital.accwe");
+
+        entityManager.persist(a);
+        entityManager.persist(b);
+        entityManager.persist(c);
+        entityManager.persist(d);
+
+        PageRequest byName = PageRequest.of(0, 10, Sort.by("lastName", "firstName", "id"));
+
+        assertThat(repository.findAll(PersonSpecifications.<Doctor>matching("Car", null, null, null), byName))
+                .containsExactly(b, a, d);
+        assertThat(repository.findAll(PersonSpecifications.<Doctor>matching("Car", null, 30, 60), byName))
+                .containsExactly(b, a);
+        assertThat(repository.findAll(PersonSpecifications.<Doctor>matching(null, "c.julia@hospital.accwe", null, null), byName))
+                .containsExactly(c);
+        assertThat(repository.findAll(PersonSpecifications.<Doctor>matching("100%", null, null, null), byName))
+                .isEmpty();
+        assertThat(PersonSpecifications.<Doctor>matching(" ", null, null, null)).isNull();
+    }
+
+    @Test
+    void should_page_doctors_search_results(){
+        for (int i = 0; i < 5; i++){
+            entityManager.persist(new Doctor("Juan" + i, "Carlos", 30 + i, "j.carlos" + i + "@hospital.accwe"));
+        }
+
+        Page<Doctor> page = repository.findAll(PersonSpecifications.<Doctor>matching(null, null, 31, null),
+                PageRequest.of(1, 3, Sort.by("age")));
+
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(page.getContent()).extracting(Doctor::getAge).containsExactly(34);
+    }
+
+    @Test
+    void should_write_only_changed_columns_and_refuse_a_stale_version(){
+        long id = entityManager.persistAndGetId(new Doctor("Juan","Carlos", 34, "j.carlos@hospital.accwe"), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+        Doctor stale = entityManager.find(Doctor.class, id);
+        entityManager.detach(stale);
+
+        Doctor current = entityManager.find(Doctor.class, id);
+        current.setEmail("juan.carlos@hospital.accwe");
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(repository.findById(id).get().getVersion()).isEqualTo(stale.getVersion() + 1);
+        stale.setAge(35);
+        assertThatThrownBy(() -> repository.save(stale)).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        EntityPersister persister = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getMetamodel()
+                .entityPersister(Doctor.class);
+        assertThat(persister.getEntityMetamodel().isDynamicUpdate()).isTrue();
+        assertThat(persister.isVersioned()).isTrue();
+    }
 }
@@ -10,23 +10,39 @@ import com.example.demo.entities.Room;
 import com.example.demo.repositories.DoctorRepository;
 import com.example.demo.repositories.PatientRepository;
 import com.example.demo.repositories.RoomRepository;
+import com.example.demo.search.PatientNameIndex;
+import com.example.demo.search.TrigramIndex;
+import com.example.demo.services.ImportReport;
+import com.example.demo.services.PersonImporter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -43,6 +59,9 @@ class DoctorControllerUnitTest {
     @MockBean
     private DoctorRepository doctorRepository;
 
+    @MockBean
+    private PersonImporter personImporter;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -147,6 +166,119 @@ class DoctorControllerUnitTest {
         mockMvc.perform(get("/api/doctors/{id}", invalidDoctorId))
                 .andExpect(status().isNotFound());
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSearchDoctorsByNamePrefixWithPagination() throws Exception {
+        List<Doctor> doctors = Collections.singletonList(new Doctor("John", "Doe", 30, "john.doe@hospital.com"));
+        when(doctorRepository.findAll(any(Specification.class), any(Pageable.class)))
+                .thenAnswer(invocation -> new PageImpl<>(doctors, invocation.getArgument(1), 41));
+
+        mockMvc.perform(get("/api/doctors/search").param("name", "Do").param("page", "2").param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].lastName").value("Doe"))
+                .andExpect(jsonPath("$.totalElements").value(41))
+                .andExpect(jsonPath("$.number").value(2));
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(doctorRepository).findAll(any(Specification.class), pageable.capture());
+        assertThat(pageable.getValue()).isEqualTo(PageRequest.of(2, 20, Sort.by("lastName", "firstName", "id")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReturnEmptyPageWhenSearchFindsNoDoctors() throws Exception {
+        when(doctorRepository.findAll(any(Specification.class), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(Collections.emptyList()));
+
+        mockMvc.perform(get("/api/doctors/search").param("email", "nobody@hospital.accwe"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(0)))
+                .andExpect(jsonPath("$.totalElements").value(0));
+    }
+
+    @Test
+    void shouldRejectSearchSortedByUnknownPropertyForDoctors() throws Exception {
+        mockMvc.perform(get("/api/doctors/search").param("name", "Do").param("sort", "password,desc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectSearchWithoutCriteriaForDoctors() throws Exception {
+        mockMvc.perform(get("/api/doctors/search"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldImportDoctorsFromCsv() throws Exception {
+        when(personImporter.importPeople(any(), any(), any())).thenReturn(new ImportReport());
+
+        mockMvc.perform(post("/api/doctors/import")
+                        .contentType("text/csv")
+                        .content("firstName,lastName,age,email\nJohn,Doe,30,john.doe@hospital.com\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").isNumber())
+                .andExpect(jsonPath("$.errors").isArray());
+
+        verify(personImporter, times(1)).importPeople(any(), any(), any());
+    }
+
+    @Test
+    void shouldRejectUnsupportedDoctorImportFormat() throws Exception {
+        mockMvc.perform(post("/api/doctors/import")
+                        .contentType("application/xml")
+                        .content("<doctors/>"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    void shouldPatchOnlyTheFieldsSentForADoctor() throws Exception {
+        long doctorId = 1L;
+        when(doctorRepository.findById(doctorId)).thenReturn(Optional.of(new Doctor("John", "Doe",
+                30, "john.doe@hospital.com")));
+        when(doctorRepository.save(any(Doctor.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        mockMvc.perform(patch("/api/doctors/{id}", doctorId)
+                        .header("If-Match", "\"0\"")
+                        .contentType("application/json")
+                        .content("{\"email\":\"j.doe@hospital.com\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(jsonPath("$.firstName").value("John"))
+                .andExpect(jsonPath("$.email").value("j.doe@hospital.com"))
+                .andExpect(jsonPath("$.version").doesNotExist());
+
+        ArgumentCaptor<Doctor> saved = ArgumentCaptor.forClass(Doctor.class);
+        verify(doctorRepository).save(saved.capture());
+        assertThat(saved.getValue().getLastName()).isEqualTo("Doe");
+        assertThat(saved.getValue().getAge()).isEqualTo(30);
+    }
+
+    @Test
+    void shouldNotPatchADoctorWithoutTheCurrentVersion() throws Exception {
+        long doctorId = 1L;
+        when(doctorRepository.findById(doctorId)).thenReturn(Optional.of(new Doctor("John", "Doe",
+                30, "john.doe@hospital.com")));
+        String patch = "{\"age\":31}";
+
+        mockMvc.perform(patch("/api/doctors/{id}", doctorId).contentType("application/json").content(patch))
+                .andExpect(status().isPreconditionRequired());
+        mockMvc.perform(patch("/api/doctors/{id}", doctorId).header("If-Match", "\"7\"")
+                        .contentType("application/json").content(patch))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().string("ETag", "\"0\""));
+        mockMvc.perform(patch("/api/doctors/{id}", doctorId).header("If-Match", "*")
+                        .contentType("application/json").content("{\"id\":2}"))
+                .andExpect(status().isBadRequest());
+        verify(doctorRepository, never()).save(any(Doctor.class));
+
+        when(doctorRepository.save(any(Doctor.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Doctor.class, doctorId));
+        mockMvc.perform(patch("/api/doctors/{id}", doctorId).header("If-Match", "\"0\"")
+                        .contentType("application/json").content(patch))
+                .andExpect(status().isPreconditionFailed());
+    }
 }
 
 
@@ -156,6 +288,12 @@ class PatientControllerUnitTest {
     @MockBean
     private PatientRepository patientRepository;
 
+    @MockBean
+    private PersonImporter personImporter;
+
+    @MockBean
+    private PatientNameIndex patientNameIndex;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -261,6 +399,124 @@ class PatientControllerUnitTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSearchPatientsByNamePrefixWithPagination() throws Exception {
+        List<Patient> patients = Collections.singletonList(new Patient("Jane", "Roe", 40, "jane.roe@email.com"));
+        when(patientRepository.findAll(any(Specification.class), any(Pageable.class)))
+                .thenAnswer(invocation -> new PageImpl<>(patients, invocation.getArgument(1), 41));
+
+        mockMvc.perform(get("/api/patients/search").param("name", "Ro").param("page", "2").param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].lastName").value("Roe"))
+                .andExpect(jsonPath("$.totalElements").value(41))
+                .andExpect(jsonPath("$.number").value(2));
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(patientRepository).findAll(any(Specification.class), pageable.capture());
+        assertThat(pageable.getValue()).isEqualTo(PageRequest.of(2, 20, Sort.by("lastName", "firstName", "id")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReturnEmptyPageWhenSearchFindsNoPatients() throws Exception {
+        when(patientRepository.findAll(any(Specification.class), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(Collections.emptyList()));
+
+        mockMvc.perform(get("/api/patients/search").param("email", "nobody@hospital.accwe"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(0)))
+                .andExpect(jsonPath("$.totalElements").value(0));
+    }
+
+    @Test
+    void shouldRejectSearchSortedByUnknownPropertyForPatients() throws Exception {
+        mockMvc.perform(get("/api/patients/search").param("name", "Do").param("sort", "password,desc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectSearchWithoutCriteriaForPatients() throws Exception {
+        mockMvc.perform(get("/api/patients/search"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldLookUpPatientsInRankOrder() throws Exception {
+        Patient olaya = new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com");
+        olaya.setId(1);
+        Patient olalla = new Patient("Jose", "Olalla", 52, "j.olalla@email.com");
+        olalla.setId(3);
+        TrigramIndex index = new TrigramIndex();
+        index.put(1, "Jose Luis Olaya");
+        index.put(3, "Jose Olalla");
+
+        when(patientNameIndex.search(eq("jose olaya"), eq(10))).thenReturn(index.search("jose olaya", 10, 0.3f));
+        when(patientRepository.findAllById(any())).thenReturn(Arrays.asList(olalla, olaya));
+
+        mockMvc.perform(get("/api/patients/lookup").param("q", "jose olaya"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].lastName").value("Olaya"))
+                .andExpect(jsonPath("$[1].lastName").value("Olalla"));
+    }
+
+    @Test
+    void shouldReturnNoContentWhenLookupMatchesNoPatient() throws Exception {
+        when(patientNameIndex.search(any(), Mockito.anyInt())).thenReturn(new TrigramIndex().search("nobody", 10, 0.3f));
+
+        mockMvc.perform(get("/api/patients/lookup").param("q", "nobody"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void shouldImportPatientsFromCsv() throws Exception {
+        when(personImporter.importPeople(any(), any(), any())).thenReturn(new ImportReport());
+
+        mockMvc.perform(post("/api/patients/import")
+                        .contentType("text/csv")
+                        .content("firstName,lastName,age,email\nJohn,Doe,30,john.doe@hospital.com\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").isNumber())
+                .andExpect(jsonPath("$.errors").isArray());
+
+        verify(personImporter, times(1)).importPeople(any(), any(), any());
+    }
+
+    @Test
+    void shouldRejectUnsupportedPatientImportFormat() throws Exception {
+        mockMvc.perform(post("/api/patients/import")
+                        .contentType("application/xml")
+                        .content("<patients/>"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    void shouldPatchAPatientAtTheVersionItWasRead() throws Exception {
+        long patientId = 1L;
+        when(patientRepository.findById(patientId)).thenReturn(Optional.of(new Patient("Jane", "Smith",
+                20, "jane.smith@hospital.com")));
+        when(patientRepository.save(any(Patient.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        mockMvc.perform(get("/api/patients/{id}", patientId))
+                .andExpect(header().string("ETag", "\"0\""));
+        mockMvc.perform(patch("/api/patients/{id}", patientId)
+                        .header("If-Match", "W/\"0\"")
+                        .contentType("application/json")
+                        .content("{\"lastName\":\"Jones\"}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(patch("/api/patients/{id}", patientId)
+                        .header("If-Match", "\"3\", \"0\"")
+                        .contentType("application/json")
+                        .content("{\"lastName\":\"Jones\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.firstName").value("Jane"))
+                .andExpect(jsonPath("$.lastName").value("Jones"));
+
+        verify(patientRepository, times(1)).save(any(Patient.class));
+    }
+
 }
 
 @WebMvcTest(RoomController.class)
@@ -303,6 +559,23 @@ class RoomControllerUnitTest {
                 .andExpect(jsonPath("$.roomName").isString());
     }
 
+    @Test
+    void shouldReuseExistingRoomWithTheSameName() throws Exception {
+
+        Room existing = new Room("psychiatry");
+        existing.setId(7);
+        when(roomRepository.findByRoomName("psychiatry")).thenReturn(Optional.of(existing));
+
+        mockMvc.perform(post("/api/room")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(new Room("psychiatry"))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(7))
+                .andExpect(jsonPath("$.roomName").value("psychiatry"));
+
+        verify(roomRepository, never()).save(any());
+    }
+
     @Test
     void shouldReturnNotFoundWhenDeletingNonexistentRoom() throws Exception {
         String roomName = "orthopedic";
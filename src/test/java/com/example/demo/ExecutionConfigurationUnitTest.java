@@ -0,0 +1,100 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+
+import com.example.demo.execution.ExecutionConfiguration;
+import com.example.demo.execution.RequestExecutorCustomizer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ExecutionConfigurationUnitTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+            .withUserConfiguration(ExecutionConfiguration.class)
+            .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+            .withPropertyValues("spring.datasource.url=jdbc:h2:mem:execution",
+                    "spring.datasource.hikari.maximum-pool-size=7");
+
+    @Test
+    void should_leave_tomcat_alone_in_platform_mode(){
+        runner.run(context -> {
+            assertThat(context).doesNotHaveBean(RequestExecutorCustomizer.class);
+            assertThat(context).doesNotHaveBean(FilterRegistrationBean.class);
+        });
+    }
+
+    @Test
+    void should_bound_the_elastic_executor_and_size_permits_from_the_pool(){
+        runner.withPropertyValues("execution.mode=elastic", "execution.elastic-max-threads=16").run(context -> {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) context.getBean(RequestExecutorCustomizer.class).getExecutor();
+            assertThat(executor.getMaximumPoolSize()).isEqualTo(16);
+            assertThat(executor.getPoolSize()).isZero();
+
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 3; i++){
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertThat(executor.getPoolSize()).isEqualTo(3);
+            release.countDown();
+
+            assertThat(context).doesNotHaveBean(ExecutorService.class);
+            assertThat(context.getBean(MeterRegistry.class).get("execution.permits.available").gauge().value())
+                    .isEqualTo(7);
+        });
+    }
+
+    @Test
+    void should_fall_back_to_the_pool_default_when_its_size_is_not_set(){
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+                .withUserConfiguration(ExecutionConfiguration.class)
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withPropertyValues("spring.datasource.url=jdbc:h2:mem:execution-default", "execution.mode=elastic")
+                .run(context -> assertThat(context.getBean(MeterRegistry.class)
+                        .get("execution.permits.available").gauge().value()).isEqualTo(10));
+    }
+
+    @Test
+    void should_run_requests_on_virtual_threads_when_the_jdk_has_them(){
+        runner.withPropertyValues("execution.mode=virtual").run(context -> {
+            ExecutorService executor = context.getBean(RequestExecutorCustomizer.class).getExecutor();
+            boolean virtual = executor.submit(ExecutionConfigurationUnitTest::isVirtual).get();
+            assertThat(virtual).isEqualTo(hasVirtualThreads());
+        });
+    }
+
+    private static boolean hasVirtualThreads(){
+        try {
+            Thread.class.getMethod("isVirtual");
+            return true;
+        } catch (NoSuchMethodException e){
+            return false;
+        }
+    }
+
+    private static boolean isVirtual(){
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        } catch (ReflectiveOperationException e){
+            return false;
+        }
+    }
+}
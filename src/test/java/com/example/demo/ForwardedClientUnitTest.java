@@ -0,0 +1,50 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Requests reach a real port through a pretend load balancer on loopback,
+ * which Tomcat trusts to report the caller in X-Forwarded-For.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+        "server.forward-headers-strategy=native",
+        "admission.read-rate=0.01",
+        "admission.read-burst=1"
+})
+class ForwardedClientUnitTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    void should_give_each_forwarded_client_its_own_admission_budget(){
+        assertThat(get("/api/rooms", "203.0.113.7").getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(get("/api/rooms", "203.0.113.7").getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        // Same balancer, another caller
+        assertThat(get("/api/rooms", "198.51.100.4").getStatusCode().is2xxSuccessful()).isTrue();
+    }
+
+    @Test
+    void should_answer_actuator_requests_from_internal_addresses_only(){
+        assertThat(get("/actuator/health", "10.1.2.3").getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(get("/actuator/admission", "203.0.113.9").getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    private ResponseEntity<String> get(String path, String forwardedFor){
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Forwarded-For", forwardedFor);
+        return rest.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
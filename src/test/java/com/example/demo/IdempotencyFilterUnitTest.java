@@ -0,0 +1,138 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.entities.Doctor;
+import com.example.demo.idempotency.IdempotencyFilter;
+import com.example.demo.idempotency.IdempotencyStore;
+import com.example.demo.repositories.DoctorRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class IdempotencyFilterUnitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @SpyBean
+    private IdempotencyStore store;
+
+    @AfterEach
+    void tearDown(){
+        doctorRepository.deleteAll();
+        for (String client : new String[]{"127.0.0.1", "10.0.0.7"}){
+            for (String key : new String[]{"retry-1", "retry-2", "retry-3", "shared"}){
+                store.release(client + " POST /api/doctor " + key);
+            }
+        }
+    }
+
+    @Test
+    void shouldReplayResponseForRetriedPost() throws Exception {
+        String body = objectMapper.writeValueAsString(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+
+        String first = mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+
+        String retried = mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyFilter.IDEMPOTENT_REPLAYED, "true"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(retried).isEqualTo(first);
+        assertThat(doctorRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectKeyReusedForDifferentBody() throws Exception {
+        mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "retry-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"))))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "retry-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new Doctor("Miren", "Iniesta", 24, "m.iniesta@hospital.accwe"))))
+                .andExpect(status().isUnprocessableEntity());
+
+        assertThat(doctorRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotDeduplicatePostsWithoutKey() throws Exception {
+        String body = objectMapper.writeValueAsString(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+
+        for (int i = 0; i < 2; i++){
+            mockMvc.perform(post("/api/doctor").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isCreated())
+                    .andExpect(header().doesNotExist(IdempotencyFilter.IDEMPOTENT_REPLAYED));
+        }
+
+        assertThat(doctorRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldScopeKeysToTheClient() throws Exception {
+        String body = objectMapper.writeValueAsString(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+
+        mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "shared")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "shared")
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.7");
+                            return request;
+                        })
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.IDEMPOTENT_REPLAYED));
+
+        assertThat(doctorRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotRunRequestAgainWhenItsResponseCouldNotBeStored() throws Exception {
+        doThrow(new DataAccessResourceFailureException("connection lost"))
+                .when(store).complete(anyString(), anyString(), anyInt(), any(), any());
+        String body = objectMapper.writeValueAsString(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+
+        mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "retry-3")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated());
+
+        // The claim is kept, so the retry waits for it rather than creating a second doctor
+        mockMvc.perform(post("/api/doctor").header(IdempotencyFilter.IDEMPOTENCY_KEY, "retry-3")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isConflict());
+
+        assertThat(doctorRepository.count()).isEqualTo(1);
+    }
+}
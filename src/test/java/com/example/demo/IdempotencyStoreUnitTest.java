@@ -0,0 +1,131 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entities.IdempotencyRecord;
+import com.example.demo.idempotency.IdempotencyStore;
+
+// Claims must commit on their own, as they do behind the filter.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(IdempotencyStore.class)
+@TestPropertySource(properties = {"idempotency.cache-size=2", "idempotency.ttl=1h",
+        "idempotency.claim-lease=1m"})
+class IdempotencyStoreUnitTest {
+
+    @Autowired
+    private IdempotencyStore store;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @AfterEach
+    void tearDown(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                entityManager.createQuery("delete from IdempotencyRecord").executeUpdate());
+    }
+
+    @Test
+    void should_let_only_one_request_claim_a_key(){
+        assertThat(store.claim("POST /api/doctor a")).isTrue();
+        assertThat(store.claim("POST /api/doctor a")).isFalse();
+
+        IdempotencyRecord claimed = store.find("POST /api/doctor a");
+        assertThat(claimed).isNotNull();
+        assertThat(claimed.isCompleted()).isFalse();
+
+        store.release("POST /api/doctor a");
+        assertThat(store.find("POST /api/doctor a")).isNull();
+        assertThat(store.claim("POST /api/doctor a")).isTrue();
+    }
+
+    @Test
+    void should_find_completed_responses_beyond_the_memory_bound(){
+        for (String key : new String[]{"a", "b", "c"}){
+            store.claim(key);
+            store.complete(key, "hash-" + key, 201, "application/json", key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // "a" was evicted from memory and comes back from the table
+        IdempotencyRecord record = store.find("a");
+        assertThat(record.getStatus()).isEqualTo(201);
+        assertThat(record.getRequestHash()).isEqualTo("hash-a");
+        assertThat(new String(record.getBody(), StandardCharsets.UTF_8)).isEqualTo("a");
+    }
+
+    @Test
+    void should_forget_and_purge_expired_records(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            entityManager.persist(new IdempotencyRecord("old", LocalDateTime.now().minusHours(2), 201, "h", null, null));
+            entityManager.persist(new IdempotencyRecord("older", LocalDateTime.now().minusHours(3), 201, "h", null, null));
+        });
+
+        assertThat(store.find("old")).isNull();
+        assertThat(store.claim("old")).isTrue();
+        assertThat(store.purgeExpired()).isEqualTo(1);
+    }
+
+    @Test
+    void should_free_a_key_whose_claim_outlived_its_lease(){
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            entityManager.persist(new IdempotencyRecord("lost", LocalDateTime.now().minusMinutes(2)));
+            entityManager.persist(new IdempotencyRecord("abandoned", LocalDateTime.now().minusMinutes(3)));
+            entityManager.persist(new IdempotencyRecord("running", LocalDateTime.now()));
+        });
+
+        assertThat(store.find("lost")).isNull();
+        assertThat(store.claim("lost")).isTrue();
+        assertThat(store.claim("running")).isFalse();
+        assertThat(store.purgeExpired()).isEqualTo(1);
+        assertThat(store.find("running")).isNotNull();
+    }
+
+    @Test
+    void should_throw_when_a_claim_fails_for_another_reason(){
+        String tooLong = String.join("", Collections.nCopies(300, "k"));
+
+        assertThatThrownBy(() -> store.claim(tooLong)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void should_keep_the_claim_and_replay_from_memory_when_storing_a_response_fails(){
+        String tooLong = String.join("", Collections.nCopies(300, "t"));
+        store.claim("stored-nowhere");
+
+        assertThatThrownBy(() -> store.complete("stored-nowhere", "hash", 201, tooLong, new byte[]{1}))
+                .isInstanceOf(RuntimeException.class);
+
+        IdempotencyRecord record = store.find("stored-nowhere");
+        assertThat(record.isCompleted()).isTrue();
+        assertThat(record.getStatus()).isEqualTo(201);
+        assertThat(store.claim("stored-nowhere")).isFalse();
+        IdempotencyRecord stored = new TransactionTemplate(transactionManager).execute(status ->
+                entityManager.find(IdempotencyRecord.class, "stored-nowhere"));
+        assertThat(stored.isCompleted()).isFalse();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Invalidation;
+import com.example.demo.entities.Invalidation.Target;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+import com.example.demo.invalidation.InvalidationBus;
+import com.example.demo.invalidation.InvalidationProperties;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.InvalidationRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.search.PatientNameIndex;
+import com.example.demo.services.AppointmentReference;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The application's bus against a second one standing in for another
+ * instance on the same database. Neither polls on its own; the tests call
+ * flush and poll.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.NONE, properties = {
+        "spring.datasource.url=jdbc:h2:mem:invalidation;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "invalidation.interval=1h",
+        "invalidation.gap-timeout=1h"
+})
+class InvalidationBusUnitTest {
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private InvalidationRepository invalidationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private PatientNameIndex patientNameIndex;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    private final List<Invalidation> doctors = new CopyOnWriteArrayList<>();
+    private InvalidationBus elsewhere;
+
+    @BeforeEach
+    void setUp(){
+        elsewhere = otherInstance(new InvalidationProperties());
+        invalidationBus.flush();
+        invalidationBus.poll();
+        elsewhere.poll();
+        doctors.clear();
+    }
+
+    @Test
+    void should_forget_a_room_schedule_booked_on_another_instance() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        Room room = roomRepository.save(new Room("Dermatology"));
+        LocalDateTime nine = LocalDateTime.of(2030, 4, 24, 9, 0);
+        bookingPipeline.book(new AppointmentReference(patient.getId(), doctor.getId(), "Dermatology",
+                nine, nine.plusMinutes(30)));
+        assertThat(bookingPipeline.schedule("Dermatology").size()).isEqualTo(1);
+
+        jdbc.update("insert into appointment (id, starts_at, finishes_at, doctor_id, patient_id, room_id)"
+                + " values (900000, ?, ?, ?, ?, ?)", nine.plusHours(1), nine.plusMinutes(90),
+                doctor.getId(), patient.getId(), room.getId());
+        elsewhere.publish(Target.APPOINTMENT, 900000, "Dermatology");
+        elsewhere.flush();
+        assertThat(bookingPipeline.schedule("Dermatology").size()).isEqualTo(1);
+
+        // The room is forgotten on its writer's thread
+        CountDownLatch forgotten = new CountDownLatch(1);
+        bookingPipeline.addScheduleListener(roomName -> forgotten.countDown());
+        invalidationBus.poll();
+        assertThat(forgotten.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(bookingPipeline.schedule("Dermatology").size()).isEqualTo(2);
+        assertThat(registry.get("invalidation.delay").timer().count()).isPositive();
+    }
+
+    @Test
+    void should_index_again_patients_changed_on_another_instance(){
+        jdbc.update("insert into patient (id, age, email, first_name, last_name)"
+                + " values (900001, 41, 'r.varo@email.com', 'Remedios', 'Varo')");
+        elsewhere.publish(Target.PATIENT, 900001, null);
+        elsewhere.flush();
+        invalidationBus.poll();
+        assertThat(patientNameIndex.search("Remedios Varo", 5).ids).containsExactly(900001L);
+
+        jdbc.update("delete from patient where id = 900001");
+        elsewhere.publish(Target.PATIENT, 900001, null);
+        elsewhere.flush();
+        invalidationBus.poll();
+        assertThat(patientNameIndex.search("Remedios Varo", 5).ids).isEmpty();
+    }
+
+    @Test
+    void should_publish_committed_writes_to_the_other_instances_only(){
+        elsewhere.subscribe(Target.DOCTOR, doctors::addAll);
+        invalidationBus.subscribe(Target.DOCTOR, doctors::addAll);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            doctorRepository.save(new Doctor("Rolled", "Back", 50, "rolled.back@hospital.accwe"));
+            status.setRollbackOnly();
+        });
+        assertThat(registry.get("invalidation.queue.depth").gauge().value()).isZero();
+
+        Doctor doctor = transaction.execute(status ->
+                doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe")));
+        assertThat(registry.get("invalidation.queue.depth").gauge().value()).isEqualTo(1);
+
+        invalidationBus.flush();
+        invalidationBus.poll();
+        assertThat(doctors).isEmpty();
+        elsewhere.poll();
+        assertThat(doctors).extracting(Invalidation::getEntityId).containsExactly(doctor.getId());
+    }
+
+    @Test
+    void should_wait_at_a_gap_for_an_invalidation_committed_late(){
+        invalidationBus.subscribe(Target.DOCTOR, doctors::addAll);
+        long last = invalidationRepository.findMaxId();
+
+        insert(last + 2, 7);
+        invalidationBus.poll();
+        insert(last + 1, 8);
+        invalidationBus.poll();
+        invalidationBus.poll();
+
+        assertThat(doctors).extracting(Invalidation::getEntityId).containsExactly(7L, 8L);
+    }
+
+    @Test
+    void should_invalidate_everything_when_the_queue_overflows(){
+        InvalidationProperties small = new InvalidationProperties();
+        small.setQueueCapacity(2);
+        InvalidationBus busy = otherInstance(small);
+        invalidationBus.subscribe(Target.DOCTOR, doctors::addAll);
+
+        for (long id = 1; id <= 3; id++){
+            busy.publish(Target.DOCTOR, id, null);
+        }
+        busy.flush();
+        invalidationBus.poll();
+
+        assertThat(doctors).hasSize(1);
+        assertThat(doctors.get(0).isAll()).isTrue();
+    }
+
+    private InvalidationBus otherInstance(InvalidationProperties properties){
+        return new InvalidationBus(invalidationRepository, transactionManager, properties, new SimpleMeterRegistry());
+    }
+
+    private void insert(long id, long doctorId){
+        jdbc.update("insert into invalidation (id, entity, entity_id, origin, recorded_at)"
+                + " values (?, 'DOCTOR', ?, 'elsewhere', ?)", id, doctorId, LocalDateTime.now());
+    }
+}
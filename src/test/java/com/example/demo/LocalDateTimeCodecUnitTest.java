@@ -0,0 +1,86 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.demo.entities.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+
+class LocalDateTimeCodecUnitTest {
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+
+    private final ObjectMapper fast = mapper(true);
+
+    private final ObjectMapper formatterBased = mapper(false);
+
+    @Test
+    void shouldWriteSameBytesAsDateTimeFormatter() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++){
+            LocalDateTime value = LocalDateTime.of(1 + random.nextInt(9999), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+
+            assertThat(fast.writeValueAsBytes(value)).isEqualTo(formatterBased.writeValueAsBytes(value));
+            assertThat(fast.writeValueAsString(value)).isEqualTo("\"" + formatter.format(value) + "\"");
+        }
+    }
+
+    @Test
+    void shouldWriteSameAppointmentJson() throws Exception {
+        Appointment appointment = new Appointment(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"),
+                new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"), new Room("Dermatology"),
+                LocalDateTime.parse("09:05 04/02/2023", formatter), LocalDateTime.parse("10:00 04/02/2023", formatter));
+
+        assertThat(fast.writeValueAsString(appointment)).isEqualTo(formatterBased.writeValueAsString(appointment))
+                .contains("\"startsAt\":\"09:05 04/02/2023\"");
+    }
+
+    @Test
+    void shouldWriteYearsBeyondFourDigitsLikeDateTimeFormatter() throws Exception {
+        LocalDateTime value = LocalDateTime.of(12023, 4, 24, 19, 30);
+
+        assertThat(fast.writeValueAsString(value)).isEqualTo(formatterBased.writeValueAsString(value));
+    }
+
+    @Test
+    void shouldReadLikeDateTimeFormatter() throws Exception {
+        String[] inputs = {
+                "19:30 24/04/2023", "00:00 01/01/0001", "23:59 31/12/9999", "12:00 29/02/2024",
+                "12:00 29/02/2023", "12:00 31/04/2023", "24:00 24/04/2023", "19:60 24/04/2023",
+                "19:30 24/13/2023", "19:30 00/04/2023", "19:30 24/04/0000", "1930 24/04/2023",
+                "19:30 24-04-2023", "19:3a 24/04/2023", " 19:30 24/04/2023", ""
+        };
+        for (String input : inputs){
+            String json = "\"" + input + "\"";
+            assertThat(read(fast, json)).as(input).isEqualTo(read(formatterBased, json));
+        }
+    }
+
+    private static Object read(ObjectMapper mapper, String json){
+        try {
+            return mapper.readValue(json, LocalDateTime.class);
+        } catch (Exception e){
+            return e.getClass();
+        }
+    }
+
+    private static ObjectMapper mapper(boolean fastCodec){
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        new JacksonConfiguration().jackson2ObjectMapperBuilderCustomizer().customize(builder);
+        if (!fastCodec){
+            DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
+            builder.deserializers(new LocalDateTimeDeserializer(dateTimeFormatter));
+            builder.serializers(new LocalDateTimeSerializer(dateTimeFormatter));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.flywaydb.core.Flyway;
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.BookingResult;
+import com.example.demo.services.AppointmentReference;
+
+/**
+ * Several instances, each in a JVM of its own, book the same slots in the
+ * same rooms at once against one shared H2 server. Each instance's
+ * schedules only see its own bookings, so only the room locks and the
+ * check against the stored appointments keep two instances from booking a
+ * slot twice.
+ */
+class MultiInstanceBookingIT {
+
+    private static final int INSTANCES = 3;
+    private static final int SLOTS = 40;
+    private static final String[] ROOMS = {"Dermatology", "Radiology"};
+    private static final LocalDateTime FIRST_SLOT = LocalDateTime.of(2030, 1, 7, 8, 0);
+
+    private Server server;
+    private String url;
+    private SingleConnectionDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        url = "jdbc:h2:tcp://localhost:" + server.getPort()
+                + "/mem:instances;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=2000";
+        dataSource = new SingleConnectionDataSource(url, "sa", "", true);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("insert into doctors (id, age, email, first_name, last_name)"
+                + " values (1000, 24, 'p.amalia@hospital.accwe', 'Perla', 'Amalia')");
+        jdbc.update("insert into patient (id, age, email, first_name, last_name)"
+                + " values (1000, 37, 'j.olaya@email.com', 'Jose Luis', 'Olaya')");
+        jdbc.update("insert into room (id, room_name) values (1000, ?), (1001, ?)", (Object[]) ROOMS);
+    }
+
+    @AfterEach
+    void tearDown(){
+        dataSource.destroy();
+        server.stop();
+    }
+
+    @Test
+    void should_book_each_slot_once_across_instances() throws Exception {
+        List<Process> processes = new ArrayList<>();
+        List<BlockingQueue<String>> outputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < INSTANCES; i++){
+                Process process = new ProcessBuilder(
+                        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp", System.getProperty("java.class.path"), Instance.class.getName(), url)
+                        .redirectErrorStream(true)
+                        .start();
+                processes.add(process);
+                outputs.add(lines(process));
+            }
+            for (BlockingQueue<String> output : outputs){
+                await(output, "READY");
+            }
+            // Released together, so the instances contend for the rooms.
+            for (Process process : processes){
+                Writer go = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+                go.write("GO\n");
+                go.flush();
+            }
+
+            int accepted = 0;
+            for (int i = 0; i < INSTANCES; i++){
+                accepted += Integer.parseInt(await(outputs.get(i), "ACCEPTED ").substring("ACCEPTED ".length()));
+                assertThat(processes.get(i).waitFor(60, TimeUnit.SECONDS)).isTrue();
+            }
+
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            assertThat(accepted).isEqualTo(SLOTS * ROOMS.length);
+            assertThat(jdbc.queryForObject("select count(*) from appointment", Integer.class))
+                    .isEqualTo(SLOTS * ROOMS.length);
+            assertThat(jdbc.queryForObject("select count(*) from appointment a join appointment b"
+                    + " on a.room_id = b.room_id and a.starts_at = b.starts_at and a.id < b.id", Integer.class))
+                    .isZero();
+        } finally {
+            for (Process process : processes){
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static BlockingQueue<String> lines(Process process){
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))){
+                for (String line = in.readLine(); line != null; line = in.readLine()){
+                    lines.add(line);
+                }
+            } catch (IOException e){
+                // The instance went away; the test fails waiting for its output.
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return lines;
+    }
+
+    private static String await(BlockingQueue<String> lines, String prefix) throws InterruptedException {
+        StringBuilder seen = new StringBuilder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+        while (System.nanoTime() < deadline){
+            String line = lines.poll(1, TimeUnit.SECONDS);
+            if (line == null){
+                continue;
+            }
+            if (line.startsWith(prefix)){
+                return line;
+            }
+            seen.append(line).append('\n');
+        }
+        throw new AssertionError("No " + prefix.trim() + " from instance, output:\n" + seen);
+    }
+
+    /**
+     * One instance: boots without a web server on the shared database, says
+     * READY, waits for GO on stdin, books every slot in every room from
+     * several threads and prints how many it got.
+     */
+    public static class Instance {
+
+        public static void main(String[] args) throws Exception {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(TechhubApplication.class)
+                    .web(WebApplicationType.NONE)
+                    // Arguments, so they win over the test application.properties
+                    .run("--spring.datasource.url=" + args[0],
+                            "--spring.datasource.username=sa",
+                            "--spring.datasource.password=",
+                            "--spring.main.banner-mode=off",
+                            "--logging.level.root=WARN",
+                            "--booking.snapshot.path=",
+                            // One writer, so batches span both rooms and lock several rows
+                            "--booking.pipeline.shards=1",
+                            "--booking.pipeline.batch-size=8");
+            BookingPipeline bookingPipeline = context.getBean(BookingPipeline.class);
+
+            System.out.println("READY");
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+
+            ExecutorService clients = Executors.newFixedThreadPool(8);
+            List<Future<BookingResult>> results = new ArrayList<>();
+            for (int slot = 0; slot < SLOTS; slot++){
+                for (String room : ROOMS){
+                    LocalDateTime startsAt = FIRST_SLOT.plusMinutes(30L * slot);
+                    results.add(clients.submit(() -> bookingPipeline.book(new AppointmentReference(1000, 1000, room,
+                            startsAt, startsAt.plusMinutes(30)))));
+                }
+            }
+            int accepted = 0;
+            for (Future<BookingResult> result : results){
+                if (result.get().isAccepted()){
+                    accepted++;
+                }
+            }
+            clients.shutdown();
+
+            System.out.println("ACCEPTED " + accepted);
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
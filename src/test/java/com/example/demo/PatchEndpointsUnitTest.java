@@ -0,0 +1,167 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Invalidation;
+import com.example.demo.entities.Invalidation.Target;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+import com.example.demo.invalidation.InvalidationBus;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.InvalidationRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.services.AppointmentReference;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The PATCH endpoints against the real database, where Hibernate bumps the
+ * versions and the booking pipeline moves appointments.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:patch;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "invalidation.interval=1h"
+})
+@AutoConfigureMockMvc
+class PatchEndpointsUnitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private InvalidationRepository invalidationRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void should_update_a_doctor_once_per_version() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        String patch = "{\"email\":\"perla.amalia@hospital.accwe\"}";
+
+        mockMvc.perform(get("/api/doctors/{id}", doctor.getId()))
+                .andExpect(header().string("ETag", "\"0\""));
+        mockMvc.perform(patch("/api/doctors/{id}", doctor.getId()).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content(patch))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+        mockMvc.perform(patch("/api/doctors/{id}", doctor.getId()).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"age\":25}"))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().string("ETag", "\"1\""));
+
+        Doctor stored = doctorRepository.findById(doctor.getId()).get();
+        assertThat(stored.getEmail()).isEqualTo("perla.amalia@hospital.accwe");
+        assertThat(stored.getAge()).isEqualTo(24);
+        assertThat(stored.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void should_move_an_appointment_to_another_room_and_invalidate_both() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        roomRepository.save(new Room("Pediatrics"));
+        roomRepository.save(new Room("Surgery"));
+        LocalDateTime nine = LocalDateTime.of(2031, 4, 24, 9, 0);
+        long id = bookingPipeline.book(new AppointmentReference(patient.getId(), doctor.getId(), "Pediatrics",
+                nine, nine.plusMinutes(30))).getAppointment().getId();
+        invalidationBus.flush();
+        long before = invalidationRepository.findMaxId();
+
+        mockMvc.perform(patch("/api/appointments/{id}", id).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"room\":{\"roomName\":\"Surgery\"},\"finishesAt\":\"10:00 24/04/2031\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""))
+                .andExpect(jsonPath("$.id").value(id))
+                .andExpect(jsonPath("$.room.roomName").value("Surgery"))
+                .andExpect(jsonPath("$.doctor.firstName").value("Perla"));
+
+        assertThat(bookingPipeline.schedule("Surgery").getAppointments()).extracting(AppointmentReference::getId)
+                .containsExactly(id);
+        invalidationBus.flush();
+        assertThat(invalidationRepository.findAll()).filteredOn(invalidation -> invalidation.getId() > before
+                        && invalidation.getTarget() == Target.APPOINTMENT)
+                .extracting(Invalidation::getRoomName).containsExactlyInAnyOrder("Surgery", "Pediatrics");
+    }
+
+    @Test
+    void should_move_an_appointment_without_a_room_into_one() throws Exception {
+        roomRepository.save(new Room("Oncology"));
+        LocalDateTime nine = LocalDateTime.of(2031, 4, 25, 9, 0);
+        long id = appointmentRepository.save(new Appointment(null, null, null, nine, nine.plusMinutes(30))).getId();
+
+        mockMvc.perform(patch("/api/appointments/{id}", id).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"finishesAt\":\"10:00 25/04/2031\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/api/appointments/{id}", id).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"room\":{\"roomName\":\"Oncology\"}}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""))
+                .andExpect(jsonPath("$.room.roomName").value("Oncology"));
+
+        assertThat(bookingPipeline.schedule("Oncology").getAppointments()).extracting(AppointmentReference::getId)
+                .containsExactly(id);
+    }
+
+    @Test
+    void should_hold_no_connection_while_a_move_waits_for_its_writer() throws Exception {
+        roomRepository.save(new Room("Neurology"));
+        LocalDateTime nine = LocalDateTime.of(2031, 4, 28, 9, 0);
+        long id = appointmentRepository.save(new Appointment(null, null, null, nine, nine.plusMinutes(30))).getId();
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+        // Listeners run on the writer once it has committed, while the request still waits
+        List<Integer> activeConnections = new CopyOnWriteArrayList<>();
+        bookingPipeline.addScheduleListener(roomName -> {
+            if (roomName.equals("Neurology")){
+                activeConnections.add(pool.getHikariPoolMXBean().getActiveConnections());
+            }
+        });
+
+        mockMvc.perform(patch("/api/appointments/{id}", id).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"room\":{\"roomName\":\"Neurology\"}}"))
+                .andExpect(status().isOk());
+
+        assertThat(activeConnections).isNotEmpty().containsOnly(0);
+    }
+}
@@ -2,16 +2,27 @@ package com.example.demo;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
 
 import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.PersonSpecifications;
 import com.example.demo.entities.Patient;
 
 
@@ -25,6 +36,9 @@ class PatientJpaUnitTest {
     @Autowired
     PatientRepository repository;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
     @Test
     void should_find_no_patients_if_repository_is_empty(){
         Iterable<Patient> patients = repository.findAll();
@@ -102,5 +116,65 @@ class PatientJpaUnitTest {
         repository.deleteAll();
         assertThat(repository.findAll()).isEmpty();
     }
-    
+
+    @Test
+    void should_search_patients_by_name_prefix_email_and_age(){
+        Patient a = new Patient("Juan","Carlos", 34, "j.carlos@hospital.accwe");
+        Patient b = new Patient("Carla","Andrea", 59, "c.andrea@hospital.accwe");
+        Patient c = new Patient("Clarisa","Julia", 29, "c.julia@hospital.accwe");
+        Patient d = new Patient("Pedro","Carmona", 71, "p.carmona@hospital.accwe");
+
+        entityManager.persist(a);
+        entityManager.persist(b);
+        entityManager.persist(c);
+        entityManager.persist(d);
+
+        PageRequest byName = PageRequest.of(0, 10, Sort.by("lastName", "firstName", "id"));
+
+        assertThat(repository.findAll(PersonSpecifications.<Patient>matching("Car", null, null, null), byName))
+                .containsExactly(b, a, d);
+        assertThat(repository.findAll(PersonSpecifications.<Patient>matching("Car", null, 30, 60), byName))
+                .containsExactly(b, a);
+        assertThat(repository.findAll(PersonSpecifications.<Patient>matching(null, "c.julia@hospital.accwe", null, null), byName))
+                .containsExactly(c);
+        assertThat(repository.findAll(PersonSpecifications.<Patient>matching("100%", null, null, null), byName))
+                .isEmpty();
+        assertThat(PersonSpecifications.<Patient>matching(" ", null, null, null)).isNull();
+    }
+
+    @Test
+    void should_page_patients_search_results(){
+        for (int i = 0; i < 5; i++){
+            entityManager.persist(new Patient("Juan" + i, "Carlos", 30 + i, "j.carlos" + i + "@hospital.accwe"));
+        }
+
+        Page<Patient> page = repository.findAll(PersonSpecifications.<Patient>matching(null, null, 31, null),
+                PageRequest.of(1, 3, Sort.by("age")));
+
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(page.getContent()).extracting(Patient::getAge).containsExactly(34);
+    }
+
+    @Test
+    void should_write_only_changed_columns_and_refuse_a_stale_version(){
+        long id = entityManager.persistAndGetId(new Patient("Juan","Carlos", 34, "j.carlos@hospital.accwe"), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+        Patient stale = entityManager.find(Patient.class, id);
+        entityManager.detach(stale);
+
+        Patient current = entityManager.find(Patient.class, id);
+        current.setEmail("juan.carlos@hospital.accwe");
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(repository.findById(id).get().getVersion()).isEqualTo(stale.getVersion() + 1);
+        stale.setAge(35);
+        assertThatThrownBy(() -> repository.save(stale)).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        EntityPersister persister = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getMetamodel()
+                .entityPersister(Patient.class);
+        assertThat(persister.getEntityMetamodel().isDynamicUpdate()).isTrue();
+        assertThat(persister.isVersioned()).isTrue();
+    }
 }
@@ -0,0 +1,60 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import com.example.demo.entities.Patient;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.search.PatientNameIndex;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(PatientNameIndex.class)
+class PatientNameIndexUnitTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PatientRepository repository;
+
+    @Autowired
+    private PatientNameIndex patientNameIndex;
+
+    @Test
+    void should_follow_patient_writes(){
+        Patient patient = repository.save(new Patient("Juan", "Carlos", 34, "j.carlos@hospital.accwe"));
+        entityManager.flush();
+
+        assertThat(patientNameIndex.search("Jaun Carlso", 5).ids).containsExactly(patient.getId());
+
+        patient.setLastName("Iniesta");
+        entityManager.flush();
+        assertThat(patientNameIndex.search("Carlos Juan", 5).ids).containsExactly(patient.getId());
+        assertThat(patientNameIndex.search("Iniesta", 5).ids).containsExactly(patient.getId());
+
+        repository.delete(patient);
+        entityManager.flush();
+        assertThat(patientNameIndex.search("Juan Iniesta", 5).ids).isEmpty();
+    }
+
+    @Test
+    void should_rebuild_from_repository(){
+        for (int i = 0; i < 3; i++){
+            entityManager.persist(new Patient("Clarisa" + i, "Julia", 29, "c.julia@hospital.accwe"));
+        }
+        entityManager.flush();
+
+        patientNameIndex.rebuild();
+
+        assertThat(patientNameIndex.size()).isEqualTo(3);
+        assertThat(patientNameIndex.search("Clarissa Julia", 5).ids).hasSize(3);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.services.ImportReport;
+import com.example.demo.services.PersonImporter;
+
+@DataJpaTest
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import({PersonImporter.class, PersonImporterUnitTest.StatementRecording.class})
+@TestPropertySource(properties = {
+        "import.batch-size=2",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=2",
+        "spring.jpa.properties.hibernate.order_inserts=true"
+})
+class PersonImporterUnitTest {
+
+    @Autowired
+    private PersonImporter personImporter;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Test
+    void should_import_doctors_from_csv_in_chunks() throws IOException {
+        String csv = "firstName,lastName,age,email\n"
+                + "Perla,Amalia,24,p.amalia@hospital.accwe\n"
+                + "\"Miren, Jr\",Iniesta,41,m.iniesta@hospital.accwe\n"
+                + "John,Doe,30,john.doe@hospital.com\n";
+
+        ImportReport report = personImporter.importPeople(stream(csv), PersonImporter.TEXT_CSV,
+                p -> new Doctor(p.getFirstName(), p.getLastName(), p.getAge(), p.getEmail()));
+
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(report.getErrors()).isEmpty();
+        assertThat(doctorRepository.findAll()).hasSize(3)
+                .extracting(Doctor::getFirstName).contains("Miren, Jr");
+    }
+
+    @Test
+    void should_send_one_insert_batch_per_chunk_and_reserve_ids_in_blocks() throws IOException {
+        StringBuilder csv = new StringBuilder("firstName,lastName,age,email\n");
+        for (int i = 0; i < 6; i++){
+            csv.append("Perla,Amalia").append(i).append(",24,p.amalia").append(i).append("@hospital.accwe\n");
+        }
+        StatementRecording.PREPARED.clear();
+
+        ImportReport report = personImporter.importPeople(stream(csv.toString()), PersonImporter.TEXT_CSV,
+                p -> new Doctor(p.getFirstName(), p.getLastName(), p.getAge(), p.getEmail()));
+
+        assertThat(report.getImported()).isEqualTo(6);
+        // Three chunks of two rows: one insert batch each, and at most one id
+        // block reserved (select for update and update) for all six rows
+        assertThat(StatementRecording.PREPARED).filteredOn(sql -> sql.startsWith("insert into doctors")).hasSize(3);
+        assertThat(StatementRecording.PREPARED).filteredOn(sql -> sql.contains("id_block")).hasSizeLessThanOrEqualTo(2);
+        assertThat(StatementRecording.PREPARED).filteredOn(sql -> !sql.startsWith("insert into doctors")
+                && !sql.contains("id_block")).isEmpty();
+    }
+
+    @Test
+    void should_report_invalid_rows_by_line_number() throws IOException {
+        String ndjson = "{\"firstName\":\"Jose Luis\",\"lastName\":\"Olaya\",\"age\":37,\"email\":\"j.olaya@email.com\"}\n"
+                + "{\"firstName\":\"Paulino\",\"lastName\":\"Antunez\",\"age\":-3,\"email\":\"p.antunez@email.com\"}\n"
+                + "\n"
+                + "{\"firstName\":\"Broken\"\n"
+                + "{\"firstName\":\"Ana\",\"lastName\":\"Gil\",\"age\":52,\"email\":\"not-an-email\"}\n";
+
+        ImportReport report = personImporter.importPeople(stream(ndjson), MediaType.APPLICATION_NDJSON,
+                p -> new Patient(p.getFirstName(), p.getLastName(), p.getAge(), p.getEmail()));
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting(ImportReport.RowError::getLine).containsExactly(2L, 4L, 5L);
+        assertThat(patientRepository.findAll()).hasSize(1);
+    }
+
+    @Test
+    void should_reject_csv_without_required_columns() throws IOException {
+        ImportReport report = personImporter.importPeople(stream("name,email\nJohn,john@hospital.com\n"), PersonImporter.TEXT_CSV,
+                p -> new Doctor(p.getFirstName(), p.getLastName(), p.getAge(), p.getEmail()));
+
+        assertThat(report.getImported()).isZero();
+        assertThat(report.getErrors()).extracting(ImportReport.RowError::getLine).containsExactly(1L);
+    }
+
+    private InputStream stream(String content){
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records the SQL of every statement prepared on the data source's
+     * connections, including the ones Hibernate reserves id blocks on.
+     */
+    @TestConfiguration
+    static class StatementRecording {
+
+        static final List<String> PREPARED = new CopyOnWriteArrayList<>();
+
+        @Bean
+        static BeanPostProcessor recordingDataSource(){
+            return new BeanPostProcessor(){
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName){
+                    if (!(bean instanceof DataSource)){
+                        return bean;
+                    }
+                    DataSource target = (DataSource) bean;
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                            (proxy, method, arguments) -> {
+                                Object result = invoke(target, method, arguments);
+                                return method.getName().equals("getConnection") ? recording((Connection) result) : result;
+                            });
+                }
+            };
+        }
+
+        private static Connection recording(Connection connection){
+            return (Connection) Proxy.newProxyInstance(StatementRecording.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, arguments) -> {
+                        if (method.getName().equals("prepareStatement")){
+                            PREPARED.add(((String) arguments[0]).toLowerCase());
+                        }
+                        return invoke(connection, method, arguments);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] arguments) throws Throwable {
+            try {
+                return method.invoke(target, arguments);
+            } catch (InvocationTargetException e){
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.services.AppointmentReference;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "reactive.page-size=2",
+        "reactive.long-poll-timeout=1s"
+})
+class ReactiveReadUnitTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        bookingPipeline.deleteAll();
+        doctorRepository.deleteAll();
+        patientRepository.deleteAll();
+        roomRepository.deleteAll();
+    }
+
+    @Test
+    void should_stream_every_doctor_across_pages_as_ndjson(){
+        assertThat(rest.getForEntity("/api/reactive/doctors", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NO_CONTENT);
+
+        for (int i = 0; i < 5; i++){
+            doctorRepository.save(new Doctor("Perla", "Amalia " + i, 24 + i, "p.amalia" + i + "@hospital.accwe"));
+        }
+
+        ResponseEntity<String> response = rest.getForEntity("/api/reactive/doctors", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+        String[] lines = response.getBody().split("\n");
+        assertThat(lines).hasSize(5);
+        assertThat(lines[0]).contains("\"lastName\":\"Amalia 0\"");
+        assertThat(lines[4]).contains("\"lastName\":\"Amalia 4\"");
+    }
+
+    @Test
+    void should_look_up_single_rows(){
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        roomRepository.save(new Room("Dermatology"));
+
+        ResponseEntity<String> found = rest.getForEntity("/api/reactive/doctors/" + doctor.getId(), String.class);
+        assertThat(found.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(found.getBody()).contains("\"email\":\"p.amalia@hospital.accwe\"");
+        assertThat(rest.getForEntity("/api/reactive/rooms/Dermatology", String.class).getBody())
+                .contains("\"roomName\":\"Dermatology\"");
+
+        assertThat(rest.getForEntity("/api/reactive/appointments/" + Long.MAX_VALUE / 10, String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(rest.getForEntity("/api/reactive/nurses", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void should_answer_a_parked_schedule_poll_when_the_room_changes() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        roomRepository.save(new Room("Dermatology"));
+
+        ResponseEntity<String> empty = rest.getForEntity("/api/reactive/rooms/Dermatology/appointments", String.class);
+        assertThat(empty.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        String etag = empty.getHeaders().getETag();
+        assertThat(etag).isNotNull();
+
+        assertThat(poll(etag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        CompletableFuture<ResponseEntity<String>> parked = CompletableFuture.supplyAsync(() -> poll(etag));
+        Thread.sleep(200);
+        bookingPipeline.book(new AppointmentReference(patient.getId(), doctor.getId(), "Dermatology",
+                LocalDateTime.of(2023, 4, 24, 9, 0), LocalDateTime.of(2023, 4, 24, 9, 30)));
+
+        ResponseEntity<String> changed = parked.get(5, TimeUnit.SECONDS);
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(changed.getBody()).contains("\"startsAt\":\"09:00 24/04/2023\"");
+
+        assertThat(rest.getForObject("/api/reactive/appointments", String.class))
+                .contains("\"roomName\":\"Dermatology\"", "\"lastName\":\"Olaya\"");
+    }
+
+    @Test
+    void should_keep_a_schedule_poll_parked_when_the_room_is_only_forgotten() throws Exception {
+        Doctor doctor = doctorRepository.save(new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"));
+        Patient patient = patientRepository.save(new Patient("Jose Luis", "Olaya", 37, "j.olaya@email.com"));
+        roomRepository.save(new Room("Dermatology"));
+        bookingPipeline.book(new AppointmentReference(patient.getId(), doctor.getId(), "Dermatology",
+                LocalDateTime.of(2023, 4, 24, 9, 0), LocalDateTime.of(2023, 4, 24, 9, 30)));
+        String etag = rest.getForEntity("/api/reactive/rooms/Dermatology/appointments", String.class)
+                .getHeaders().getETag();
+
+        CompletableFuture<ResponseEntity<String>> parked = CompletableFuture.supplyAsync(() -> poll(etag));
+        Thread.sleep(200);
+        // As when another instance invalidates the room
+        bookingPipeline.forget("Dermatology");
+
+        assertThat(parked.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(bookingPipeline.loadedSchedule("Dermatology")).hasValueSatisfying(schedule ->
+                assertThat(schedule.size()).isEqualTo(1));
+    }
+
+    private ResponseEntity<String> poll(String etag){
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        return rest.exchange("/api/reactive/rooms/Dermatology/appointments", HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+    }
+}
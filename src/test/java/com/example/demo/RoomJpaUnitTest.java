@@ -1,8 +1,10 @@
 package com.example.demo;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.util.Optional;
+import javax.persistence.PersistenceException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -69,6 +71,18 @@ class RoomJpaUnitTest {
         assertThat(room).isEqualTo(room2);
     }
 
+    @Test
+    void should_find_room_by_surrogate_id(){
+        Room room1 = new Room("Dermatology");
+        Room room2 = new Room("Operations");
+
+        entityManager.persist(room1);
+        entityManager.persist(room2);
+
+        assertThat(room2.getId()).isPositive().isNotEqualTo(room1.getId());
+        assertThat(repository.findById(room2.getId())).contains(room2);
+    }
+
     @Test
     void should_delete_room(){
         Room room1 = new Room("Dermatology");
@@ -99,5 +113,13 @@ class RoomJpaUnitTest {
         repository.deleteAll();
         assertThat(repository.findAll()).isEmpty();
     }
+
+    @Test
+    void should_reject_a_second_room_with_the_same_name(){
+        entityManager.persistAndFlush(new Room("Dermatology"));
+
+        assertThatThrownBy(() -> entityManager.persistAndFlush(new Room("Dermatology")))
+                .isInstanceOf(PersistenceException.class);
+    }
     
 }
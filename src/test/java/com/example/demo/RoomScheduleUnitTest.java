@@ -0,0 +1,63 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.booking.RoomSchedule;
+import com.example.demo.entities.*;
+import com.example.demo.services.AppointmentReference;
+
+class RoomScheduleUnitTest {
+
+    private static final LocalDateTime NINE = LocalDateTime.of(2023, 4, 24, 9, 0);
+
+    @Test
+    void shouldAgreeWithAppointmentOverlaps(){
+        Random random = new Random(42);
+        List<Appointment> stored = new ArrayList<>();
+        for (int i = 0; i < 200; i++){
+            stored.add(appointment(i + 1, random.nextInt(2000), random.nextInt(180) - 20));
+        }
+        RoomSchedule schedule = RoomSchedule.of("Dermatology", stored);
+
+        for (int i = 0; i < 5000; i++){
+            Appointment candidate = appointment(0, random.nextInt(2200) - 100, random.nextInt(240) - 40);
+            boolean expected = stored.stream().anyMatch(existing -> existing.overlaps(candidate));
+
+            assertThat(schedule.overlaps(candidate)).as("%s - %s", candidate.getStartsAt(), candidate.getFinishesAt())
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void shouldKeepAppointmentsOrderedAndDecodeReferences(){
+        Appointment later = appointment(7, 120, 30);
+        later.getPatient().setId(3);
+        later.getDoctor().setId(5);
+        RoomSchedule schedule = RoomSchedule.of("Dermatology", Arrays.asList(later, appointment(8, 0, 60)));
+
+        List<AppointmentReference> appointments = schedule.getAppointments();
+
+        assertThat(schedule.size()).isEqualTo(2);
+        assertThat(appointments).extracting(AppointmentReference::getId).containsExactly(8L, 7L);
+        assertThat(appointments.get(1).getPatientId()).isEqualTo(3);
+        assertThat(appointments.get(1).getDoctorId()).isEqualTo(5);
+        assertThat(appointments.get(1).getRoomName()).isEqualTo("Dermatology");
+        assertThat(appointments.get(1).getStartsAt()).isEqualTo(NINE.plusMinutes(120));
+        assertThat(appointments.get(1).getFinishesAt()).isEqualTo(NINE.plusMinutes(150));
+    }
+
+    private static Appointment appointment(long id, int startMinute, int minutes){
+        Appointment appointment = new Appointment(new Patient(), new Doctor(), new Room("Dermatology"),
+                NINE.plusMinutes(startMinute), NINE.plusMinutes(startMinute + minutes));
+        appointment.setId(id);
+        return appointment;
+    }
+}
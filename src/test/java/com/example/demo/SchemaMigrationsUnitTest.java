@@ -0,0 +1,124 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Runs the scripts under db/migration with Flyway, configured as
+ * application.properties configures it through spring.flyway.
+ */
+class SchemaMigrationsUnitTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    @TempDir
+    Path scripts;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:migrations-" + DATABASES.incrementAndGet()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "", true);
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void should_apply_every_script_once_in_version_order(){
+        assertThat(flyway(true).migrate().migrationsExecuted).isEqualTo(10);
+        assertThat(flyway(true).migrate().migrationsExecuted).isZero();
+        assertThat(jdbc.queryForList("select \"version\" from \"flyway_schema_history\""
+                + " where \"type\" = 'SQL' order by \"installed_rank\"", String.class))
+                .containsExactly("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+
+        jdbc.update("insert into room (id, room_name) values (1, 'Dermatology')");
+        assertThatThrownBy(() -> jdbc.update("insert into room (id, room_name) values (2, 'Dermatology')"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void should_baseline_a_schema_left_by_ddl_auto(){
+        jdbc.execute("create table doctors (id bigint not null, age integer not null, email varchar(255),"
+                + " first_name varchar(255), last_name varchar(255), primary key (id))");
+        jdbc.execute("create table patient (id bigint not null, age integer not null, email varchar(255),"
+                + " first_name varchar(255), last_name varchar(255), primary key (id))");
+        jdbc.execute("create table room (room_name varchar(255) not null, primary key (room_name))");
+        jdbc.execute("create table appointment (id bigint not null, finishes_at datetime, starts_at datetime,"
+                + " doctor_id bigint, patient_id bigint, room_id varchar(255), primary key (id))");
+        jdbc.execute("create table hibernate_sequence (next_val bigint)");
+        jdbc.execute("alter table appointment add constraint FK8yxiq8d6ubccrih94xicd2l5b"
+                + " foreign key (room_id) references room (room_name)");
+        jdbc.update("insert into hibernate_sequence values (8)");
+        jdbc.update("insert into room (room_name) values ('Surgery'), ('Dermatology')");
+        jdbc.update("insert into appointment (id, room_id) values (1, 'Surgery'), (2, 'Dermatology'), (3, null)");
+
+        assertThat(flyway(true).migrate().migrationsExecuted).isEqualTo(9);
+        assertThat(jdbc.queryForObject("select \"type\" from \"flyway_schema_history\" where \"version\" = '1'",
+                String.class)).isEqualTo("BASELINE");
+        assertThat(flyway(false).migrate().migrationsExecuted).isZero();
+
+        // Rooms take ids from the sequence in name order
+        assertThat(jdbc.queryForList("select id from room order by room_name", Long.class)).containsExactly(8L, 9L);
+        assertThat(jdbc.queryForObject("select next_val from hibernate_sequence", Long.class)).isEqualTo(10L);
+        assertThat(jdbc.queryForList("select room_id from appointment order by id", Long.class))
+                .containsExactly(9L, 8L, null);
+        assertThatThrownBy(() -> jdbc.update("insert into appointment (id, room_id) values (4, 99)"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        // New appointment ids start past the stored ones
+        assertThat(jdbc.queryForObject("select next_val from id_block where sequence_name = 'appointment'",
+                Long.class)).isEqualTo(4L);
+    }
+
+    @Test
+    void should_refuse_an_existing_schema_without_history_unless_baselining(){
+        jdbc.execute("create table appointment (id bigint not null, primary key (id))");
+
+        assertThatThrownBy(() -> flyway(false).migrate())
+                .isInstanceOf(FlywayException.class)
+                .hasMessageContaining("baselineOnMigrate");
+    }
+
+    @Test
+    void should_stop_when_an_applied_script_was_edited() throws IOException {
+        Path script = scripts.resolve("V1__notes.sql");
+        Files.write(script, "create table notes (id bigint not null, primary key (id));".getBytes(StandardCharsets.UTF_8));
+        String location = "filesystem:" + scripts;
+        flyway(true, location).migrate();
+
+        Files.write(script, "create table notes (id bigint not null, body varchar(80), primary key (id));"
+                .getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> flyway(true, location).migrate())
+                .isInstanceOf(FlywayException.class)
+                .hasMessageContaining("checksum mismatch");
+    }
+
+    private Flyway flyway(boolean baselineOnMigrate){
+        return flyway(baselineOnMigrate, "classpath:db/migration");
+    }
+
+    private Flyway flyway(boolean baselineOnMigrate, String location){
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .locations(location)
+                .baselineOnMigrate(baselineOnMigrate)
+                .baselineVersion("1")
+                .load();
+    }
+}
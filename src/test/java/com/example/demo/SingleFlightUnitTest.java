@@ -0,0 +1,114 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.concurrent.SingleFlight;
+
+class SingleFlightUnitTest {
+
+    private final SingleFlight<Long, String> lookups = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldShareOneCallBetweenConcurrentCallers() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> lookups.execute(1L, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "doctor-1";
+        }));
+        waitUntilRunning(calls);
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 6; i++){
+            followers.add(executor.submit(() -> lookups.execute(1L, () -> {
+                calls.incrementAndGet();
+                return "duplicate";
+            })));
+        }
+        Thread.sleep(50);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("doctor-1");
+        for (Future<String> follower : followers){
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("doctor-1");
+        }
+        assertThat(calls).hasValue(1);
+
+        // nothing is cached once the call is over
+        assertThat(lookups.execute(1L, () -> "fresh")).isEqualTo("fresh");
+    }
+
+    @Test
+    void shouldStartFreshCallAfterForget() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> stale = executor.submit(() -> lookups.execute(1L, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "before write";
+        }));
+        waitUntilRunning(calls);
+
+        lookups.forget(1L);
+        assertThat(lookups.execute(1L, () -> "after write")).isEqualTo("after write");
+
+        release.countDown();
+        assertThat(stale.get(5, TimeUnit.SECONDS)).isEqualTo("before write");
+    }
+
+    @Test
+    void shouldPropagateFailureToJoinedCallers() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> lookups.execute(1L, () -> {
+            calls.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        waitUntilRunning(calls);
+        Future<String> follower = executor.submit(() -> lookups.execute(1L, () -> "unused"));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(lookups.execute(1L, () -> "recovered")).isEqualTo("recovered");
+    }
+
+    private static void waitUntilRunning(AtomicInteger calls) throws InterruptedException {
+        while (calls.get() == 0){
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.search.TrigramIndex;
+
+class TrigramIndexUnitTest {
+
+    @Test
+    void shouldRankMisspelledNamesByTrigramSimilarity(){
+        TrigramIndex index = new TrigramIndex();
+        index.put(1, "Jose Luis Olaya");
+        index.put(2, "Paulino Antunez");
+        index.put(3, "José Olalla");
+        index.put(4, "Miren Iniesta");
+
+        TrigramIndex.Matches matches = index.search("jose olaya", 10, 0.3f);
+
+        assertThat(matches.ids).startsWith(1L, 3L).doesNotContain(2L, 4L);
+        assertThat(matches.scores[0]).isGreaterThan(matches.scores[1]);
+        assertThat(index.search("Antunes Paulno", 10, 0.3f).ids).containsExactly(2L);
+    }
+
+    @Test
+    void shouldForgetRemovedAndReplacedDocuments(){
+        TrigramIndex index = new TrigramIndex();
+        index.put(1, "Jose Luis Olaya");
+        index.put(2, "Paulino Antunez");
+
+        index.remove(1);
+        index.put(2, "Miren Iniesta");
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.search("Olaya", 10, 0.1f).ids).isEmpty();
+        assertThat(index.search("Antunez", 10, 0.1f).ids).isEmpty();
+        assertThat(index.search("Iniesta", 10, 0.1f).ids).containsExactly(2L);
+
+        index.clear();
+        assertThat(index.size()).isZero();
+        assertThat(index.search("Iniesta", 10, 0.1f).ids).isEmpty();
+    }
+
+    @Test
+    void shouldKeepFindingDocumentsAcrossCompactions(){
+        TrigramIndex index = new TrigramIndex();
+        for (int round = 0; round < 5; round++){
+            for (int i = 0; i < 3_000; i++){
+                index.put(i, "Patient" + i + " Garcia" + round);
+            }
+        }
+        index.remove(7);
+
+        assertThat(index.size()).isEqualTo(2_999);
+        assertThat(index.search("patient42 garcia4", 1, 0.1f).ids).containsExactly(42L);
+        assertThat(index.search("patient7 garcia4", 3, 0.1f).ids).doesNotContain(7L);
+        assertThat(index.search("garcia0", 10, 0.9f).ids).isEmpty();
+    }
+
+    @Test
+    void shouldKeepOnlyTheBestMatchesUpToLimit(){
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < 5_000; i++){
+            index.put(i, "Patient" + i + " Garcia");
+        }
+        index.put(10_000, "Garcia");
+
+        TrigramIndex.Matches matches = index.search("garcia", 3, 0.1f);
+
+        assertThat(matches.ids).hasSize(3).startsWith(10_000L);
+        assertThat(matches.scores[0]).isEqualTo(1f);
+        assertThat(index.search("  ", 3, 0.1f).ids).isEmpty();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.demo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.RoomLocks;
+import com.example.demo.entities.*;
+import com.example.demo.repositories.AppointmentRepository;
+import com.example.demo.repositories.DoctorRepository;
+import com.example.demo.repositories.PatientRepository;
+import com.example.demo.repositories.RoomRepository;
+import com.example.demo.search.PatientNameIndex;
+import com.example.demo.services.AppointmentBooking;
+import com.example.demo.warmup.WarmUp;
+
+// Warm-up loads on pool threads, so the data must be committed.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import({WarmUp.class, PatientNameIndex.class, BookingPipeline.class, AppointmentBooking.class, RoomLocks.class})
+@TestPropertySource(properties = {"warmup.parallelism=4", "warmup.chunk-size=2"})
+@RecordApplicationEvents
+class WarmUpUnitTest {
+
+    @Autowired
+    private WarmUp warmUp;
+
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private PatientNameIndex patientNameIndex;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        appointmentRepository.deleteAll();
+        patientRepository.deleteAll();
+        doctorRepository.deleteAll();
+        roomRepository.deleteAll();
+        bookingPipeline.clear();
+    }
+
+    @Test
+    void should_load_every_room_schedule_and_patient_before_accepting_traffic() throws Exception {
+        LocalDateTime nine = LocalDateTime.of(2023, 4, 24, 9, 0);
+        for (int i = 0; i < 6; i++){
+            appointmentRepository.save(new Appointment(new Patient("Clarisa" + i, "Julia", 29, "c.julia@hospital.accwe"),
+                    new Doctor("Perla", "Amalia", 24, "p.amalia@hospital.accwe"),
+                    new Room("Room " + i), nine, nine.plusHours(1)));
+        }
+        bookingPipeline.clear();
+        patientNameIndex.clear();
+
+        warmUp.warmUp();
+
+        for (int i = 0; i < 6; i++){
+            assertThat(bookingPipeline.loadedSchedule("Room " + i)).hasValueSatisfying(schedule ->
+                    assertThat(schedule.size()).isEqualTo(1));
+        }
+        assertThat(patientNameIndex.size()).isEqualTo(6);
+        // Availability events are payload events, recorded as their state
+        assertThat(events.stream(ReadinessState.class))
+                .containsExactly(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+}
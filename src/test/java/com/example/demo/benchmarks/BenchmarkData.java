@@ -0,0 +1,39 @@
+package com.example.demo.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+
+final class BenchmarkData {
+
+    private static final String[] ROOMS = {"Dermatology", "Oncology", "Operations", "Emergencies", "Psychiatry"};
+
+    private BenchmarkData(){
+    }
+
+    /**
+     * A day-by-day schedule of half-hour appointments spread over a few
+     * rooms, with distinct patients and a small pool of doctors.
+     */
+    static List<Appointment> appointments(int count){
+        List<Appointment> appointments = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2023, 4, 24, 8, 0);
+        for (int i = 0; i < count; i++){
+            Patient patient = new Patient("Patient" + i, "Olaya", 20 + i % 60, "patient" + i + "@email.com");
+            patient.setId(i + 1);
+            Doctor doctor = new Doctor("Doctor" + i % 40, "Amalia", 30 + i % 30, "doctor" + i % 40 + "@hospital.accwe");
+            doctor.setId(i % 40 + 1);
+            LocalDateTime startsAt = start.plusMinutes(30L * (i / ROOMS.length));
+            Appointment appointment = new Appointment(patient, doctor, new Room(ROOMS[i % ROOMS.length]),
+                    startsAt, startsAt.plusMinutes(30));
+            appointment.setId(i + 1);
+            appointments.add(appointment);
+        }
+        return appointments;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.demo.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.demo.TechhubApplication;
+import com.example.demo.booking.BookingPipeline;
+import com.example.demo.booking.BookingResult;
+import com.example.demo.entities.Appointment;
+import com.example.demo.entities.Doctor;
+import com.example.demo.entities.Patient;
+import com.example.demo.entities.Room;
+import com.example.demo.repositories.RoomRepository;
+
+/**
+ * Load test of the booking pipeline's group commit
+ * (booking.pipeline.batch-size). Boots the application once per batch size
+ * on an in-memory H2 database whose every statement and commit costs
+ * {@code load.latency-ms}, standing in for round trips to MySQL, queues
+ * {@code load.bookings} bookings over {@code load.rooms} rooms on a single
+ * writer at once, and waits for all of them.
+ * <p>
+ * Prints, per batch size, bookings per second, statements and commits per
+ * booking, counting those made on the id generator's own connections. Run
+ * it like the benchmarks (see README), as a main class on the test class path:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.example.demo.benchmarks.BookingThroughputLoadTest 1 16 64 256
+ * </pre>
+ * Batch sizes are taken from the arguments, 1, 16, 64 and 256 by default.
+ */
+public class BookingThroughputLoadTest {
+
+    private static final int BOOKINGS = Integer.getInteger("load.bookings", 4096);
+    private static final int ROOMS = Integer.getInteger("load.rooms", 16);
+    private static final long LATENCY_MS = Long.getLong("load.latency-ms", 2);
+
+    public static void main(String[] args) throws Exception {
+        List<String> batchSizes = args.length > 0 ? Arrays.asList(args) : Arrays.asList("1", "16", "64", "256");
+
+        System.out.printf("%d bookings over %d rooms on one writer, %d ms per statement and commit%n",
+                BOOKINGS, ROOMS, LATENCY_MS);
+        System.out.printf("%-6s %12s %12s %12s %9s%n", "batch", "bookings/s", "stmts/book", "commits/book", "rejected");
+        for (String batchSize : batchSizes){
+            System.out.println(run(Integer.parseInt(batchSize)));
+        }
+    }
+
+    private static String run(int batchSize) throws Exception {
+        SlowDataSource slow = new SlowDataSource();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TechhubApplication.class)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(slow))
+                .properties(
+                        "booking.pipeline.shards=1",
+                        "booking.pipeline.batch-size=" + batchSize,
+                        "booking.pipeline.timeout=10m",
+                        "spring.datasource.url=jdbc:h2:mem:booking-" + batchSize + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.datasource.hikari.connection-init-sql=SET LOCK_TIMEOUT 2000",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "spring.jpa.properties.hibernate.order_inserts=true",
+                        "server.port=0",
+                        "management.server.port=-1",
+                        "booking.snapshot.path=",
+                        "invalidation.enabled=false",
+                        "logging.level.root=ERROR")
+                .run()){
+            RoomRepository rooms = context.getBean(RoomRepository.class);
+            BookingPipeline pipeline = context.getBean(BookingPipeline.class);
+            for (int i = 0; i < ROOMS; i++){
+                rooms.save(new Room("Load-" + i));
+            }
+            LocalDateTime first = LocalDateTime.of(2030, 1, 1, 8, 0);
+            // Loads every room's schedule, so the run measures bookings alone
+            for (int i = 0; i < ROOMS; i++){
+                pipeline.schedule("Load-" + i);
+            }
+
+            slow.reset();
+            long started = System.nanoTime();
+            List<CompletableFuture<BookingResult>> results = new ArrayList<>(BOOKINGS);
+            for (int i = 0; i < BOOKINGS; i++){
+                LocalDateTime startsAt = first.plusMinutes(30L * (i / ROOMS));
+                results.add(pipeline.submit(new Appointment(
+                        new Patient("Load", "Patient" + i, 40, "patient" + i + "@load.test"),
+                        new Doctor("Load", "Doctor" + i, 40, "doctor" + i + "@load.test"),
+                        new Room("Load-" + (i % ROOMS)), startsAt, startsAt.plusMinutes(30))));
+            }
+            int rejected = 0;
+            for (CompletableFuture<BookingResult> result : results){
+                if (!result.get().isAccepted()){
+                    rejected++;
+                }
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            return String.format("%-6d %12.0f %12.1f %12.2f %9d", batchSize, BOOKINGS / seconds,
+                    slow.statements.get() / (double) BOOKINGS, slow.commits.get() / (double) BOOKINGS, rejected);
+        }
+    }
+
+    /**
+     * Wraps the data source so every statement prepared, and every commit,
+     * on one of its connections costs {@code load.latency-ms}, and counts them.
+     */
+    static final class SlowDataSource implements BeanPostProcessor {
+
+        final AtomicLong statements = new AtomicLong();
+        final AtomicLong commits = new AtomicLong();
+
+        void reset(){
+            statements.set(0);
+            commits.set(0);
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName){
+            if (!(bean instanceof DataSource)){
+                return bean;
+            }
+            DataSource target = (DataSource) bean;
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, arguments) -> {
+                        Object result = invoke(target, method, arguments);
+                        return method.getName().equals("getConnection") ? slow((Connection) result) : result;
+                    });
+        }
+
+        private Connection slow(Connection connection){
+            return (Connection) Proxy.newProxyInstance(BookingThroughputLoadTest.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, arguments) -> {
+                        if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")){
+                            statements.incrementAndGet();
+                            Thread.sleep(LATENCY_MS);
+                        } else if (method.getName().equals("commit")){
+                            commits.incrementAndGet();
+                            Thread.sleep(LATENCY_MS);
+                        }
+                        return invoke(connection, method, arguments);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] arguments)
+                throws Throwable {
+            try {
+                return method.invoke(target, arguments);
+            } catch (InvocationTargetException e){
+                throw e.getCause();
+            }
+        }
+    }
+}
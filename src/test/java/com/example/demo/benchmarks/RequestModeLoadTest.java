@@ -0,0 +1,222 @@
+package com.example.demo.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.demo.TechhubApplication;
+
+/**
+ * Load test of the request execution modes (execution.mode). Boots the
+ * application once per mode on an in-memory H2 database whose every
+ * statement is slowed down by {@code load.latency-ms}, standing in for JDBC
+ * round trips to MySQL, and lets {@code load.clients} clients call
+ * GET /api/rooms back to back for {@code load.seconds}.
+ * <p>
+ * Prints, per mode, throughput, latency percentiles of the answered
+ * requests, 503s from the connection permits, other failures and the peak
+ * number of threads the server added under load. Run it like the
+ * benchmarks (see README), as a main class on the test class path:
+ * <pre>
+ * java -Dload.clients=2000 -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.example.demo.benchmarks.RequestModeLoadTest platform elastic
+ * </pre>
+ * Modes are taken from the arguments, platform and elastic by default;
+ * virtual only differs from elastic on Java 21 or later.
+ */
+public class RequestModeLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 2000);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final long LATENCY_MS = Long.getLong("load.latency-ms", 20);
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("http.maxConnections", Integer.toString(CLIENTS));
+        List<String> modes = args.length > 0 ? Arrays.asList(args) : Arrays.asList("platform", "elastic");
+
+        System.out.printf("%d clients, %d s per mode, %d ms per statement%n", CLIENTS, SECONDS, LATENCY_MS);
+        System.out.printf("%-9s %9s %9s %9s %9s %9s %9s%n",
+                "mode", "req/s", "p50 ms", "p99 ms", "503", "errors", "threads");
+        for (String mode : modes){
+            System.out.println(run(mode));
+        }
+    }
+
+    private static String run(String mode) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TechhubApplication.class)
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .addBeanPostProcessor(new SlowDataSource()))
+                .properties(
+                        "execution.mode=" + mode,
+                        "spring.datasource.url=jdbc:h2:mem:load-" + mode + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "server.port=0",
+                        "management.server.port=-1",
+                        "booking.snapshot.path=",
+                        "admission.enabled=false",
+                        "logging.level.root=ERROR")
+                .run()){
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api";
+            post(base + "/room", "{\"roomName\":\"Load\"}");
+
+            Stats stats = load(base + "/rooms");
+
+            return String.format("%-9s %9.0f %9d %9d %9d %9d %9d", mode, stats.completed() / (double) SECONDS,
+                    stats.percentile(0.50), stats.percentile(0.99), stats.unavailable.get(), stats.errors.get(),
+                    stats.peakServerThreads);
+        }
+    }
+
+    private static Stats load(String url) throws InterruptedException {
+        Stats stats = new Stats();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int idle = threads.getThreadCount();
+        long deadline = System.nanoTime() + SECONDS * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++){
+            Thread client = new Thread(() -> {
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < deadline){
+                    long started = System.nanoTime();
+                    try {
+                        int status = get(url);
+                        if (status == 503){
+                            stats.unavailable.incrementAndGet();
+                        } else if (status >= 400){
+                            stats.errors.incrementAndGet();
+                        } else {
+                            latencies.add((System.nanoTime() - started) / 1_000_000);
+                        }
+                    } catch (IOException e){
+                        stats.errors.incrementAndGet();
+                    }
+                }
+                stats.add(latencies);
+                done.countDown();
+            }, "load-client-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+        // Clients only stop at the deadline, so whatever grows beyond them is the server's.
+        while (!done.await(100, TimeUnit.MILLISECONDS)){
+            if (done.getCount() == CLIENTS){
+                stats.peakServerThreads = Math.max(stats.peakServerThreads, threads.getThreadCount() - CLIENTS - idle);
+            }
+        }
+        return stats;
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(10_000);
+        connection.setReadTimeout(60_000);
+        int status = connection.getResponseCode();
+        try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()){
+            if (body != null){
+                while (body.read() >= 0){
+                    // drain, so the connection is kept alive
+                }
+            }
+        }
+        return status;
+    }
+
+    private static void post(String url, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()){
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        connection.getResponseCode();
+        connection.disconnect();
+    }
+
+    private static final class Stats {
+
+        final AtomicLong unavailable = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        int peakServerThreads;
+        private final List<Long> latencies = new ArrayList<>();
+
+        synchronized void add(List<Long> clientLatencies){
+            latencies.addAll(clientLatencies);
+        }
+
+        synchronized long completed(){
+            return latencies.size();
+        }
+
+        synchronized long percentile(double percentile){
+            if (latencies.isEmpty()){
+                return 0;
+            }
+            Collections.sort(latencies);
+            return latencies.get((int) Math.min(latencies.size() - 1, Math.floor(percentile * latencies.size())));
+        }
+    }
+
+    /**
+     * Wraps the data source so every statement prepared on one of its
+     * connections costs {@code load.latency-ms}, while the connection is held.
+     */
+    static final class SlowDataSource implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName){
+            if (!(bean instanceof DataSource)){
+                return bean;
+            }
+            DataSource target = (DataSource) bean;
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, arguments) -> {
+                        Object result = invoke(target, method, arguments);
+                        return method.getName().equals("getConnection") ? slow((Connection) result) : result;
+                    });
+        }
+
+        private static Connection slow(Connection connection){
+            return (Connection) Proxy.newProxyInstance(RequestModeLoadTest.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, arguments) -> {
+                        if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")){
+                            Thread.sleep(LATENCY_MS);
+                        }
+                        return invoke(connection, method, arguments);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] arguments)
+                throws Throwable {
+            try {
+                return method.invoke(target, arguments);
+            } catch (InvocationTargetException e){
+                throw e.getCause();
+            }
+        }
+    }
+}
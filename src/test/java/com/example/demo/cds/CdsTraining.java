@@ -0,0 +1,204 @@
+package com.example.demo.cds;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.example.demo.idempotency.IdempotencyFilter;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Training run for the AppCDS archive built by Dockerfile.jar. The
+ * application is started on its production class path with
+ * -XX:ArchiveClassesAtExit; this client, in a JVM of its own, waits for
+ * the application to report readiness, which warm-up holds back, and then
+ * calls every controller over HTTP, in JSON and in the binary formats, so
+ * the classes a real request loads are in the archive. Stopping the
+ * application afterwards writes the archive.
+ * <p>
+ * Lives with the tests so it is never packaged with the application:
+ * <pre>
+ * java -cp training/cds-training.jar:... com.example.demo.cds.CdsTraining \
+ *     http://localhost:8080 http://localhost:8081
+ * </pre>
+ * The second address is the management server's, the first one's when left out.
+ */
+public class CdsTraining {
+
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+    private static final long READY_TIMEOUT_SECONDS = Long.getLong("cds.training.ready-timeout-seconds", 300);
+
+    private final String server;
+    private final String management;
+    private final RestTemplate rest = new RestTemplate();
+
+    public CdsTraining(String server, String management){
+        this.server = server;
+        this.management = management;
+        // Failures are collected and reported, not thrown: a partial run still
+        // yields a useful archive.
+        this.rest.setErrorHandler(new DefaultResponseErrorHandler(){
+            @Override
+            public boolean hasError(ClientHttpResponse response){
+                return false;
+            }
+        });
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // Outside Boot, Logback logs every request at debug
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        CdsTraining training = new CdsTraining(args[0], args.length > 1 ? args[1] : args[0]);
+        if (!training.awaitReadiness(TimeUnit.SECONDS.toNanos(READY_TIMEOUT_SECONDS))){
+            System.err.println("Application did not report readiness; no training run");
+            System.exit(1);
+        }
+        List<String> failures = training.train();
+        if (failures.isEmpty()){
+            System.out.println("CDS training run finished");
+        } else {
+            System.out.println("CDS training run finished with " + failures.size() + " failed calls: " + failures);
+        }
+    }
+
+    /**
+     * Polls the readiness probe until it answers 200, for at most
+     * {@code timeoutNanos}. The application may not be listening yet.
+     */
+    public boolean awaitReadiness(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() < deadline){
+            try {
+                if (rest.getForEntity(management + "/actuator/health/readiness", byte[].class)
+                        .getStatusCode().is2xxSuccessful()){
+                    return true;
+                }
+            } catch (RestClientException e){
+                // Not listening yet
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    /**
+     * Walks every endpoint once and returns the calls that did not answer
+     * with a 2xx status. Leaves the database empty.
+     */
+    @SuppressWarnings("rawtypes")
+    public List<String> train(){
+        String api = server + "/api";
+        List<String> failures = new ArrayList<>();
+
+        HttpHeaders idempotent = json();
+        idempotent.set(IdempotencyFilter.IDEMPOTENCY_KEY, "cds-training-" + System.nanoTime());
+        Map doctor = call(failures, HttpMethod.POST, api + "/doctor", new HttpEntity<>("{\"firstName\":\"Perla\","
+                + "\"lastName\":\"Amalia\",\"age\":24,\"email\":\"p.amalia@hospital.accwe\"}", idempotent), Map.class);
+        Map patient = call(failures, HttpMethod.POST, api + "/patient", new HttpEntity<>("{\"firstName\":\"Jose Luis\","
+                + "\"lastName\":\"Olaya\",\"age\":37,\"email\":\"j.olaya@email.com\"}", json()), Map.class);
+        call(failures, HttpMethod.POST, api + "/room", new HttpEntity<>("{\"roomName\":\"Training\"}", json()));
+        if (doctor == null || patient == null){
+            return failures;
+        }
+        Object doctorId = doctor.get("id");
+        Object patientId = patient.get("id");
+
+        call(failures, HttpMethod.GET, api + "/doctors/" + doctorId, null);
+        call(failures, HttpMethod.GET, api + "/patients/" + patientId, null);
+        call(failures, HttpMethod.GET, api + "/reactive/doctors/" + doctorId, null);
+
+        // Deleting an appointment cascades to its room, doctor and patient, so
+        // the booking by reference is read back and deleted before anything
+        // else is booked in the same room.
+        Map booked = call(failures, HttpMethod.POST, api + "/appointment/by-reference", new HttpEntity<>("{\"patientId\":"
+                + patientId + ",\"doctorId\":" + doctorId + ",\"roomName\":\"Training\","
+                + "\"startsAt\":\"09:00 01/01/2024\",\"finishesAt\":\"09:30 01/01/2024\"}", json()), Map.class);
+        if (booked != null){
+            call(failures, HttpMethod.GET, api + "/appointments/" + booked.get("id"), null);
+            call(failures, HttpMethod.DELETE, api + "/appointments/" + booked.get("id"), null);
+        }
+        call(failures, HttpMethod.POST, api + "/appointment", new HttpEntity<>("{\"patient\":" + person(patient)
+                + ",\"doctor\":" + person(doctor) + ",\"room\":{\"roomName\":\"Training\"},"
+                + "\"startsAt\":\"10:00 01/01/2024\",\"finishesAt\":\"10:30 01/01/2024\"}", json()));
+
+        for (String path : new String[]{
+                "/doctors", "/doctors/search?name=Amalia&minAge=18&page=0&size=20&sort=lastName",
+                "/patients", "/patients/search?email=j.olaya@email.com", "/patients/lookup?q=olaya",
+                "/rooms", "/rooms/Training", "/appointments", "/rooms/Training/appointments",
+                "/appointments/export?from=" + LocalDate.of(2024, 1, 1) + "&to=" + LocalDate.of(2024, 1, 2),
+                "/appointments/export?format=csv&from=" + LocalDate.of(2024, 1, 1) + "&to=" + LocalDate.of(2024, 1, 2),
+                "/reactive/doctors", "/reactive/rooms", "/reactive/rooms/Training",
+                "/reactive/appointments", "/reactive/rooms/Training/appointments"}){
+            call(failures, HttpMethod.GET, api + path, null);
+        }
+        for (MediaType binary : new MediaType[]{SMILE, CBOR}){
+            HttpHeaders accept = new HttpHeaders();
+            accept.setAccept(Collections.singletonList(binary));
+            call(failures, HttpMethod.GET, api + "/doctors", new HttpEntity<>(accept));
+        }
+
+        HttpHeaders csv = new HttpHeaders();
+        csv.setContentType(MediaType.valueOf("text/csv"));
+        call(failures, HttpMethod.POST, api + "/doctors/import", new HttpEntity<>(
+                "firstName,lastName,age,email\nJohn,Doe,30,john.doe@hospital.com\n", csv));
+        HttpHeaders ndjson = new HttpHeaders();
+        ndjson.setContentType(MediaType.APPLICATION_NDJSON);
+        call(failures, HttpMethod.POST, api + "/patients/import", new HttpEntity<>(
+                "{\"firstName\":\"Ana\",\"lastName\":\"Gil\",\"age\":52,\"email\":\"a.gil@email.com\"}\n", ndjson));
+
+        call(failures, HttpMethod.GET, management + "/actuator/health", null);
+        call(failures, HttpMethod.GET, management + "/actuator/admission", null);
+
+        for (String path : new String[]{"/appointments", "/rooms", "/doctors", "/patients"}){
+            call(failures, HttpMethod.DELETE, api + path, null);
+        }
+        return failures;
+    }
+
+    private void call(List<String> failures, HttpMethod method, String url, HttpEntity<?> request){
+        call(failures, method, url, request, byte[].class);
+    }
+
+    private <T> T call(List<String> failures, HttpMethod method, String url, HttpEntity<?> request, Class<T> type){
+        try {
+            ResponseEntity<T> response = rest.exchange(url, method, request, type);
+            if (response.getStatusCode().is2xxSuccessful()){
+                return response.getBody();
+            }
+            failures.add(method + " " + url + " -> " + response.getStatusCodeValue());
+        } catch (RestClientException e){
+            failures.add(method + " " + url + " -> " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static HttpHeaders json(){
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static String person(Map person){
+        return "{\"firstName\":\"" + person.get("firstName") + "\",\"lastName\":\""
+                + person.get("lastName") + "\",\"age\":" + person.get("age") + ",\"email\":\"" + person.get("email") + "\"}";
+    }
+}